@@ -0,0 +1,114 @@
+package fr.maxime.ecfback.benchmarks;
+
+import fr.maxime.ecfback.EcfbackApplication;
+import fr.maxime.ecfback.charge.JeuDeDonnees;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationServiceImpl;
+import fr.maxime.ecfback.locations.MigrationLocations;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Lectures et écritures de locations selon leur format (ecfback.locations.format) : @DBRef résolues à chaque lecture,
+ * ou ids et instantané copiés à la réservation. Au format instantane, le jeu de données est d'abord converti
+ * par MigrationLocations, les deux mesures portent donc sur les mêmes locations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatLocationBenchmark {
+
+    @Param({"dbref", "instantane"})
+    String format;
+
+    @Param("1000")
+    int vehicules;
+
+    @Param("2000")
+    int locataires;
+
+    @Param("20000")
+    int locations;
+
+    private MongoEnMemoire mongo;
+    private ConfigurableApplicationContext contexte;
+    private LocationServiceImpl locationService;
+    private List<Vehicule> listeVehicules;
+    private List<Locataire> listeLocataires;
+    private int suivant;
+    private long jour;
+
+    @Setup(Level.Trial)
+    public void demarrer() {
+        mongo = new MongoEnMemoire();
+        contexte = new SpringApplicationBuilder(EcfbackApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(Stream.concat(Stream.of(mongo.arguments()), Stream.of("--ecfback.locations.format=" + format))
+                        .toArray(String[]::new));
+        JeuDeDonnees jeu = JeuDeDonnees.charger(contexte.getBean(MongoTemplate.class), vehicules, locataires, locations, 42);
+        if ("instantane".equals(format)) {
+            contexte.getBean(MigrationLocations.class).migrer();
+        }
+        listeVehicules = jeu.vehicules();
+        listeLocataires = jeu.locataires();
+        locationService = contexte.getBean(LocationServiceImpl.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void arreter() {
+        contexte.close();
+        mongo.close();
+    }
+
+    private int suivant(int modulo) {
+        suivant = (suivant + 1) % Integer.MAX_VALUE;
+        return suivant % modulo;
+    }
+
+    @Benchmark
+    public List<Location> findPage() {
+        return locationService.findPage(null, 100);
+    }
+
+    @Benchmark
+    public List<Location> findAllByImmatriculation() {
+        return locationService.findAllByImmatriculation(JeuDeDonnees.immatriculation(suivant(vehicules)));
+    }
+
+    @Benchmark
+    public Location save() {
+        // Après les locations du jeu de données : pas de chevauchement entre deux écritures mesurées
+        LocalDate dateDebut = JeuDeDonnees.DEBUT.plusYears(100).plusDays(jour++);
+        Vehicule vehicule = new Vehicule();
+        vehicule.setId(listeVehicules.get(suivant(listeVehicules.size())).getId());
+        Locataire locataire = new Locataire();
+        locataire.setId(listeLocataires.get(suivant(listeLocataires.size())).getId());
+        return locationService.save(new Location(null, dateDebut, dateDebut.plusDays(3), 135.0, locataire, vehicule));
+    }
+}
@@ -0,0 +1,95 @@
+package fr.maxime.ecfback.benchmarks;
+
+import fr.maxime.ecfback.EcfbackApplication;
+import fr.maxime.ecfback.charge.JeuDeDonnees;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chemins chauds de LocationServiceImpl, mesurés à travers le contexte Spring complet
+ * (cache des véhicules, résolution des références en lot, index) sur un MongoDB en mémoire.<br>
+ * Les valeurs absolues dépendent du serveur en mémoire : ce sont les écarts entre deux commits qui comptent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocationServiceBenchmark {
+
+    @Param("1000")
+    int vehicules;
+
+    @Param("2000")
+    int locataires;
+
+    @Param("20000")
+    int locations;
+
+    private MongoEnMemoire mongo;
+    private ConfigurableApplicationContext contexte;
+    private LocationServiceImpl locationService;
+    private String[] idsVehicules;
+    private int suivant;
+
+    @Setup(Level.Trial)
+    public void demarrer() {
+        mongo = new MongoEnMemoire();
+        contexte = new SpringApplicationBuilder(EcfbackApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(mongo.arguments());
+        JeuDeDonnees jeu = JeuDeDonnees.charger(contexte.getBean(MongoTemplate.class), vehicules, locataires, locations, 42);
+        idsVehicules = jeu.vehicules().stream().map(vehicule -> vehicule.getId()).toArray(String[]::new);
+        locationService = contexte.getBean(LocationServiceImpl.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void arreter() {
+        contexte.close();
+        mongo.close();
+    }
+
+    private int suivant(int modulo) {
+        suivant = (suivant + 1) % Integer.MAX_VALUE;
+        return suivant % modulo;
+    }
+
+    @Benchmark
+    public Double calculPrixTotal() {
+        LocalDate dateDebut = JeuDeDonnees.DEBUT.plusDays(suivant(365));
+        return locationService.calculPrixTotal(idsVehicules[suivant(idsVehicules.length)], null, dateDebut, dateDebut.plusDays(5));
+    }
+
+    @Benchmark
+    public List<Location> findAllByLocataireName() {
+        return locationService.findAllByLocataireName(JeuDeDonnees.nom(suivant(JeuDeDonnees.NOMS)));
+    }
+
+    @Benchmark
+    public List<Location> findAllByImmatriculation() {
+        return locationService.findAllByImmatriculation(JeuDeDonnees.immatriculation(suivant(vehicules)));
+    }
+}
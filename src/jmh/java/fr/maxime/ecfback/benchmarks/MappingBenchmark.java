@@ -0,0 +1,110 @@
+package fr.maxime.ecfback.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coûts de conversion sans accès à la base : sérialisation JSON d'une page de locations (avec leurs locataire
+ * et véhicule imbriqués, comme dans les réponses de /locations) et conversion entité / document BSON
+ * des véhicules et locataires par le MappingMongoConverter de Spring Data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    @Param("100")
+    int taillePage;
+
+    private ObjectMapper objectMapper;
+    private MappingMongoConverter converter;
+    private List<Location> page;
+    private Vehicule vehicule;
+    private Locataire locataire;
+    private Document documentVehicule;
+    private Document documentLocataire;
+
+    @Setup
+    public void preparer() {
+        // Mêmes réglages que l'ObjectMapper de Spring Boot (dates ISO, modules java.time)
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+
+        vehicule = new Vehicule("63a1b2c3d4e5f60718293a4b", "Peugeot", "208", "AA-000001", "Citadine", 45.0, "Bon", "Disponible");
+        locataire = new Locataire("63a1b2c3d4e5f60718293a4c", "Dupont", "Jean", "jean.dupont@ecf.fr", "motdepasse");
+        page = new ArrayList<>(taillePage);
+        for (int i = 0; i < taillePage; i++) {
+            LocalDate dateDebut = LocalDate.of(2023, 1, 1).plusDays(i);
+            page.add(new Location(String.format("63a1b2c3d4e5f607%08x", i), dateDebut, dateDebut.plusDays(3), 135.0,
+                    locataire, vehicule));
+        }
+        documentVehicule = ecrire(vehicule);
+        documentLocataire = ecrire(locataire);
+    }
+
+    private Document ecrire(Object entite) {
+        Document document = new Document();
+        converter.write(entite, document);
+        return document;
+    }
+
+    @Benchmark
+    public byte[] serialiserPageLocations() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public Document ecrireVehicule() {
+        return ecrire(vehicule);
+    }
+
+    @Benchmark
+    public Vehicule lireVehicule() {
+        return converter.read(Vehicule.class, documentVehicule);
+    }
+
+    @Benchmark
+    public Document ecrireLocataire() {
+        return ecrire(locataire);
+    }
+
+    @Benchmark
+    public Locataire lireLocataire() {
+        return converter.read(Locataire.class, documentLocataire);
+    }
+}
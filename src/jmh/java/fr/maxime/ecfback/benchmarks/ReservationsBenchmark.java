@@ -0,0 +1,97 @@
+package fr.maxime.ecfback.benchmarks;
+
+import fr.maxime.ecfback.disponibilites.DisponibiliteService;
+import fr.maxime.ecfback.journal.Journal;
+import fr.maxime.ecfback.locataires.LocataireServiceImpl;
+import fr.maxime.ecfback.locations.DureeLocations;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationRepository;
+import fr.maxime.ecfback.locations.LocationResolver;
+import fr.maxime.ecfback.locations.LocationServiceImpl;
+import fr.maxime.ecfback.resumes.ResumeService;
+import fr.maxime.ecfback.tarifs.MoteurTarifs;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import fr.maxime.ecfback.vehicules.VehiculeServiceImpl;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Débit des réservations de LocationServiceImpl (verrous par véhicule et index des disponibilités), sans base :
+ * le repository et les services voisins sont simulés. Chaque réservation prend la semaine suivante d'un des
+ * 16 véhicules partagés par tous les threads, elle est donc toujours acceptée.<br>
+ * Le nombre de clients simultanés se règle avec -t : -Djmh.options="-t 1", "-t 8", "-t 64".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ReservationsBenchmark {
+
+    private static final LocalDate ORIGINE = LocalDate.of(2000, 1, 3);
+
+    private final AtomicLong semaines = new AtomicLong();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private LocationServiceImpl service;
+
+    @Setup(Level.Iteration)
+    public void preparer() {
+        LocationRepository repository = mock(LocationRepository.class, withSettings().stubOnly());
+        when(repository.save(any(Location.class))).thenAnswer(invocation -> {
+            Location location = invocation.getArgument(0);
+            location.setId("L" + sequence.incrementAndGet());
+            return location;
+        });
+        VehiculeServiceImpl vehiculeService = mock(VehiculeServiceImpl.class, withSettings().stubOnly());
+        when(vehiculeService.findById(anyString())).thenReturn(vehicule("v"));
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, RETURNS_DEEP_STUBS);
+        when(mongoTemplate.query(Location.class).as(Document.class).matching(any(Query.class)).stream())
+                .thenReturn(Stream.empty());
+
+        service = new LocationServiceImpl(repository, mock(LocationResolver.class), vehiculeService,
+                mock(LocataireServiceImpl.class), new DisponibiliteService(mongoTemplate),
+                mock(ResumeService.class, withSettings().stubOnly()), mock(DureeLocations.class, withSettings().stubOnly()),
+                mock(MoteurTarifs.class, withSettings().stubOnly()),
+                mock(Journal.class, withSettings().stubOnly()), 256);
+        semaines.set(0);
+    }
+
+    @Benchmark
+    public Location reserver() {
+        long semaine = semaines.getAndIncrement();
+        LocalDate debut = ORIGINE.plusWeeks(semaine / 16);
+        return service.reserver(new Location(null, debut, debut.plusDays(7), null, null, vehicule("v" + semaine % 16)));
+    }
+
+    private static Vehicule vehicule(String id) {
+        return new Vehicule(id, "Peugeot", "208", "AA-" + id, "Voiture", 50.0, "A", "Disponible");
+    }
+}
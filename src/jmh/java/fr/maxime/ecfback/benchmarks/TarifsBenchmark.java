@@ -0,0 +1,128 @@
+package fr.maxime.ecfback.benchmarks;
+
+import fr.maxime.ecfback.tarifs.MoteurTarifs;
+import fr.maxime.ecfback.tarifs.Tarif;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chiffrage d'un lot de devis par MoteurTarifs, sans accès à la base : calcul par lot (tableaux parallèles),
+ * appel par devis, et calcul jour par jour en parcourant les tarifs (ce que ferait un moteur sans précalcul).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TarifsBenchmark {
+
+    private static final List<String> TYPES = List.of("Citadine", "Berline", "SUV", "Utilitaire", "Break");
+
+    @Param("500")
+    int demandes;
+
+    private MoteurTarifs moteur;
+    private List<Tarif> tarifs;
+    private double[] prixJour;
+    private String[] types;
+    private long[] debuts;
+    private long[] fins;
+    private LocalDate[] datesDebut;
+    private LocalDate[] datesFin;
+    private double[] prix;
+
+    @Setup
+    public void preparer() {
+        LocalDate annee = LocalDate.now().withDayOfYear(1);
+        tarifs = new ArrayList<>();
+        tarifs.add(new Tarif(null, "semaine", null, null, null, null, 0.1));
+        tarifs.add(new Tarif(null, "SUV", "SUV", null, null, 1.3, null));
+        tarifs.add(new Tarif(null, "été", null, annee.withMonth(7), annee.withMonth(9), 1.25, null));
+        tarifs.add(new Tarif(null, "hiver", null, annee.withMonth(12), annee.plusYears(1).withMonth(3), 0.9, null));
+        tarifs.add(new Tarif(null, "été utilitaire", "Utilitaire", annee.withMonth(7), annee.withMonth(8), 1.5, null));
+        moteur = new MoteurTarifs(null);
+        moteur.remplacer(tarifs);
+
+        Random hasard = new Random(42);
+        prixJour = new double[demandes];
+        types = new String[demandes];
+        debuts = new long[demandes];
+        fins = new long[demandes];
+        datesDebut = new LocalDate[demandes];
+        datesFin = new LocalDate[demandes];
+        prix = new double[demandes];
+        for (int i = 0; i < demandes; i++) {
+            prixJour[i] = 30 + hasard.nextInt(120);
+            types[i] = TYPES.get(hasard.nextInt(TYPES.size()));
+            datesDebut[i] = annee.plusDays(hasard.nextInt(365));
+            datesFin[i] = datesDebut[i].plusDays(1 + hasard.nextInt(21));
+            debuts[i] = datesDebut[i].toEpochDay();
+            fins[i] = datesFin[i].toEpochDay();
+        }
+    }
+
+    @Benchmark
+    public double[] parLot() {
+        moteur.prix(prixJour, types, debuts, fins, prix);
+        return prix;
+    }
+
+    @Benchmark
+    public double[] parDevis() {
+        for (int i = 0; i < demandes; i++) {
+            prix[i] = moteur.prix(prixJour[i], types[i], datesDebut[i], datesFin[i]);
+        }
+        return prix;
+    }
+
+    @Benchmark
+    public double[] jourParJour() {
+        for (int i = 0; i < demandes; i++) {
+            double total = 0;
+            long jours = fins[i] - debuts[i];
+            for (long jour = debuts[i]; jour < fins[i]; jour++) {
+                double coefficient = coefficient(types[i], LocalDate.ofEpochDay(jour));
+                total += jour - debuts[i] < jours / 7 * 7 ? coefficient * 0.9 : coefficient;
+            }
+            prix[i] = Math.round(prixJour[i] * total * 100) / 100.0;
+        }
+        return prix;
+    }
+
+    private double coefficient(String type, LocalDate jour) {
+        double base = 1.0;
+        double saison = 1.0;
+        double saisonType = 0;
+        for (Tarif tarif : tarifs) {
+            if (tarif.getDateDebut() == null) {
+                if (Objects.equals(tarif.getType(), type) && tarif.getCoefficient() != null) {
+                    base = tarif.getCoefficient();
+                }
+            } else if (!jour.isBefore(tarif.getDateDebut()) && jour.isBefore(tarif.getDateFin())) {
+                if (tarif.getType() == null) {
+                    saison = tarif.getCoefficient();
+                } else if (tarif.getType().equals(type)) {
+                    saisonType = tarif.getCoefficient();
+                }
+            }
+        }
+        return base * (saisonType > 0 ? saisonType : saison);
+    }
+}
@@ -0,0 +1,33 @@
+package fr.maxime.ecfback.changements;
+
+import org.bson.Document;
+
+/**
+ * Une écriture faite dans MongoDB (par cette instance ou par une autre), publiée par FluxChangements
+ * aux abonnés de l'application (@EventListener sur Changement).
+ * @param collection La collection modifiée
+ * @param operation Le type d'écriture
+ * @param id L'id du document écrit, null pour une réinitialisation
+ * @param document Le document après l'écriture : présent pour une insertion ou un remplacement, relu au moment
+ *                 de la publication pour une modification partielle (null s'il a été supprimé depuis), absent pour
+ *                 une suppression ou une réinitialisation
+ */
+public record Changement(String collection, Operation operation, String id, Document document) {
+
+    public enum Operation {
+        INSERTION,
+        MODIFICATION,
+        SUPPRESSION,
+        /** Des changements ont pu être perdus (collection supprimée, reprise impossible) : tout état dérivé est à relire */
+        REINITIALISATION
+    }
+
+    /**
+     * Cette fonction indique si le changement porte sur la collection (toujours vrai pour une réinitialisation générale)
+     * @param nom Le nom de la collection
+     * @return true si l'abonné de cette collection doit traiter le changement
+     */
+    public boolean concerne(String nom) {
+        return collection == null || collection.equals(nom);
+    }
+}
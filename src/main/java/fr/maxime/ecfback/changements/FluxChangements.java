@@ -0,0 +1,272 @@
+package fr.maxime.ecfback.changements;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Écoute les écritures faites dans MongoDB par toutes les instances de l'application (change stream sur la base)
+ * et les publie aux abonnés locaux sous forme de Changement : caches et index mémoire restent ainsi à jour
+ * quand une autre instance écrit. Nécessite un replica set (un nœud unique suffit : mongod --replSet rs0 puis
+ * rs.initiate()) ; activé par ecfback.changements.actif.<br>
+ * Seules les collections ecfback.changements.collections sont écoutées. Les changements sont publiés dans l'ordre
+ * du journal des opérations, sur le thread d'écoute : un abonné doit être rapide et supporter de recevoir deux fois
+ * un changement (les écritures de cette instance, déjà appliquées localement, sont aussi reçues).<br>
+ * Le jeton de reprise du dernier changement publié est enregistré dans la collection changements, sous le nom de
+ * l'instance (ecfback.changements.instance, le nom de la machine par défaut), toutes les ecfback.changements.sauvegarde
+ * et à l'arrêt : après une erreur ou un redémarrage, l'écoute reprend après ce jeton, sans perte. Si le journal ne
+ * contient plus ce point de reprise, l'écoute repart du moment présent et une réinitialisation est publiée.
+ */
+@Component
+@ConditionalOnProperty(name = "ecfback.changements.actif", havingValue = "true")
+public class FluxChangements {
+
+    static final String COLLECTION = "changements";
+    /** ChangeStreamHistoryLost et ChangeStreamFatalError : le point de reprise n'est plus dans le journal */
+    private static final Set<Integer> REPRISE_IMPOSSIBLE = Set.of(286, 280);
+
+    Logger logger = LoggerFactory.getLogger(FluxChangements.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher publication;
+    private final MeterRegistry registry;
+    private final List<String> collections;
+    private final String instance;
+    private final Duration sauvegarde;
+    private final Duration attente;
+    private volatile boolean actif;
+    private Thread thread;
+    private BsonDocument jeton;
+    private boolean jetonEnregistre = true;
+    private long derniereSauvegarde;
+
+    public FluxChangements(MongoTemplate mongoTemplate,
+                           ApplicationEventPublisher publication,
+                           MeterRegistry registry,
+                           @Value("${ecfback.changements.collections:vehicule,locataire,location,tarif}") List<String> collections,
+                           @Value("${ecfback.changements.instance:}") String instance,
+                           @Value("${ecfback.changements.sauvegarde:5s}") Duration sauvegarde,
+                           @Value("${ecfback.changements.attente:5s}") Duration attente) {
+        this.mongoTemplate = mongoTemplate;
+        this.publication = publication;
+        this.registry = registry;
+        this.collections = collections;
+        this.instance = instance.isBlank() ? nomMachine() : instance;
+        this.sauvegarde = sauvegarde;
+        this.attente = attente;
+        logger.info("Création du flux des changements : instance " + this.instance + ", collections " + collections);
+    }
+
+    /**
+     * Cette fonction démarre l'écoute une fois l'application prête, depuis le jeton de reprise enregistré s'il existe
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void demarrer() {
+        if (actif) {
+            return;
+        }
+        actif = true;
+        thread = new Thread(this::ecouter, "flux-changements");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Cette fonction arrête l'écoute et enregistre le jeton du dernier changement publié
+     */
+    @PreDestroy
+    public synchronized void arreter() {
+        actif = false;
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    private void ecouter() {
+        jeton = lireJeton();
+        while (actif) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> curseur = ouvrir()) {
+                logger.info("Écoute des changements " + (jeton == null ? "à partir de maintenant" : "reprise après " + jeton.toJson()));
+                while (actif) {
+                    ChangeStreamDocument<Document> evenement = curseur.tryNext();
+                    if (evenement != null) {
+                        publier(evenement);
+                        jeton = evenement.getResumeToken();
+                        jetonEnregistre = false;
+                    } else if (curseur.getResumeToken() != null && !curseur.getResumeToken().equals(jeton)) {
+                        // Jeton de fin de lot : sans écriture dans les collections écoutées, le point de reprise
+                        // avance quand même et ne sort pas du journal des opérations
+                        jeton = curseur.getResumeToken();
+                        jetonEnregistre = false;
+                    }
+                    enregistrerJeton(false);
+                }
+            } catch (MongoServerException e) {
+                if (!REPRISE_IMPOSSIBLE.contains(e.getCode())) {
+                    patienter(e);
+                    continue;
+                }
+                logger.error("Reprise des changements impossible après " + (jeton != null ? jeton.toJson() : "le début") + " : " + e.getMessage()
+                        + ", écoute à partir de maintenant");
+                jeton = null;
+                jetonEnregistre = false;
+                diffuser(new Changement(null, Changement.Operation.REINITIALISATION, null, null));
+            } catch (MongoException | DataAccessException e) {
+                patienter(e);
+            }
+        }
+        enregistrerJeton(true);
+        logger.info("Écoute des changements arrêtée");
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> ouvrir() {
+        ChangeStreamIterable<Document> flux = mongoTemplate.getDb()
+                .watch(List.of(Aggregates.match(Filters.and(
+                        Filters.in("ns.coll", collections),
+                        Filters.in("operationType", "insert", "update", "replace", "delete", "drop")))))
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        if (jeton != null) {
+            flux = flux.resumeAfter(jeton);
+        }
+        return flux.cursor();
+    }
+
+    private void publier(ChangeStreamDocument<Document> evenement) {
+        String collection = evenement.getNamespace() != null ? evenement.getNamespace().getCollectionName() : null;
+        Changement.Operation operation = operation(evenement.getOperationType());
+        if (collection == null || operation == null) {
+            return;
+        }
+        diffuser(new Changement(collection, operation, id(evenement.getDocumentKey()), evenement.getFullDocument()));
+    }
+
+    /**
+     * Un abonné en erreur ne bloque ni l'écoute ni les autres changements
+     */
+    private void diffuser(Changement changement) {
+        try {
+            publication.publishEvent(changement);
+        } catch (RuntimeException e) {
+            logger.error("Changement non appliqué " + changement.collection() + " " + changement.id() + " : " + e.getMessage(), e);
+        }
+        Counter.builder("ecfback.changements")
+                .description("Changements MongoDB publiés aux abonnés locaux")
+                .tag("collection", changement.collection() != null ? changement.collection() : "toutes")
+                .tag("operation", changement.operation().name().toLowerCase())
+                .register(registry)
+                .increment();
+    }
+
+    private static Changement.Operation operation(OperationType type) {
+        return switch (type) {
+            case INSERT -> Changement.Operation.INSERTION;
+            case UPDATE, REPLACE -> Changement.Operation.MODIFICATION;
+            case DELETE -> Changement.Operation.SUPPRESSION;
+            case DROP -> Changement.Operation.REINITIALISATION;
+            default -> null;
+        };
+    }
+
+    private static String id(BsonDocument cle) {
+        BsonValue id = cle != null ? cle.get("_id") : null;
+        if (id instanceof BsonObjectId objectId) {
+            return objectId.getValue().toHexString();
+        }
+        if (id instanceof BsonString texte) {
+            return texte.getValue();
+        }
+        return id != null ? id.toString() : null;
+    }
+
+    private BsonDocument lireJeton() {
+        try {
+            Document enregistre = mongoTemplate.findById(instance, Document.class, COLLECTION);
+            String json = enregistre != null ? enregistre.getString("jeton") : null;
+            return json != null ? BsonDocument.parse(json) : null;
+        } catch (DataAccessException e) {
+            logger.warn("Jeton de reprise des changements illisible : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Enregistre le jeton s'il a changé, au plus une fois par ecfback.changements.sauvegarde sauf à l'arrêt
+     */
+    private void enregistrerJeton(boolean immediat) {
+        long maintenant = System.currentTimeMillis();
+        if (jetonEnregistre || (!immediat && maintenant - derniereSauvegarde < sauvegarde.toMillis())) {
+            return;
+        }
+        try {
+            mongoTemplate.upsert(query(where("_id").is(instance)),
+                    new Update().set("jeton", jeton != null ? jeton.toJson() : null).set("misAJour", new Date()), COLLECTION);
+            jetonEnregistre = true;
+            derniereSauvegarde = maintenant;
+        } catch (DataAccessException e) {
+            logger.warn("Jeton de reprise des changements non enregistré : " + e.getMessage());
+        }
+    }
+
+    private void patienter(RuntimeException e) {
+        if (!actif) {
+            return;
+        }
+        logger.warn("Écoute des changements interrompue : " + e.getMessage() + ", nouvel essai dans " + attente);
+        try {
+            Thread.sleep(attente.toMillis());
+        } catch (InterruptedException interruption) {
+            Thread.currentThread().interrupt();
+            actif = false;
+        }
+    }
+
+    private static String nomMachine() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "ecfback";
+        }
+    }
+}
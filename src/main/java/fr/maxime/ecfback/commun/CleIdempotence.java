@@ -0,0 +1,30 @@
+package fr.maxime.ecfback.commun;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Une requête reçue avec un en-tête Idempotency-Key (voir Idempotence), d'id "méthode chemin clé".<br>
+ * Tant que termine est faux la requête est en cours de traitement par l'appel identifié par proprietaire (jeton aléatoire,
+ * changé quand une clé abandonnée est reprise) ; ensuite reponse contient la réponse en JSON, renvoyée telle quelle aux rejeux.<br>
+ * MongoDB supprime la clé un jour après sa création (index TTL sur creeLe).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("idempotence")
+public class CleIdempotence {
+
+    private String id;
+    private String empreinte;
+    private String reponse;
+    private boolean termine;
+    @Indexed(expireAfter = "1d")
+    private Instant creeLe;
+    private String proprietaire;
+}
@@ -0,0 +1,205 @@
+package fr.maxime.ecfback.commun;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Requêtes rejouables sans effet de bord grâce à l'en-tête Idempotency-Key.<br>
+ * La première requête d'une clé réserve la clé en base (insertion dans la collection idempotence, unique par _id),
+ * exécute le traitement puis enregistre sa réponse. Les rejeux de la même clé renvoient cette réponse sans refaire
+ * le traitement : depuis le cache mémoire (ecfback.idempotence.cache.*) ou, à défaut, depuis la base.<br>
+ * Les rejeux simultanés d'une même clé attendent la fin de la première requête sur cette instance (un futur par clé
+ * en cours, aucun verrou n'est tenu pendant le traitement) ; sur une autre instance, ils reçoivent 409 - CONFLICT
+ * tant qu'elle n'est pas terminée.
+ * Une clé réutilisée avec un autre corps de requête est refusée (422 - UNPROCESSABLE_ENTITY).<br>
+ * Si le traitement échoue, la clé est libérée : la requête pourra être retentée avec la même clé.
+ * Une clé restée en cours plus de ecfback.idempotence.abandon (instance arrêtée pendant le traitement) est reprise.
+ * La libération et l'enregistrement de la réponse ne portent que sur la clé telle que cet appel l'a réservée
+ * (jeton proprietaire) : un traitement dont la clé a été reprise entre-temps ne l'efface ni ne l'écrase.
+ */
+@Component
+public class Idempotence {
+
+    public static final String EN_TETE = "Idempotency-Key";
+    static final int LONGUEUR_MAX = 255;
+
+    Logger logger = LoggerFactory.getLogger(Idempotence.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CleIdempotence> cache;
+    private final ConcurrentMap<String, CompletableFuture<CleIdempotence>> enCours = new ConcurrentHashMap<>();
+    private final Duration abandon;
+
+    public Idempotence(MongoTemplate mongoTemplate,
+                       ObjectMapper objectMapper,
+                       @Value("${ecfback.idempotence.cache.taille-max:10000}") long tailleMax,
+                       @Value("${ecfback.idempotence.cache.duree:10m}") Duration duree,
+                       @Value("${ecfback.idempotence.abandon:1m}") Duration abandon) {
+        logger.info("Création du cache Idempotence : " + tailleMax + " entrées, expiration " + duree);
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder().maximumSize(tailleMax).expireAfterWrite(duree).build();
+        this.abandon = abandon;
+    }
+
+    /**
+     * Cette fonction exécute le traitement une seule fois par clé et renvoie sa réponse à chaque rejeu
+     * @param portee La requête concernée (par exemple "POST /locations") : une même clé peut servir à deux portées
+     * @param cle La valeur de l'en-tête Idempotency-Key
+     * @param requete Le corps de la requête, comparé à celui de la première requête de la clé
+     * @param type Le type de la réponse
+     * @param traitement Le traitement de la requête
+     * @return La réponse du traitement, celle de la première requête pour un rejeu
+     */
+    public <T> T executer(String portee, String cle, Object requete, Class<T> type, Supplier<T> traitement) {
+        if (cle.isBlank() || cle.length() > LONGUEUR_MAX) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    EN_TETE + " doit contenir entre 1 et " + LONGUEUR_MAX + " caractères");
+        }
+        String id = portee + " " + cle;
+        String empreinte = empreinte(requete);
+        while (true) {
+            CleIdempotence connue = cache.getIfPresent(id);
+            if (connue != null) {
+                return rejouer(connue, empreinte, type);
+            }
+            CompletableFuture<CleIdempotence> resultat = new CompletableFuture<>();
+            CompletableFuture<CleIdempotence> premier = enCours.putIfAbsent(id, resultat);
+            if (premier == null) {
+                return traiter(id, empreinte, type, traitement, resultat);
+            }
+            // Même clé en cours sur cette instance : sa réponse est rejouée, ou la clé est retentée si elle a été libérée
+            connue = premier.join();
+            if (connue != null) {
+                return rejouer(connue, empreinte, type);
+            }
+        }
+    }
+
+    /**
+     * Réserve la clé puis exécute le traitement ; resultat est complété pour les rejeux qui attendent sur cette instance
+     * (null si la clé est libérée)
+     */
+    private <T> T traiter(String id, String empreinte, Class<T> type, Supplier<T> traitement,
+                          CompletableFuture<CleIdempotence> resultat) {
+        CleIdempotence cle = null;
+        try {
+            String proprietaire = UUID.randomUUID().toString();
+            CleIdempotence connue = reserver(id, empreinte, proprietaire);
+            if (connue != null) {
+                cle = connue;
+                return rejouer(connue, empreinte, type);
+            }
+
+            T reponse;
+            try {
+                reponse = traitement.get();
+            } catch (RuntimeException e) {
+                mongoTemplate.remove(query(where("id").is(id).and("proprietaire").is(proprietaire)), CleIdempotence.class);
+                throw e;
+            }
+            String json = ecrire(reponse);
+            cle = new CleIdempotence(id, empreinte, json, true, Instant.now(), proprietaire);
+            if (mongoTemplate.updateFirst(query(where("id").is(id).and("proprietaire").is(proprietaire)),
+                    new Update().set("reponse", json).set("termine", true), CleIdempotence.class).getModifiedCount() == 1) {
+                cache.put(id, cle);
+            } else {
+                logger.warn("Clé reprise par un autre traitement avant la fin de celui-ci, réponse non enregistrée : " + id);
+            }
+            return reponse;
+        } finally {
+            enCours.remove(id, resultat);
+            resultat.complete(cle);
+        }
+    }
+
+    /**
+     * Réserve la clé en base
+     * @param proprietaire Le jeton de cet appel, enregistré avec la clé
+     * @return null si la clé est réservée par cet appel, sinon la clé déjà enregistrée
+     */
+    private CleIdempotence reserver(String id, String empreinte, String proprietaire) {
+        try {
+            mongoTemplate.insert(new CleIdempotence(id, empreinte, null, false, Instant.now(), proprietaire));
+            return null;
+        } catch (DuplicateKeyException e) {
+            CleIdempotence connue = mongoTemplate.findById(id, CleIdempotence.class);
+            if (connue == null) {
+                // Libérée entre l'insertion et la lecture (traitement en échec) : le client peut réessayer
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Requête en cours de traitement pour cette " + EN_TETE);
+            }
+            if (!connue.isTermine() && connue.getEmpreinte().equals(empreinte)
+                    && connue.getCreeLe().isBefore(Instant.now().minus(abandon))
+                    && mongoTemplate.updateFirst(query(where("id").is(id).and("termine").is(false)
+                                    .and("proprietaire").is(connue.getProprietaire())),
+                    new Update().set("creeLe", Instant.now()).set("proprietaire", proprietaire),
+                    CleIdempotence.class).getModifiedCount() == 1) {
+                logger.warn("Traitement abandonné repris pour " + id);
+                return null;
+            }
+            return connue;
+        }
+    }
+
+    private <T> T rejouer(CleIdempotence connue, String empreinte, Class<T> type) {
+        if (!connue.getEmpreinte().equals(empreinte)) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    EN_TETE + " déjà utilisée pour une autre requête");
+        }
+        if (!connue.isTermine()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Requête en cours de traitement pour cette " + EN_TETE);
+        }
+        cache.put(connue.getId(), connue);
+        logger.debug("Réponse rejouée pour " + connue.getId());
+        try {
+            return objectMapper.readValue(connue.getReponse(), type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Réponse enregistrée illisible pour " + connue.getId(), e);
+        }
+    }
+
+    private String ecrire(Object reponse) {
+        try {
+            return objectMapper.writeValueAsString(reponse);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Réponse impossible à enregistrer", e);
+        }
+    }
+
+    /**
+     * Empreinte SHA-256 du corps de la requête, sérialisé en JSON
+     */
+    private String empreinte(Object requete) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(requete)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Empreinte de la requête impossible à calculer", e);
+        }
+    }
+}
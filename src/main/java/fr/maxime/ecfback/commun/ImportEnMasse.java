@@ -0,0 +1,158 @@
+package fr.maxime.ecfback.commun;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Import en masse de documents depuis le corps d'une requête : un tableau JSON ou un flux NDJSON (un objet par ligne).<br>
+ * Le corps est lu élément par élément et les documents sont insérés par lots non ordonnés (bulkWrite) de taille
+ * ecfback.import.taille-lot : la mémoire utilisée dépend de la taille d'un lot, pas de celle du corps.
+ */
+@Component
+public class ImportEnMasse {
+
+    Logger logger = LoggerFactory.getLogger(ImportEnMasse.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final int tailleLot;
+
+    public ImportEnMasse(MongoTemplate mongoTemplate,
+                         ObjectMapper objectMapper,
+                         @Value("${ecfback.import.taille-lot:1000}") int tailleLot) {
+        if (tailleLot < 1) {
+            throw new IllegalArgumentException("ecfback.import.taille-lot doit être positif : " + tailleLot);
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.tailleLot = tailleLot;
+    }
+
+    /**
+     * Cette fonction insère tous les éléments du corps dans la collection du type donné<br>
+     * Un élément mal formé (champ d'un mauvais type, doublon sur un index unique...) est rejeté sans bloquer les autres.
+     * Une erreur de syntaxe JSON interrompt la lecture : les éléments lus avant elle sont tout de même insérés
+     * @param corps Le corps de la requête
+     * @param type La classe des documents (Vehicule, Locataire...)
+     * @return Le bilan de l'import
+     */
+    public <T> ResultatImport importer(InputStream corps, Class<T> type) {
+        return importer(corps, type, null);
+    }
+
+    /**
+     * Cette fonction insère tous les éléments du corps et transmet chaque élément inséré à inseres<br>
+     * Les ids absents sont attribués avant l'écriture : l'élément transmis porte l'id du document inséré
+     * @param corps Le corps de la requête
+     * @param type La classe des documents (Vehicule, Locataire...)
+     * @param inseres Appelée pour chaque élément effectivement inséré (null : aucun appel)
+     * @return Le bilan de l'import
+     */
+    public <T> ResultatImport importer(InputStream corps, Class<T> type, Consumer<T> inseres) {
+        ResultatImport resultat = new ResultatImport();
+        List<T> lot = new ArrayList<>(tailleLot);
+        long[] positions = new long[tailleLot];
+        long index = 0;
+        long debut = System.currentTimeMillis();
+
+        try (MappingIterator<T> elements = objectMapper.readerFor(type).readValues(corps)) {
+            while (elements.hasNextValue()) {
+                try {
+                    T element = elements.nextValue();
+                    if (element == null) {
+                        resultat.rejeter(index, "Élément vide");
+                    } else {
+                        positions[lot.size()] = index;
+                        lot.add(element);
+                        if (lot.size() == tailleLot) {
+                            ecrire(lot, positions, type, resultat, inseres);
+                        }
+                    }
+                } catch (JsonMappingException e) {
+                    resultat.rejeter(index, e.getOriginalMessage());
+                }
+                index++;
+            }
+        } catch (JsonProcessingException e) {
+            logger.warn("Import " + type.getSimpleName() + " interrompu à l'élément " + index + " : " + e.getOriginalMessage());
+            resultat.rejeter(index++, "JSON invalide : " + e.getOriginalMessage());
+            resultat.setInterrompu(true);
+        } catch (IOException e) {
+            logger.warn("Lecture du corps impossible : " + e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Lecture du corps impossible");
+        }
+        ecrire(lot, positions, type, resultat, inseres);
+        resultat.setRecus(index);
+
+        logger.info("Import " + type.getSimpleName() + " : " + resultat.getInseres() + " insérés, "
+                + resultat.getRejetes() + " rejetés sur " + index + " en " + (System.currentTimeMillis() - debut) + " ms");
+        return resultat;
+    }
+
+    private <T> void ecrire(List<T> lot, long[] positions, Class<T> type, ResultatImport resultat, Consumer<T> inseres) {
+        if (lot.isEmpty()) {
+            return;
+        }
+        if (inseres != null) {
+            attribuerIds(lot, type);
+        }
+        Set<Integer> rejetes = new HashSet<>();
+        try {
+            BulkWriteResult ecrits = mongoTemplate.bulkOps(BulkMode.UNORDERED, type).insert(lot).execute();
+            resultat.inserer(ecrits.getInsertedCount());
+        } catch (BulkOperationException e) {
+            resultat.inserer(e.getResult().getInsertedCount());
+            for (BulkWriteError erreur : e.getErrors()) {
+                rejetes.add(erreur.getIndex());
+                resultat.rejeter(positions[erreur.getIndex()], erreur.getMessage());
+            }
+        }
+        if (inseres != null) {
+            for (int i = 0; i < lot.size(); i++) {
+                if (!rejetes.contains(i)) {
+                    inseres.accept(lot.get(i));
+                }
+            }
+        }
+        lot.clear();
+    }
+
+    /**
+     * L'insertion en lot ne recopie pas dans les éléments les _id générés par le driver : ils sont attribués ici
+     */
+    private <T> void attribuerIds(List<T> lot, Class<T> type) {
+        MongoPersistentEntity<?> entite = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+        MongoPersistentProperty id = entite.getRequiredIdProperty();
+        for (T element : lot) {
+            PersistentPropertyAccessor<T> accessor = entite.getPropertyAccessor(element);
+            if (accessor.getProperty(id) == null) {
+                accessor.setProperty(id, ObjectId.class.equals(id.getType()) ? new ObjectId() : new ObjectId().toHexString());
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package fr.maxime.ecfback.commun;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Compteurs par requête HTTP : commandes MongoDB envoyées et références @DBRef résolues.<br>
+ * Une route qui se met à envoyer une commande par location (N+1) se repère sur ecfback.requete.mongo.commandes
+ * et ecfback.requete.resolutions, tagués comme http.server.requests (method, uri).<br>
+ * Les compteurs sont portés par le thread de la requête : l'écriture asynchrone des réponses NDJSON n'est pas comptée.
+ */
+@Component
+@Profile("!reactif")
+public class MetriquesRequete extends OncePerRequestFilter {
+
+    private static final ThreadLocal<Compteurs> COMPTEURS = new ThreadLocal<>();
+
+    private final MeterRegistry registry;
+
+    public MetriquesRequete(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Cette fonction compte une commande MongoDB envoyée par la requête HTTP en cours (voir MongoCommandesListener)
+     */
+    public static void commandeMongo() {
+        Compteurs compteurs = COMPTEURS.get();
+        if (compteurs != null) {
+            compteurs.commandes++;
+        }
+    }
+
+    /**
+     * Cette fonction compte une requête de résolution de références @DBRef (voir LocationResolver)
+     * @param references Le nombre d'ids référencés chargés par cette requête
+     */
+    public static void resolution(int references) {
+        Compteurs compteurs = COMPTEURS.get();
+        if (compteurs != null) {
+            compteurs.resolutions++;
+            compteurs.references += references;
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Compteurs compteurs = new Compteurs();
+        COMPTEURS.set(compteurs);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            COMPTEURS.remove();
+            Object motif = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            Tags tags = Tags.of("method", request.getMethod(), "uri", motif != null ? motif.toString() : "UNKNOWN");
+            resume("ecfback.requete.mongo.commandes", "Commandes MongoDB envoyées par requête HTTP", tags)
+                    .record(compteurs.commandes);
+            resume("ecfback.requete.resolutions", "Requêtes de résolution des @DBRef par requête HTTP", tags)
+                    .record(compteurs.resolutions);
+            resume("ecfback.requete.references", "Références @DBRef résolues par requête HTTP", tags)
+                    .record(compteurs.references);
+        }
+    }
+
+    private DistributionSummary resume(String nom, String description, Tags tags) {
+        return DistributionSummary.builder(nom).description(description).tags(tags).register(registry);
+    }
+
+    private static final class Compteurs {
+        private long commandes;
+        private long resolutions;
+        private long references;
+    }
+}
@@ -0,0 +1,38 @@
+package fr.maxime.ecfback.commun;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Écriture d'une réponse NDJSON (un document JSON par ligne) au fil du curseur MongoDB,
+ * sans charger la collection en mémoire.
+ */
+public final class Ndjson {
+
+    private Ndjson() {
+    }
+
+    /**
+     * Cette fonction crée le corps de réponse qui écrit chaque élément du flux dès qu'il est lu<br>
+     * Le flux est ouvert dans le thread d'écriture et fermé (curseur compris) à la fin de la réponse
+     * @param objectMapper Le mapper JSON de l'application
+     * @param source Le fournisseur du flux d'éléments
+     * @return Le corps de la réponse
+     */
+    public static <T> StreamingResponseBody ecrire(ObjectMapper objectMapper, Supplier<Stream<T>> source) {
+        return outputStream -> {
+            try (Stream<T> elements = source.get()) {
+                Iterator<T> iterator = elements.iterator();
+                while (iterator.hasNext()) {
+                    outputStream.write(objectMapper.writeValueAsBytes(iterator.next()));
+                    outputStream.write('\n');
+                }
+            }
+            outputStream.flush();
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package fr.maxime.ecfback.commun;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Pagination par curseur sur l'_id : une page est demandée avec "limit" et "after" (id du dernier élément reçu).<br>
+ * Contrairement à un skip, le coût d'une page ne dépend pas de sa position dans la collection.<br>
+ * Les ids générés par MongoDB sont des ObjectId, ceux fournis par les clients peuvent être du texte : MongoDB trie
+ * les textes avant les ObjectId, et un $gt ne compare que des valeurs du même type (voir curseur).
+ */
+public final class Pagination {
+
+    public static final int LIMITE_PAR_DEFAUT = 100;
+    public static final int LIMITE_MAX = 1000;
+
+    private Pagination() {
+    }
+
+    /**
+     * Cette fonction retourne la première page triée par _id de la taille demandée
+     * @param limit Le nombre d'éléments de la page (null pour la valeur par défaut)
+     * @return La page à passer au repository
+     */
+    public static Pageable page(Integer limit) {
+        return page(0, limit, Sort.by("id"));
+    }
+
+    /**
+     * Cette fonction retourne la page demandée par son numéro, pour les listes triées sur un autre champ que l'_id<br>
+     * Les pages précédentes sont sautées (skip) : à réserver aux requêtes dont le résultat est déjà borné par un index
+     * @param numero Le numéro de la page, à partir de 0 (null pour la première)
+     * @param limit Le nombre d'éléments de la page (null pour la valeur par défaut)
+     * @param tri Le tri de la liste
+     * @return La page à passer à la requête
+     */
+    public static Pageable page(Integer numero, Integer limit, Sort tri) {
+        int taille = limit == null ? LIMITE_PAR_DEFAUT : limit;
+        if (taille < 1 || taille > LIMITE_MAX) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit doit être compris entre 1 et " + LIMITE_MAX);
+        }
+        if (numero != null && numero < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "page doit être positif");
+        }
+        return PageRequest.of(numero == null ? 0 : numero, taille, tri);
+    }
+
+    /**
+     * Cette fonction construit le critère des éléments qui suivent le curseur reçu dans l'ordre des _id<br>
+     * Le QueryMapper ne convertit pas les ids dans un $gt, la conversion en ObjectId est donc faite ici.
+     * Après un id texte viennent les ids texte plus grands puis tous les ObjectId
+     * @param after L'id du dernier élément de la page précédente
+     * @return Le critère sur l'_id
+     */
+    public static Criteria curseur(String after) {
+        if (ObjectId.isValid(after)) {
+            return where("id").gt(new ObjectId(after));
+        }
+        return new Criteria().orOperator(where("id").gt(after), where("id").type(JsonSchemaObject.Type.OBJECT_ID));
+    }
+
+    /**
+     * Cette fonction construit la requête MongoDB d'une page triée par _id
+     * @param after L'id du dernier élément de la page précédente (null pour la première page)
+     * @param limit Le nombre d'éléments de la page (null pour la valeur par défaut)
+     * @return La requête de la page
+     */
+    public static Query apres(String after, Integer limit) {
+        Query query = new Query().with(page(limit));
+        if (after != null) {
+            query.addCriteria(curseur(after));
+        }
+        return query;
+    }
+}
@@ -0,0 +1,125 @@
+package fr.maxime.ecfback.commun;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Champs demandés par le paramètre fields= d'une liste ("id,marque,prix").<br>
+ * La projection est appliquée à la requête MongoDB : les autres champs ne sont ni lus en base, ni décodés,
+ * ni sérialisés. Un champ "reference.sousChamp" ("locataire.nom") projette aussi le document référencé.
+ * L'id est toujours renvoyé.
+ */
+public final class Projection {
+
+    private final Set<String> racines = new LinkedHashSet<>();
+    private final Map<String, Projection> references = new LinkedHashMap<>();
+
+    private Projection() {
+        racines.add("id");
+    }
+
+    /**
+     * Cette fonction lit le paramètre fields= et vérifie chaque champ demandé
+     * @param fields Les champs séparés par des virgules
+     * @param autorises Les champs qu'il est possible de demander, "reference.sousChamp" pour un document référencé
+     * @return La projection
+     */
+    public static Projection de(String fields, Collection<String> autorises) {
+        Projection projection = new Projection();
+        Set<String> entieres = new LinkedHashSet<>();
+        for (String champ : fields.split(",")) {
+            champ = champ.trim();
+            if (champ.isEmpty()) {
+                continue;
+            }
+            if (!autorises.contains(champ)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Champ inconnu : " + champ + " (champs possibles : " + String.join(",", autorises) + ")");
+            }
+            int point = champ.indexOf('.');
+            if (point < 0) {
+                projection.racines.add(champ);
+                entieres.add(champ);
+            } else {
+                String reference = champ.substring(0, point);
+                projection.racines.add(reference);
+                projection.references.computeIfAbsent(reference, cle -> new Projection()).racines.add(champ.substring(point + 1));
+            }
+        }
+        // Une référence demandée sans sous-champ ("locataire") est projetée sur tous ses champs possibles
+        for (String autorise : autorises) {
+            int point = autorise.indexOf('.');
+            if (point > 0 && entieres.contains(autorise.substring(0, point))) {
+                projection.references.computeIfAbsent(autorise.substring(0, point), cle -> new Projection())
+                        .racines.add(autorise.substring(point + 1));
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * Cette fonction limite les champs lus par la requête à ceux de la projection
+     * @param query La requête
+     * @return La même requête
+     */
+    public Query appliquer(Query query) {
+        racines.forEach(champ -> query.fields().include(champ));
+        return query;
+    }
+
+    /**
+     * Cette fonction retourne la projection d'un document référencé, null s'il n'est pas demandé
+     * @param reference Le champ contenant la référence
+     * @return La projection du document référencé
+     */
+    public Projection reference(String reference) {
+        return references.get(reference);
+    }
+
+    /**
+     * Cette fonction convertit un document projeté en réponse JSON, dans l'ordre des champs demandés<br>
+     * Les ObjectId et @DBRef deviennent leur id, les dates des LocalDate (comme les entités de l'application)
+     * @param document Le document lu avec appliquer
+     * @return Les champs demandés présents dans le document
+     */
+    public Map<String, Object> lire(Document document) {
+        Map<String, Object> reponse = new LinkedHashMap<>();
+        for (String champ : racines) {
+            Object valeur = document.get("id".equals(champ) ? "_id" : champ);
+            if (valeur != null) {
+                reponse.put(champ, valeur(valeur));
+            }
+        }
+        return reponse;
+    }
+
+    private static Object valeur(Object valeur) {
+        if (valeur instanceof ObjectId id) {
+            return id.toHexString();
+        }
+        if (valeur instanceof DBRef reference) {
+            return valeur(reference.getId());
+        }
+        if (valeur instanceof Date date) {
+            return LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault());
+        }
+        if (valeur instanceof List<?> liste) {
+            return liste.stream().map(Projection::valeur).toList();
+        }
+        return valeur;
+    }
+}
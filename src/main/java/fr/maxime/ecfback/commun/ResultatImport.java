@@ -0,0 +1,56 @@
+package fr.maxime.ecfback.commun;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bilan d'un import en masse : nombre d'éléments lus, insérés, rejetés,
+ * et le détail des rejets (position de l'élément dans le corps de la requête et motif).
+ */
+@Data
+@NoArgsConstructor
+public class ResultatImport {
+
+    /**
+     * Nombre maximum de rejets détaillés dans la réponse, les suivants sont seulement comptés
+     */
+    public static final int ERREURS_MAX = 1000;
+
+    private long recus;
+    private long inseres;
+    private long rejetes;
+    private boolean interrompu;
+    private List<Erreur> erreurs = new ArrayList<>();
+
+    /**
+     * Cette fonction ajoute au bilan les éléments insérés par un lot
+     * @param nombre Le nombre d'éléments insérés
+     */
+    public void inserer(long nombre) {
+        inseres += nombre;
+    }
+
+    /**
+     * Cette fonction enregistre le rejet d'un élément
+     * @param index La position de l'élément dans le corps de la requête (à partir de 0)
+     * @param message Le motif du rejet
+     */
+    public void rejeter(long index, String message) {
+        rejetes++;
+        if (erreurs.size() < ERREURS_MAX) {
+            erreurs.add(new Erreur(index, message));
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Erreur {
+        private long index;
+        private String message;
+    }
+}
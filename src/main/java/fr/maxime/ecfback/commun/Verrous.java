@@ -0,0 +1,36 @@
+package fr.maxime.ecfback.commun;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verrous répartis par clé (lock striping) : deux clés différentes ont de grandes chances d'utiliser
+ * des verrous différents, ce qui sérialise les opérations sur une même clé sans bloquer les autres.
+ */
+public class Verrous {
+
+    private final Lock[] verrous;
+    private final int masque;
+
+    /**
+     * @param nombre Le nombre de verrous, arrondi à la puissance de 2 supérieure
+     */
+    public Verrous(int nombre) {
+        int taille = Integer.highestOneBit(Math.max(1, nombre - 1)) << 1;
+        this.verrous = new Lock[taille];
+        for (int i = 0; i < taille; i++) {
+            verrous[i] = new ReentrantLock();
+        }
+        this.masque = taille - 1;
+    }
+
+    /**
+     * Cette fonction retourne le verrou associé à la clé
+     * @param cle La clé (par exemple l'id d'un véhicule)
+     * @return Le verrou de la clé
+     */
+    public Lock pour(String cle) {
+        int hash = cle == null ? 0 : cle.hashCode();
+        return verrous[(hash ^ (hash >>> 16)) & masque];
+    }
+}
@@ -0,0 +1,37 @@
+package fr.maxime.ecfback.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Métriques Micrometer, exposées au format Prometheus sur /actuator/prometheus.<br>
+ * Spring Boot fournit les durées des routes (http.server.requests), des commandes MongoDB (mongodb.driver.commands)
+ * et l'état du pool de connexions (mongodb.driver.pool.*). S'y ajoutent les durées des méthodes des services
+ * annotés @Timed (ecfback.service), les documents par commande MongoDB et les compteurs par requête HTTP.
+ */
+@Configuration
+public class MetriquesConfig {
+
+    /**
+     * Cette fonction active l'annotation @Timed sur les services (tags class, method et exception)
+     * @param registry Le registre des métriques
+     * @return L'aspect qui chronomètre les méthodes annotées
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    /**
+     * Cette fonction ajoute MongoCommandesListener aux listeners du client MongoDB
+     * @param listener Le listener des commandes
+     * @return La personnalisation des réglages du client MongoDB
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer metriquesCommandesMongo(MongoCommandesListener listener) {
+        return builder -> builder.addCommandListener(listener);
+    }
+}
@@ -0,0 +1,87 @@
+package fr.maxime.ecfback.config;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import fr.maxime.ecfback.commun.MetriquesRequete;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Écoute les commandes envoyées par le driver MongoDB.<br>
+ * La latence par collection est déjà mesurée par Spring Boot (mongodb.driver.commands) : ce listener ajoute
+ * le nombre de documents renvoyés ou modifiés par commande (ecfback.mongo.documents, tagué command et collection)
+ * et compte les commandes de la requête HTTP en cours (voir MetriquesRequete).
+ */
+@Component
+public class MongoCommandesListener implements CommandListener {
+
+    private final MeterRegistry registry;
+    private final Map<Integer, String> collections = new ConcurrentHashMap<>();
+
+    public MongoCommandesListener(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        MetriquesRequete.commandeMongo();
+        String collection = collection(event.getCommandName(), event.getCommand());
+        if (collection != null) {
+            collections.put(event.getRequestId(), collection);
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        String collection = collections.remove(event.getRequestId());
+        long documents = documents(event.getResponse());
+        if (collection == null || documents < 0) {
+            return;
+        }
+        DistributionSummary.builder("ecfback.mongo.documents")
+                .description("Documents renvoyés ou modifiés par commande MongoDB")
+                .baseUnit("documents")
+                .tag("command", event.getCommandName())
+                .tag("collection", collection)
+                .register(registry)
+                .record(documents);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        collections.remove(event.getRequestId());
+    }
+
+    /**
+     * La collection est la valeur du premier champ de la commande ({find: "location", ...}),
+     * sauf pour getMore où elle est dans le champ collection
+     */
+    private static String collection(String commande, BsonDocument document) {
+        BsonValue valeur = "getMore".equals(commande) ? document.get("collection") : document.get(commande);
+        return valeur != null && valeur.isString() ? valeur.asString().getValue() : null;
+    }
+
+    /**
+     * Les lectures renvoient un curseur (firstBatch puis nextBatch), les écritures le nombre de documents n
+     * @return Le nombre de documents, -1 pour les autres commandes
+     */
+    private static long documents(BsonDocument reponse) {
+        BsonValue curseur = reponse.get("cursor");
+        if (curseur != null && curseur.isDocument()) {
+            BsonDocument lot = curseur.asDocument();
+            BsonValue documents = lot.containsKey("firstBatch") ? lot.get("firstBatch") : lot.get("nextBatch");
+            return documents instanceof BsonArray tableau ? tableau.size() : -1;
+        }
+        BsonValue n = reponse.get("n");
+        return n != null && n.isNumber() ? n.asNumber().longValue() : -1;
+    }
+}
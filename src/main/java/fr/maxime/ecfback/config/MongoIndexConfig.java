@@ -0,0 +1,89 @@
+package fr.maxime.ecfback.config;
+
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(name = "ecfback.mongo.index-creation", havingValue = "true", matchIfMissing = true)
+public class MongoIndexConfig {
+
+    Logger logger = LoggerFactory.getLogger(MongoIndexConfig.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+    private final VerificationPlans verificationPlans;
+
+    public MongoIndexConfig(MongoTemplate mongoTemplate,
+                            MongoMappingContext mappingContext,
+                            VerificationPlans verificationPlans) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+        this.verificationPlans = verificationPlans;
+    }
+
+    /**
+     * Cette fonction crée au démarrage les index déclarés sur les classes @Document (@Indexed, @CompoundIndex)
+     * puis ceux des champs écrits hors entité (idLocataire et idVehicule des locations au format instantane)<br>
+     * Une base injoignable ou un index impossible à créer ne bloque pas le démarrage : l'erreur est seulement journalisée<br>
+     * Les plans des requêtes dérivées des repositories sont ensuite vérifiés (voir VerificationPlans)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void creerIndex() {
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(Document.class)) {
+                continue;
+            }
+            IndexOperations indexOperations = mongoTemplate.indexOps(entity.getType());
+            for (IndexDefinition index : resolver.resolveIndexFor(entity.getTypeInformation())) {
+                if (!creer(indexOperations, entity.getCollection(), index)) {
+                    return;
+                }
+            }
+        }
+        IndexOperations locations = mongoTemplate.indexOps(Location.class);
+        for (String champ : List.of(LocationResolver.ID_LOCATAIRE, LocationResolver.ID_VEHICULE)) {
+            if (!creer(locations, mongoTemplate.getCollectionName(Location.class), new Index(champ, Sort.Direction.ASC))) {
+                return;
+            }
+        }
+        verificationPlans.verifier();
+    }
+
+    /**
+     * @return false si la base est injoignable
+     */
+    private boolean creer(IndexOperations indexOperations, String collection, IndexDefinition index) {
+        try {
+            indexOperations.ensureIndex(index);
+            logger.info("Index " + collection + " : " + index.getIndexKeys().toJson());
+        } catch (DataAccessResourceFailureException e) {
+            logger.warn("Base MongoDB injoignable, index non créés : " + e.getMessage());
+            return false;
+        } catch (DataAccessException e) {
+            logger.warn("Index " + collection + " " + index.getIndexKeys().toJson()
+                    + " impossible à créer : " + e.getMessage());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,37 @@
+package fr.maxime.ecfback.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Taille du pool de connexions MongoDB (ecfback.mongo.pool.*).<br>
+ * Avec le pool de threads Tomcat (200 threads), la valeur par défaut du driver (100 connexions) suffit ;
+ * avec les threads virtuels (profil "virtuel"), c'est ce pool qui limite le nombre de requêtes MongoDB simultanées.
+ */
+@Configuration
+public class MongoPoolConfig {
+
+    Logger logger = LoggerFactory.getLogger(MongoPoolConfig.class);
+
+    /**
+     * Cette fonction applique la taille maximale du pool et le temps d'attente maximal d'une connexion libre
+     * @param tailleMax Le nombre maximal de connexions par serveur MongoDB
+     * @param attenteMax Le temps maximal d'attente d'une connexion avant erreur
+     * @return La personnalisation des réglages du client MongoDB
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer poolMongo(@Value("${ecfback.mongo.pool.taille-max:100}") int tailleMax,
+                                                          @Value("${ecfback.mongo.pool.attente-max:2m}") Duration attenteMax) {
+        logger.info("Pool MongoDB : " + tailleMax + " connexions, attente maximale " + attenteMax);
+        return builder -> builder.applyToConnectionPoolSettings(pool -> pool
+                .maxSize(tailleMax)
+                .maxWaitTime(attenteMax.toMillis(), TimeUnit.MILLISECONDS));
+    }
+}
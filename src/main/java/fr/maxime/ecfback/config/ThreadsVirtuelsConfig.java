@@ -0,0 +1,65 @@
+package fr.maxime.ecfback.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Profil "virtuel" : chaque requête HTTP est traitée sur un thread virtuel (Java 21) au lieu d'un thread
+ * du pool Tomcat. Un appel bloquant à MongoDB ne retient plus qu'un thread virtuel : le nombre de requêtes
+ * simultanées n'est plus limité par server.tomcat.threads.max mais par le pool de connexions MongoDB.<br>
+ * L'application reste compilée pour Java 17 : l'exécuteur est obtenu par réflexion et le démarrage échoue
+ * si le profil est activé sur une JVM plus ancienne que Java 21.
+ */
+@Configuration
+@Profile("virtuel")
+public class ThreadsVirtuelsConfig {
+
+    Logger logger = LoggerFactory.getLogger(ThreadsVirtuelsConfig.class);
+
+    /**
+     * Cette fonction crée l'exécuteur qui démarre un thread virtuel par tâche
+     * @return L'exécuteur des threads virtuels
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService executeurVirtuel() {
+        try {
+            ExecutorService executeur = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Requêtes HTTP servies par des threads virtuels (Java " + Runtime.version().feature() + ")");
+            return executeur;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Le profil virtuel nécessite Java 21 ou plus (JVM actuelle : "
+                    + Runtime.version() + ")", e);
+        }
+    }
+
+    /**
+     * Cette fonction remplace le pool de threads de Tomcat par l'exécuteur des threads virtuels
+     * @param executeurVirtuel L'exécuteur des threads virtuels
+     * @return La personnalisation du connecteur Tomcat
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> tomcatThreadsVirtuels(ExecutorService executeurVirtuel) {
+        return protocolHandler -> protocolHandler.setExecutor(executeurVirtuel);
+    }
+
+    /**
+     * Cette fonction fait aussi écrire les réponses asynchrones (StreamingResponseBody des flux NDJSON)
+     * sur des threads virtuels, à la place du pool applicationTaskExecutor de Spring Boot
+     * @param executeurVirtuel L'exécuteur des threads virtuels
+     * @return L'exécuteur des tâches asynchrones de Spring MVC
+     */
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService executeurVirtuel) {
+        return new TaskExecutorAdapter(executeurVirtuel);
+    }
+}
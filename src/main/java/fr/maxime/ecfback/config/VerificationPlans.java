@@ -0,0 +1,184 @@
+package fr.maxime.ecfback.config;
+
+import com.mongodb.ExplainVerbosity;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.repository.core.RepositoryInformation;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Vérification au démarrage du plan d'exécution des requêtes dérivées des repositories (findAllByMarque...).<br>
+ * Chaque requête est reconstruite à partir du nom de la méthode puis passée à explain : le plan retenu est journalisé
+ * et un parcours complet de la collection (COLLSCAN) est signalé selon ecfback.mongo.verification-plans :
+ * off (pas de vérification), warn (avertissement) ou fail (échec du démarrage).
+ */
+@Component
+public class VerificationPlans {
+
+    Logger logger = LoggerFactory.getLogger(VerificationPlans.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+    private final ApplicationContext applicationContext;
+    private final String mode;
+
+    public VerificationPlans(MongoTemplate mongoTemplate,
+                             MongoMappingContext mappingContext,
+                             ApplicationContext applicationContext,
+                             @Value("${ecfback.mongo.verification-plans:warn}") String mode) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+        this.applicationContext = applicationContext;
+        this.mode = mode;
+    }
+
+    /**
+     * Cette fonction journalise le plan de chaque requête dérivée et signale celles qui parcourent toute la collection<br>
+     * En mode fail, une IllegalStateException listant ces requêtes interrompt le démarrage
+     */
+    public void verifier() {
+        if ("off".equals(mode)) {
+            return;
+        }
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        Repositories repositories = new Repositories(applicationContext);
+        List<String> parcoursComplets = new ArrayList<>();
+
+        for (Class<?> domainType : repositories) {
+            RepositoryInformation information = repositories.getRepositoryInformationFor(domainType).orElse(null);
+            if (information == null) {
+                continue;
+            }
+            String collection = mongoTemplate.getCollectionName(domainType);
+            for (Method methode : information.getQueryMethods()) {
+                String nom = information.getRepositoryInterface().getSimpleName() + "." + methode.getName();
+                Query query = requete(methode, domainType);
+                if (query == null) {
+                    logger.debug("Plan non vérifié (requête non sélective ou non dérivée) : " + nom);
+                    continue;
+                }
+                Document filtre = queryMapper.getMappedObject(query.getQueryObject(), mappingContext.getPersistentEntity(domainType));
+                try {
+                    Document explain = mongoTemplate.execute(collection,
+                            c -> c.find(filtre).explain(ExplainVerbosity.QUERY_PLANNER));
+                    List<String> etapes = new ArrayList<>();
+                    etapes(explain.get("queryPlanner", Document.class).get("winningPlan"), etapes);
+                    if (etapes.contains("COLLSCAN")) {
+                        parcoursComplets.add(nom);
+                        logger.warn("Parcours complet de " + collection + " pour " + nom + " " + filtre.toJson());
+                    } else {
+                        logger.info("Plan " + nom + " : " + String.join(" > ", etapes));
+                    }
+                } catch (DataAccessException e) {
+                    logger.warn("Plan de " + nom + " impossible à obtenir : " + e.getMessage());
+                }
+            }
+        }
+
+        if (!parcoursComplets.isEmpty() && "fail".equals(mode)) {
+            throw new IllegalStateException("Requêtes sans index : " + parcoursComplets);
+        }
+    }
+
+    /**
+     * Reconstruit la requête d'une méthode dérivée avec des valeurs d'exemple du bon type<br>
+     * Retourne null pour les méthodes sans critère (findAllBy), annotées @Query, ou dont un critère est une négation
+     * (NotIn, IsNot...) : ces requêtes ne peuvent pas être servies par un index et ne sont pas vérifiées
+     */
+    private static Query requete(Method methode, Class<?> domainType) {
+        if (methode.isAnnotationPresent(org.springframework.data.mongodb.repository.Query.class)) {
+            return null;
+        }
+        PartTree arbre;
+        try {
+            arbre = new PartTree(methode.getName(), domainType);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (!arbre.hasPredicate()) {
+            return null;
+        }
+        List<Criteria> alternatives = new ArrayList<>();
+        for (PartTree.OrPart alternative : arbre) {
+            List<Criteria> criteres = new ArrayList<>();
+            for (Part part : alternative) {
+                Criteria critere = critere(part);
+                if (critere == null) {
+                    return null;
+                }
+                criteres.add(critere);
+            }
+            alternatives.add(criteres.size() == 1 ? criteres.get(0) : new Criteria().andOperator(criteres));
+        }
+        return new Query(alternatives.size() == 1 ? alternatives.get(0) : new Criteria().orOperator(alternatives));
+    }
+
+    private static Criteria critere(Part part) {
+        String champ = part.getProperty().toDotPath();
+        Object valeur = exemple(part.getProperty());
+        return switch (part.getType()) {
+            case SIMPLE_PROPERTY -> where(champ).is(valeur);
+            case GREATER_THAN, AFTER -> where(champ).gt(valeur);
+            case GREATER_THAN_EQUAL -> where(champ).gte(valeur);
+            case LESS_THAN, BEFORE -> where(champ).lt(valeur);
+            case LESS_THAN_EQUAL -> where(champ).lte(valeur);
+            case BETWEEN -> where(champ).gte(valeur).lte(valeur);
+            case IN -> where(champ).in(valeur);
+            case STARTING_WITH -> where(champ).regex("^" + valeur);
+            default -> null;
+        };
+    }
+
+    private static Object exemple(PropertyPath chemin) {
+        Class<?> type = chemin.getLeafType();
+        if ("id".equals(chemin.getLeafProperty().getSegment())) {
+            return new ObjectId();
+        }
+        if (String.class.equals(type)) {
+            return "?";
+        }
+        if (Number.class.isAssignableFrom(type) || type.isPrimitive()) {
+            return 0;
+        }
+        if (LocalDate.class.equals(type)) {
+            return LocalDate.now();
+        }
+        return null;
+    }
+
+    /**
+     * Liste les étapes du plan retenu, avec le nom de l'index utilisé ("FETCH", "IXSCAN(marque_modele)"...)
+     */
+    private static void etapes(Object plan, List<String> etapes) {
+        if (plan instanceof Document document) {
+            Object stage = document.get("stage");
+            if (stage != null) {
+                etapes.add(document.containsKey("indexName") ? stage + "(" + document.get("indexName") + ")" : stage.toString());
+            }
+            document.values().forEach(valeur -> etapes(valeur, etapes));
+        } else if (plan instanceof List<?> liste) {
+            liste.forEach(valeur -> etapes(valeur, etapes));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package fr.maxime.ecfback.disponibilites;
+
+import fr.maxime.ecfback.changements.Changement;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationResolver;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index en mémoire des périodes de location de chaque véhicule.<br>
+ * Il est chargé une seule fois depuis la collection location (au premier appel) puis tenu à jour
+ * par LocationServiceImpl à chaque enregistrement ou suppression de location, et par les changements
+ * reçus des autres instances si le flux des changements est actif (voir FluxChangements).
+ */
+@Service
+public class DisponibiliteService {
+
+    Logger logger = LoggerFactory.getLogger(DisponibiliteService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, Planning> plannings = new ConcurrentHashMap<>();
+    private final Map<String, String> vehiculeParLocation = new ConcurrentHashMap<>();
+    private final Lock chargement = new ReentrantLock();
+    private volatile boolean charge;
+
+    public DisponibiliteService(MongoTemplate mongoTemplate) {
+        logger.info("Création du service Disponibilite");
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Cette fonction enregistre (ou déplace) la période d'une location dans le planning de son véhicule
+     * @param idLocation L'id de la location
+     * @param idVehicule L'id du véhicule loué
+     * @param debut La date de début
+     * @param fin La date de fin
+     */
+    public void enregistrer(String idLocation, String idVehicule, LocalDate debut, LocalDate fin) {
+        chargerSiNecessaire();
+        indexer(idLocation, idVehicule, debut, fin);
+    }
+
+    /**
+     * Cette fonction retire la période d'une location du planning de son véhicule
+     * @param idLocation L'id de la location supprimée
+     */
+    public void retirer(String idLocation) {
+        chargerSiNecessaire();
+        desindexer(idLocation);
+    }
+
+    /**
+     * Cette fonction applique à l'index une location écrite par une autre instance (ou par celle-ci : l'index
+     * est alors déjà à jour)<br>
+     * Rien n'est fait tant que l'index n'est pas chargé : le chargement lira l'état courant
+     * @param changement Le changement publié par FluxChangements
+     */
+    @EventListener
+    public void changement(Changement changement) {
+        if (!changement.concerne(mongoTemplate.getCollectionName(Location.class)) || !charge) {
+            return;
+        }
+        switch (changement.operation()) {
+            case INSERTION, MODIFICATION -> {
+                if (changement.document() != null) {
+                    indexer(changement.document());
+                } else {
+                    // Supprimée avant la relecture du document : la suppression suit dans le flux
+                    desindexer(changement.id());
+                }
+            }
+            case SUPPRESSION -> desindexer(changement.id());
+            case REINITIALISATION -> {
+                chargement.lock();
+                try {
+                    charge = false;
+                    plannings.clear();
+                    vehiculeParLocation.clear();
+                } finally {
+                    chargement.unlock();
+                }
+                logger.info("Plannings à recharger après la perte de changements");
+            }
+        }
+    }
+
+    /**
+     * Cette fonction indique si un véhicule est libre sur la période [debut, fin[
+     * @param idVehicule L'id du véhicule
+     * @param debut La date de début
+     * @param fin La date de fin
+     * @param idLocationIgnoree L'id d'une location à ne pas prendre en compte (modification), peut être null
+     * @return true si aucune autre location du véhicule ne chevauche la période
+     */
+    public boolean estDisponible(String idVehicule, LocalDate debut, LocalDate fin, String idLocationIgnoree) {
+        chargerSiNecessaire();
+        Planning planning = plannings.get(idVehicule);
+        return planning == null || planning.estLibre(debut, fin, idLocationIgnoree);
+    }
+
+    /**
+     * Cette fonction retourne les ids des véhicules loués sur au moins une partie de la période [debut, fin[
+     * @param debut La date de début
+     * @param fin La date de fin
+     * @return Les ids des véhicules occupés
+     */
+    public Set<String> vehiculesOccupes(LocalDate debut, LocalDate fin) {
+        chargerSiNecessaire();
+        return plannings.entrySet().stream()
+                .filter(entree -> !entree.getValue().estLibre(debut, fin))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Le chargement lit MongoDB : il est protégé par un ReentrantLock plutôt que par synchronized,
+     * pour ne pas bloquer le thread porteur d'un thread virtuel pendant la lecture (profil "virtuel")
+     */
+    private void chargerSiNecessaire() {
+        if (charge) {
+            return;
+        }
+        chargement.lock();
+        try {
+            if (!charge) {
+                charger();
+                charge = true;
+            }
+        } finally {
+            chargement.unlock();
+        }
+    }
+
+    private void charger() {
+        Query query = new Query();
+        query.fields().include("dateDebut", "dateFin", "vehicule", LocationResolver.ID_VEHICULE);
+        long debutChargement = System.currentTimeMillis();
+        try (Stream<Document> documents = mongoTemplate.query(Location.class).as(Document.class).matching(query).stream()) {
+            documents.forEach(this::indexer);
+        }
+        logger.info("Plannings chargés : " + vehiculeParLocation.size() + " locations, " + plannings.size()
+                + " véhicules en " + (System.currentTimeMillis() - debutChargement) + " ms");
+    }
+
+    private void indexer(Document document) {
+        ConversionService conversion = mongoTemplate.getConverter().getConversionService();
+        indexer(String.valueOf(document.get("_id")),
+                LocationResolver.idReference(document, "vehicule"),
+                conversion.convert(document.get("dateDebut"), LocalDate.class),
+                conversion.convert(document.get("dateFin"), LocalDate.class));
+    }
+
+    private void indexer(String idLocation, String idVehicule, LocalDate debut, LocalDate fin) {
+        if (idLocation == null || idVehicule == null || debut == null || fin == null || !fin.isAfter(debut)) {
+            logger.warn("Location ignorée par l'index des disponibilités : " + idLocation);
+            return;
+        }
+        String ancienVehicule = vehiculeParLocation.put(idLocation, idVehicule);
+        if (ancienVehicule != null && !ancienVehicule.equals(idVehicule)) {
+            plannings.computeIfPresent(ancienVehicule, (id, planning) -> {
+                planning.retirer(idLocation);
+                return planning.estVide() ? null : planning;
+            });
+        }
+        plannings.compute(idVehicule, (id, planning) -> {
+            Planning planningVehicule = planning == null ? new Planning() : planning;
+            planningVehicule.ajouter(idLocation, debut, fin);
+            return planningVehicule;
+        });
+    }
+
+    private void desindexer(String idLocation) {
+        if (idLocation == null) {
+            return;
+        }
+        String idVehicule = vehiculeParLocation.remove(idLocation);
+        if (idVehicule != null) {
+            plannings.computeIfPresent(idVehicule, (id, planning) -> {
+                planning.retirer(idLocation);
+                return planning.estVide() ? null : planning;
+            });
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package fr.maxime.ecfback.disponibilites;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Planning d'occupation d'un véhicule.<br>
+ * Les réservations sont des intervalles [debut, fin[ : le véhicule rendu le jour "fin" peut être reloué ce jour-là.
+ * Elles sont fusionnées en plages disjointes triées par date de début, ce qui permet de tester un chevauchement
+ * en O(log n) : seule la plage commençant juste avant la fin demandée peut chevaucher la période.
+ */
+public class Planning {
+
+    private final Map<String, Reservation> reservations = new HashMap<>();
+    private final TreeMap<LocalDate, LocalDate> occupations = new TreeMap<>();
+
+    /**
+     * Cette fonction ajoute ou remplace la réservation d'une location
+     * @param idLocation L'id de la location
+     * @param debut La date de début
+     * @param fin La date de fin (exclue)
+     */
+    public synchronized void ajouter(String idLocation, LocalDate debut, LocalDate fin) {
+        Reservation precedente = reservations.put(idLocation, new Reservation(debut, fin));
+        if (precedente != null) {
+            reconstruire();
+        } else {
+            fusionner(debut, fin);
+        }
+    }
+
+    /**
+     * Cette fonction retire la réservation d'une location
+     * @param idLocation L'id de la location
+     * @return true si la location était réservée sur ce véhicule
+     */
+    public synchronized boolean retirer(String idLocation) {
+        if (reservations.remove(idLocation) == null) {
+            return false;
+        }
+        reconstruire();
+        return true;
+    }
+
+    /**
+     * Cette fonction indique si le véhicule est libre sur toute la période [debut, fin[
+     * @param debut La date de début
+     * @param fin La date de fin (exclue)
+     * @return true si aucune réservation ne chevauche la période
+     */
+    public synchronized boolean estLibre(LocalDate debut, LocalDate fin) {
+        Map.Entry<LocalDate, LocalDate> plage = occupations.lowerEntry(fin);
+        return plage == null || !plage.getValue().isAfter(debut);
+    }
+
+    /**
+     * Cette fonction indique si le véhicule est libre sur la période en ignorant une location
+     * (cas de la modification d'une location existante)
+     * @param debut La date de début
+     * @param fin La date de fin (exclue)
+     * @param idLocationIgnoree L'id de la location à ignorer
+     * @return true si aucune autre réservation ne chevauche la période
+     */
+    public synchronized boolean estLibre(LocalDate debut, LocalDate fin, String idLocationIgnoree) {
+        if (idLocationIgnoree == null || !reservations.containsKey(idLocationIgnoree)) {
+            return estLibre(debut, fin);
+        }
+        for (Map.Entry<String, Reservation> entree : reservations.entrySet()) {
+            Reservation reservation = entree.getValue();
+            if (!Objects.equals(entree.getKey(), idLocationIgnoree) && reservation.chevauche(debut, fin)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean estVide() {
+        return reservations.isEmpty();
+    }
+
+    /**
+     * Cette fonction retourne les plages d'occupation fusionnées, triées par date de début
+     * @return Les plages [debut, fin[
+     */
+    public synchronized List<Reservation> occupations() {
+        List<Reservation> plages = new ArrayList<>(occupations.size());
+        occupations.forEach((debut, fin) -> plages.add(new Reservation(debut, fin)));
+        return plages;
+    }
+
+    private void fusionner(LocalDate debut, LocalDate fin) {
+        LocalDate nouveauDebut = debut;
+        LocalDate nouvelleFin = fin;
+        Map.Entry<LocalDate, LocalDate> precedente = occupations.floorEntry(debut);
+        if (precedente != null && !precedente.getValue().isBefore(debut)) {
+            nouveauDebut = precedente.getKey();
+            nouvelleFin = max(nouvelleFin, precedente.getValue());
+            occupations.remove(precedente.getKey());
+        }
+        Map.Entry<LocalDate, LocalDate> suivante = occupations.ceilingEntry(nouveauDebut);
+        while (suivante != null && !suivante.getKey().isAfter(nouvelleFin)) {
+            nouvelleFin = max(nouvelleFin, suivante.getValue());
+            occupations.remove(suivante.getKey());
+            suivante = occupations.ceilingEntry(nouveauDebut);
+        }
+        occupations.put(nouveauDebut, nouvelleFin);
+    }
+
+    private void reconstruire() {
+        occupations.clear();
+        reservations.values().forEach(reservation -> fusionner(reservation.debut(), reservation.fin()));
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    /**
+     * Période réservée [debut, fin[
+     */
+    public record Reservation(LocalDate debut, LocalDate fin) {
+
+        public boolean chevauche(LocalDate autreDebut, LocalDate autreFin) {
+            return debut.isBefore(autreFin) && autreDebut.isBefore(fin);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package fr.maxime.ecfback.journal;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Une écriture d'une location ou d'un véhicule, conservée pour l'historique (collection journal, en ajout seul).<br>
+ * document est la copie de l'entité après l'écriture, telle qu'enregistrée en base ; il est absent pour une suppression.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("journal")
+@CompoundIndex(name = "entite_idEntite_date", def = "{'entite': 1, 'idEntite': 1, 'date': 1}")
+public class EvenementJournal {
+
+    public static final String CREATION = "creation";
+    public static final String MODIFICATION = "modification";
+    public static final String SUPPRESSION = "suppression";
+
+    private String id;
+    private String entite;
+    private String idEntite;
+    private String operation;
+    private Instant date;
+    private org.bson.Document document;
+}
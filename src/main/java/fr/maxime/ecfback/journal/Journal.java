@@ -0,0 +1,316 @@
+package fr.maxime.ecfback.journal;
+
+import com.mongodb.DBRef;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.InsertManyOptions;
+import fr.maxime.ecfback.commun.Pagination;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Historique des écritures (création, modification, suppression) des locations et des véhicules, écrit en différé.<br>
+ * Les services déposent un EvenementJournal dans une file mémoire sans verrou, bornée à ecfback.journal.capacite :
+ * l'écriture métier n'attend pas MongoDB. Un thread dédié vide la file par lots de ecfback.journal.taille-lot
+ * (au plus tard toutes les ecfback.journal.intervalle) en une insertion dans la collection journal, jamais modifiée.<br>
+ * Durabilité des lots (ecfback.journal.durabilite) :
+ * <ul>
+ *     <li>sans-acquittement : insertion sans attendre la réponse du serveur (w:0), la plus rapide, un lot peut être
+ *     perdu sans erreur visible</li>
+ *     <li>journalisee : chaque lot attend l'écriture dans le journal disque d'une majorité du replica set (w:majority, j:true) ;
+ *     un lot en échec est réessayé jusqu'à ce qu'il passe. L'id de chaque événement est attribué à son dépôt : un
+ *     événement déjà écrit par un essai précédent (réponse perdue) est refusé comme doublon, sans être réécrit</li>
+ * </ul>
+ * Quand la file est pleine (MongoDB lent ou injoignable), l'appelant écrit lui-même son événement : il subit alors la
+ * latence de MongoDB plutôt que de perdre l'événement (compteur ecfback.journal.debordements). Les événements en file
+ * sont écrits à l'arrêt de l'application ; ceux d'un arrêt brutal sont perdus.
+ */
+@Component
+public class Journal {
+
+    public enum Durabilite {
+        SANS_ACQUITTEMENT,
+        JOURNALISEE
+    }
+
+    public static final String LOCATION = "location";
+    public static final String VEHICULE = "vehicule";
+    private static final Set<String> ENTITES = Set.of(LOCATION, VEHICULE);
+
+    Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final int capacite;
+    private final int tailleLot;
+    private final Duration intervalle;
+    private final Durabilite durabilite;
+    private final WriteConcern writeConcern;
+    private final ConcurrentLinkedQueue<EvenementJournal> file = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger taille = new AtomicInteger();
+    private final Counter evenementsParLot;
+    private final Counter evenementsDirects;
+    private final Counter debordements;
+    private final Counter pertes;
+    private final Timer ecritures;
+    private volatile boolean actif;
+    private Thread ecrivain;
+
+    public Journal(MongoTemplate mongoTemplate,
+                   MeterRegistry registry,
+                   @Value("${ecfback.journal.capacite:10000}") int capacite,
+                   @Value("${ecfback.journal.taille-lot:500}") int tailleLot,
+                   @Value("${ecfback.journal.intervalle:200ms}") Duration intervalle,
+                   @Value("${ecfback.journal.durabilite:journalisee}") String durabilite) {
+        this.mongoTemplate = mongoTemplate;
+        this.capacite = capacite;
+        this.tailleLot = tailleLot;
+        this.intervalle = intervalle;
+        this.durabilite = Durabilite.valueOf(durabilite.trim().toUpperCase().replace('-', '_'));
+        this.writeConcern = this.durabilite == Durabilite.JOURNALISEE
+                ? WriteConcern.MAJORITY.withJournal(true)
+                : WriteConcern.UNACKNOWLEDGED;
+        logger.info("Création du journal : file de " + capacite + " événements, lots de " + tailleLot
+                + ", durabilité " + this.durabilite);
+
+        Gauge.builder("ecfback.journal.file", taille, AtomicInteger::get)
+                .description("Événements du journal en attente d'écriture")
+                .register(registry);
+        Gauge.builder("ecfback.journal.capacite", () -> capacite)
+                .description("Nombre maximal d'événements du journal en attente")
+                .register(registry);
+        this.evenementsParLot = evenements(registry, "lot");
+        this.evenementsDirects = evenements(registry, "direct");
+        this.debordements = Counter.builder("ecfback.journal.debordements")
+                .description("Événements écrits par l'appelant, la file du journal étant pleine")
+                .register(registry);
+        this.pertes = Counter.builder("ecfback.journal.pertes")
+                .description("Événements du journal non écrits après une erreur MongoDB")
+                .register(registry);
+        this.ecritures = Timer.builder("ecfback.journal.ecritures")
+                .description("Durée de l'insertion d'un lot d'événements du journal")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Cette fonction démarre le thread d'écriture des lots
+     */
+    @PostConstruct
+    public synchronized void demarrer() {
+        if (actif) {
+            return;
+        }
+        actif = true;
+        ecrivain = new Thread(this::ecrire, "journal");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+    }
+
+    /**
+     * Cette fonction arrête le thread d'écriture après avoir écrit les événements encore en file
+     */
+    @PreDestroy
+    public synchronized void arreter() {
+        actif = false;
+        if (ecrivain != null) {
+            LockSupport.unpark(ecrivain);
+            try {
+                ecrivain.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ecrivain = null;
+        }
+        if (!file.isEmpty()) {
+            logger.error("Journal : " + file.size() + " événements non écrits à l'arrêt");
+        }
+    }
+
+    /**
+     * Cette fonction ajoute une écriture au journal, sans attendre son enregistrement (sauf si la file est pleine)
+     * @param entite L'entité écrite (Journal.LOCATION, Journal.VEHICULE)
+     * @param idEntite L'id de l'entité
+     * @param operation EvenementJournal.CREATION, MODIFICATION ou SUPPRESSION
+     * @param valeur L'entité après l'écriture, null pour une suppression
+     */
+    public void enregistrer(String entite, String idEntite, String operation, Object valeur) {
+        Document document = null;
+        if (valeur != null) {
+            document = new Document();
+            mongoTemplate.getConverter().write(valeur, document);
+            document.remove("_class");
+            document = (Document) lisible(document);
+        }
+        EvenementJournal evenement = new EvenementJournal(new ObjectId().toHexString(), entite, idEntite, operation,
+                Instant.now(), document);
+        if (!reserverPlace()) {
+            debordements.increment();
+            try {
+                inserer(List.of(evenement));
+                evenementsDirects.increment();
+            } catch (MongoException | DataAccessException e) {
+                pertes.increment();
+                logger.error("Événement du journal perdu (" + entite + " " + idEntite + " " + operation + ") : " + e.getMessage());
+            }
+            return;
+        }
+        file.offer(evenement);
+        if (taille.get() >= tailleLot) {
+            LockSupport.unpark(ecrivain);
+        }
+    }
+
+    /**
+     * Cette fonction permet de retrouver l'historique d'une location ou d'un véhicule, du plus ancien au plus récent<br>
+     * Les événements encore en file (au plus ecfback.journal.intervalle) n'y figurent pas encore<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/journal?entite=<span style="color:orange">location</span>&id=<span style="color:orange">id</span>&limit=<span style="color:orange">limit</span>
+     * @param entite location ou vehicule
+     * @param idEntite L'id de la location ou du véhicule
+     * @param limit Le nombre maximal d'événements (optionnel)
+     * @return Les événements de l'entité
+     */
+    public List<EvenementJournal> historique(String entite, String idEntite, Integer limit) {
+        if (!ENTITES.contains(entite)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "entite doit valoir " + LOCATION + " ou " + VEHICULE);
+        }
+        return mongoTemplate.find(query(where("entite").is(entite).and("idEntite").is(idEntite))
+                .with(Pagination.page(0, limit, Sort.by("date", "id"))), EvenementJournal.class);
+    }
+
+    /**
+     * Réserve une place dans la file (compare-and-set sur le nombre d'événements en attente)
+     * @return false si la file est pleine
+     */
+    private boolean reserverPlace() {
+        int courante;
+        do {
+            courante = taille.get();
+            if (courante >= capacite) {
+                return false;
+            }
+        } while (!taille.compareAndSet(courante, courante + 1));
+        return true;
+    }
+
+    private void ecrire() {
+        while (actif || !file.isEmpty()) {
+            List<EvenementJournal> lot = new ArrayList<>(Math.min(tailleLot, Math.max(taille.get(), 1)));
+            EvenementJournal evenement;
+            while (lot.size() < tailleLot && (evenement = file.poll()) != null) {
+                lot.add(evenement);
+            }
+            if (lot.isEmpty()) {
+                LockSupport.parkNanos(this, intervalle.toNanos());
+                continue;
+            }
+            ecrireLot(lot);
+            // La place n'est rendue qu'après l'écriture : une file pleine signale aussi un lot qui n'arrive pas à passer
+            taille.addAndGet(-lot.size());
+        }
+    }
+
+    /**
+     * Écrit le lot, en réessayant tant que l'application tourne si la durabilité est journalisee
+     */
+    private void ecrireLot(List<EvenementJournal> lot) {
+        long attente = intervalle.toMillis();
+        while (true) {
+            try {
+                ecritures.record(() -> inserer(lot));
+                evenementsParLot.increment(lot.size());
+                return;
+            } catch (MongoException | DataAccessException e) {
+                if (durabilite == Durabilite.SANS_ACQUITTEMENT || !actif) {
+                    pertes.increment(lot.size());
+                    logger.error("Journal : lot de " + lot.size() + " événements perdu : " + e.getMessage());
+                    return;
+                }
+                logger.warn("Journal : lot de " + lot.size() + " événements non écrit (" + e.getMessage()
+                        + "), nouvel essai dans " + attente + " ms");
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(attente));
+                attente = Math.min(attente * 2, TimeUnit.SECONDS.toMillis(30));
+            }
+        }
+    }
+
+    private void inserer(List<EvenementJournal> evenements) {
+        List<Document> documents = new ArrayList<>(evenements.size());
+        for (EvenementJournal evenement : evenements) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(evenement, document);
+            document.remove("_class");
+            documents.add(document);
+        }
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(EvenementJournal.class))
+                    .withWriteConcern(writeConcern)
+                    .insertMany(documents, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // Insertion non ordonnée : les autres événements du lot sont écrits, seuls les doublons sont refusés
+            if (e.getWriteConcernError() != null || e.getWriteErrors().stream()
+                    .anyMatch(erreur -> ErrorCategory.fromErrorCode(erreur.getCode()) != ErrorCategory.DUPLICATE_KEY)) {
+                throw e;
+            }
+            logger.info("Journal : " + e.getWriteErrors().size() + " événements déjà écrits par un essai précédent");
+        }
+    }
+
+    /**
+     * Remplace dans la copie de l'entité les ObjectId et les @DBRef par l'id sous forme de texte,
+     * tel qu'il apparaît dans l'API
+     */
+    private static Object lisible(Object valeur) {
+        if (valeur instanceof ObjectId objectId) {
+            return objectId.toHexString();
+        }
+        if (valeur instanceof DBRef reference) {
+            return lisible(reference.getId());
+        }
+        if (valeur instanceof Document document) {
+            Document copie = new Document();
+            document.forEach((champ, sousValeur) -> copie.put(champ, lisible(sousValeur)));
+            return copie;
+        }
+        if (valeur instanceof List<?> liste) {
+            return liste.stream().map(Journal::lisible).toList();
+        }
+        return valeur;
+    }
+
+    private static Counter evenements(MeterRegistry registry, String mode) {
+        return Counter.builder("ecfback.journal.evenements")
+                .description("Événements écrits dans le journal")
+                .tag("mode", mode)
+                .register(registry);
+    }
+}
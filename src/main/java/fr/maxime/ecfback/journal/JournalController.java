@@ -0,0 +1,35 @@
+package fr.maxime.ecfback.journal;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@CrossOrigin
+@Profile("!reactif")
+@RequestMapping("/journal")
+public class JournalController {
+
+    private final Journal journal;
+
+    public JournalController(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Cette fonction permet de retrouver l'historique des créations, modifications et suppressions
+     * d'une location ou d'un véhicule<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/journal?entite=<span style="color:orange">location</span>&id=<span style="color:orange">id</span>&limit=<span style="color:orange">limit</span>
+     *
+     * @param entite location ou vehicule
+     * @param id L'id de la location ou du véhicule
+     * @param limit Le nombre maximal d'événements (optionnel)
+     * @return Les événements, du plus ancien au plus récent
+     */
+    @GetMapping("")
+    public List<EvenementJournal> historique(@RequestParam String entite, @RequestParam String id,
+                                             @RequestParam(required = false) Integer limit) {
+        return journal.historique(entite, id, limit);
+    }
+}
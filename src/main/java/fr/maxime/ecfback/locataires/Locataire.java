@@ -3,17 +3,22 @@ package fr.maxime.ecfback.locataires;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+@CompoundIndex(name = "nom_prenom", def = "{'nom': 1, 'prenom': 1}")
 public class Locataire {
 
     private String id;
     private String nom;
+    @Indexed
     private String prenom;
+    @Indexed
     private String email;
     private String motDePasse;
 
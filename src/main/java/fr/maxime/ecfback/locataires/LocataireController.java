@@ -1,29 +1,79 @@
 package fr.maxime.ecfback.locataires;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.maxime.ecfback.commun.Ndjson;
+import fr.maxime.ecfback.commun.ResultatImport;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @CrossOrigin
+@Profile("!reactif")
 @RequestMapping("/locataires")
 public class LocataireController {
 
     private final LocataireServiceImpl service;
+    private final ObjectMapper objectMapper;
 
-    public LocataireController(LocataireServiceImpl service) {
+    public LocataireController(LocataireServiceImpl service, ObjectMapper objectMapper) {
         this.service = service;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * Cette fonction permet de récupérer la liste de tous les locataires présents dans la base de données<br>
-     * <b>Requête Postman en GET</b> : localhost:8080/locataires
+     * Avec les paramètres limit et/ou after, la liste est paginée par curseur sur l'id :
+     * after est l'id du dernier élément de la page précédente<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
      *
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
      * @return une liste de locataires
      */
     @GetMapping("")
-    public List<Locataire> findAll() {
-        return service.findAll();
+    public List<Locataire> findAll(@RequestParam(required = false) Integer limit,
+                                   @RequestParam(required = false) String after) {
+        if (limit == null && after == null) {
+            return service.findAll();
+        }
+        return service.findPage(after, limit);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locataires réduits aux champs demandés, pour les écrans de liste<br>
+     * Les autres champs ne sont ni lus en base, ni envoyés. La pagination (limit, after) est la même que sans fields<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires?fields=<span style="color:orange">id,nom,prenom</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires?fields=<span style="color:orange">id,nom,prenom</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param fields Les champs demandés, séparés par des virgules (l'id est toujours renvoyé)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return une liste de locataires réduits aux champs demandés
+     */
+    @GetMapping(value = "", params = "fields")
+    public List<Map<String, Object>> findAllChamps(@RequestParam String fields,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String after) {
+        return service.findAllChamps(fields, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de récupérer tous les locataires au format NDJSON (un objet JSON par ligne)<br>
+     * Les documents sont écrits au fil du curseur MongoDB, sans charger la collection en mémoire<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires avec l'en-tête Accept: application/x-ndjson
+     *
+     * @return le flux des locataires
+     */
+    @GetMapping(value = "", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody stream() {
+        return Ndjson.ecrire(objectMapper, service::stream);
     }
 
     /**
@@ -38,6 +88,19 @@ public class LocataireController {
         return service.save(entity);
     }
 
+    /**
+     * Cette fonction permet d'enregistrer en une fois un grand nombre de locataires<br>
+     * Le corps est un tableau JSON ou un flux NDJSON (Content-Type: application/x-ndjson), lu au fil de l'eau<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locataires/bulk
+     *
+     * @param corps Le corps de la requête
+     * @return Le bilan de l'import : nombre de locataires reçus, insérés, rejetés et le motif de chaque rejet
+     */
+    @PostMapping(value = "bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResultatImport importer(InputStream corps) {
+        return service.importer(corps);
+    }
+
     /**
      * Cette fonction permet de retrouver un locataire en passant par son id<br>
      * <b>Requête Postman en GET</b> : localhost:8080/locataires/<span style="color:orange">id</span>
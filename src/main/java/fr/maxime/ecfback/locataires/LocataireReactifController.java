@@ -0,0 +1,161 @@
+package fr.maxime.ecfback.locataires;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Routes /locataires de la pile réactive (profil "reactif"), identiques à celles de LocataireController<br>
+ * Les listes sont envoyées en JSON ou, avec l'en-tête Accept: application/x-ndjson, au fil de l'eau avec backpressure
+ */
+@RestController
+@CrossOrigin
+@Profile("reactif")
+@RequestMapping("/locataires")
+public class LocataireReactifController {
+
+    private final LocataireReactifService service;
+
+    public LocataireReactifController(LocataireReactifService service) {
+        this.service = service;
+    }
+
+    /**
+     * Cette fonction permet de récupérer la liste de tous les locataires présents dans la base de données<br>
+     * Avec les paramètres limit et/ou after, la liste est paginée par curseur sur l'id :
+     * after est l'id du dernier élément de la page précédente<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return un flux de locataires
+     */
+    @GetMapping(value = "", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Locataire> findAll(@RequestParam(required = false) Integer limit,
+                                   @RequestParam(required = false) String after) {
+        if (limit == null && after == null) {
+            return service.findAll();
+        }
+        return service.findPage(after, limit);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locataires réduits aux champs demandés, pour les écrans de liste<br>
+     * Les autres champs ne sont ni lus en base, ni envoyés. La pagination (limit, after) est la même que sans fields<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires?fields=<span style="color:orange">id,nom,prenom</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires?fields=<span style="color:orange">id,nom,prenom</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param fields Les champs demandés, séparés par des virgules (l'id est toujours renvoyé)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return un flux de locataires réduits aux champs demandés
+     */
+    @GetMapping(value = "", params = "fields", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Map<String, Object>> findAllChamps(@RequestParam String fields,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String after) {
+        return service.findAllChamps(fields, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de sauvegarder un nouveau locataire en base de données<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locataires
+     *
+     * @param entity Un locataire
+     * @return Le nouveau locataire enregistré dans la base de données
+     */
+    @PostMapping("")
+    public Mono<Locataire> save(@RequestBody Locataire entity) {
+        return service.save(entity);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un locataire en passant par son id<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires/<span style="color:orange">id</span>
+     *
+     * @param id L'id du locataire
+     * @return le locataire recherché
+     */
+    @GetMapping("{id}")
+    public Mono<Locataire> findById(@PathVariable String id) {
+        return service.findById(id);
+    }
+
+    /**
+     * Cette fonction permet de supprimer un locataire de la base de données en passant par son id<br>
+     * <b>Requête Postman en DELETE</b> : localhost:8080/locataires/<span style="color:orange">id</span>
+     *
+     * @param id L'id du locataire à supprimer
+     */
+    @DeleteMapping("{id}")
+    public Mono<Void> deleteById(@PathVariable String id) {
+        return service.deleteById(id);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un locataire grâce à son nom de famille
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires/nom?nom=<span style="color:orange">nom</span>
+     *
+     * @param nom Le nom de famille du locataire
+     * @return Un flux de locataires
+     */
+    @GetMapping("nom")
+    public Flux<Locataire> findAllByNom(@RequestParam String nom) {
+        return service.findAllByNom(nom);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un locataire grâce à son prénom
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires/prenom?prenom=<span style="color:orange">prenom</span>
+     *
+     * @param prenom Le prénom du locataire
+     * @return Un flux de locataires
+     */
+    @GetMapping("prenom")
+    public Flux<Locataire> findAllByPrenom(@RequestParam String prenom) {
+        return service.findAllByPrenom(prenom);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un locataire grâce à son nom de famille et son prénom
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires/nom&prenom?nom=<span style="color:orange">nom</span>&prenom=<span style="color:orange">prenom</span>
+     *
+     * @param nom    Le nom de famille du locataire
+     * @param prenom Le prénom du locataire
+     * @return Un flux de locataires
+     */
+    @GetMapping("nom&prenom")
+    public Flux<Locataire> findAllByNomAndPrenom(@RequestParam String nom, @RequestParam String prenom) {
+        return service.findAllByNomAndPrenom(nom, prenom);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un locataire grâce à son email
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires/email?email=<span style="color:orange">email</span>
+     *
+     * @param email L'email du locataire
+     * @return Le locataire recherché
+     */
+    @GetMapping("email")
+    public Flux<Locataire> findByEmail(@RequestParam String email) {
+        return service.findByEmail(email);
+    }
+
+    /**
+     * Cette fonction permet de mettre à jour le locataire grâce à son id
+     * <b>Requête Postman en PUT</b> : localhost:8080/locataires/<span style="color:orange">id</span>
+     *
+     * @param locataire Le locataire modifié
+     * @param id L'id du locataire
+     * @return Le locataire mis à jour
+     */
+    @PutMapping("{id}")
+    public Mono<Locataire> update(@RequestBody Locataire locataire, @PathVariable String id) {
+        return service.update(locataire, id);
+    }
+}
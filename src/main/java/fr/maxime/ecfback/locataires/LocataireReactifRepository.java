@@ -0,0 +1,20 @@
+package fr.maxime.ecfback.locataires;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+public interface LocataireReactifRepository extends ReactiveMongoRepository<Locataire, String> {
+
+    Flux<Locataire> findAllByNom(String nom);
+
+    Flux<Locataire> findAllByPrenom(String prenom);
+
+    Flux<Locataire> findAllByNomAndPrenom(String nom, String prenom);
+
+    Flux<Locataire> findByEmail(String email);
+
+    Flux<Locataire> findAllBy(Pageable pageable);
+
+
+}
@@ -0,0 +1,133 @@
+package fr.maxime.ecfback.locataires;
+
+import fr.maxime.ecfback.commun.Pagination;
+import fr.maxime.ecfback.commun.Projection;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Service des locataires de la pile réactive (profil "reactif") : mêmes règles que LocataireServiceImpl,
+ * avec le driver MongoDB réactif.
+ */
+@Service
+@Profile("reactif")
+public class LocataireReactifService {
+
+    Logger logger = LoggerFactory.getLogger(LocataireReactifService.class);
+
+    private final LocataireReactifRepository repository;
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public LocataireReactifService(LocataireReactifRepository repository, ReactiveMongoTemplate mongoTemplate) {
+        logger.info("Création du service Locataire réactif");
+        this.repository = repository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Cette fonction permet de récupérer tous les locataires au fil du curseur MongoDB<br>
+     * Le curseur n'avance qu'à la demande du client (backpressure)
+     * @return un flux de locataires
+     */
+    public Flux<Locataire> findAll() {
+        return repository.findAll();
+    }
+
+    /**
+     * Cette fonction permet de récupérer une page de locataires triée par id
+     * @param after L'id du dernier locataire de la page précédente (absent pour la première page)
+     * @param limit Le nombre de locataires de la page
+     * @return un flux de locataires
+     */
+    public Flux<Locataire> findPage(String after, Integer limit) {
+        return mongoTemplate.find(Pagination.apres(after, limit), Locataire.class);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locataires réduits aux champs demandés (projection MongoDB, voir Projection)
+     * @param fields Les champs demandés, séparés par des virgules (voir LocataireServiceImpl.CHAMPS)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @param limit Le nombre d'éléments de la page (optionnel, tous sans limit ni after)
+     * @return un flux de locataires réduits aux champs demandés
+     */
+    public Flux<Map<String, Object>> findAllChamps(String fields, String after, Integer limit) {
+        return Flux.defer(() -> {
+            Projection projection = Projection.de(fields, LocataireServiceImpl.CHAMPS);
+            Query query = limit == null && after == null ? new Query() : Pagination.apres(after, limit);
+            return mongoTemplate.query(Locataire.class).as(Document.class).matching(projection.appliquer(query)).all()
+                    .map(projection::lire);
+        });
+    }
+
+    public Mono<Locataire> save(Locataire locataire) {
+        return repository.save(locataire);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un locataire en passant par son id, 404 - NOT_FOUND s'il n'existe pas
+     * @param id L'id du locataire
+     * @return le locataire recherché
+     */
+    public Mono<Locataire> findById(String id) {
+        return repository.findById(id).switchIfEmpty(Mono.error(() -> {
+            logger.warn("Id invalide : " + id);
+            return new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }));
+    }
+
+    /**
+     * Cette fonction permet de récupérer en une seule requête les locataires correspondant à une liste d'ids
+     * @param ids Les ids des locataires
+     * @return un flux de locataires
+     */
+    public Flux<Locataire> findAllById(Collection<String> ids) {
+        return repository.findAllById(ids);
+    }
+
+    /**
+     * Cette fonction permet de mettre à jour le locataire grâce à son id
+     * @param locataire Le locataire modifié
+     * @param id L'id du locataire
+     * @return Le locataire mis à jour
+     */
+    public Mono<Locataire> update(Locataire locataire, String id) {
+        if (!Objects.equals(locataire.getId(), id)) {
+            logger.warn("In invalide : " + id);
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND));
+        }
+        return repository.save(locataire);
+    }
+
+    public Mono<Void> deleteById(String id) {
+        return repository.deleteById(id);
+    }
+
+    public Flux<Locataire> findAllByNom(String nom) {
+        return repository.findAllByNom(nom);
+    }
+
+    public Flux<Locataire> findAllByPrenom(String prenom) {
+        return repository.findAllByPrenom(prenom);
+    }
+
+    public Flux<Locataire> findAllByNomAndPrenom(String nom, String prenom) {
+        return repository.findAllByNomAndPrenom(nom, prenom);
+    }
+
+    public Flux<Locataire> findByEmail(String email) {
+        return repository.findByEmail(email);
+    }
+}
@@ -1,9 +1,11 @@
 package fr.maxime.ecfback.locataires;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface LocataireRepository extends MongoRepository<Locataire, String> {
 
@@ -15,6 +17,11 @@ public interface LocataireRepository extends MongoRepository<Locataire, String>
 
     List<Locataire> findByEmail(String email);
 
+    List<Locataire> findAllBy(Pageable pageable);
+
+
+    Stream<Locataire> streamAllBy();
+
 
 
 }
@@ -1,24 +1,44 @@
 package fr.maxime.ecfback.locataires;
 
+import fr.maxime.ecfback.commun.ImportEnMasse;
+import fr.maxime.ecfback.commun.Pagination;
+import fr.maxime.ecfback.commun.Projection;
+import fr.maxime.ecfback.commun.ResultatImport;
+import io.micrometer.core.annotation.Timed;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "ecfback.service", description = "Durée des méthodes des services")
 public class LocataireServiceImpl implements LocataireService {
 
     Logger logger = LoggerFactory.getLogger(LocataireServiceImpl.class);
 
+    /** Les champs d'un locataire qu'une liste peut demander avec fields= (jamais le mot de passe) */
+    public static final List<String> CHAMPS = List.of("id", "nom", "prenom", "email");
+
     private final LocataireRepository repository;
+    private final MongoTemplate mongoTemplate;
+    private final ImportEnMasse importEnMasse;
 
-    public LocataireServiceImpl(LocataireRepository repository) {
+    public LocataireServiceImpl(LocataireRepository repository, MongoTemplate mongoTemplate, ImportEnMasse importEnMasse) {
         logger.info("Création du service Locataire");
         this.repository = repository;
+        this.mongoTemplate = mongoTemplate;
+        this.importEnMasse = importEnMasse;
     }
 
     /**
@@ -31,6 +51,53 @@ public class LocataireServiceImpl implements LocataireService {
         return repository.findAll();
     }
 
+    /**
+     * Cette fonction permet de récupérer une page de locataires triée par id<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     * @param after L'id du dernier locataire de la page précédente (absent pour la première page)
+     * @param limit Le nombre de locataires de la page
+     * @return une liste de locataires
+     */
+    public List<Locataire> findPage(String after, Integer limit) {
+        return mongoTemplate.find(Pagination.apres(after, limit), Locataire.class);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locataires réduits aux champs demandés<br>
+     * Les autres champs ne sont pas lus en base (projection MongoDB), le mot de passe ne peut pas être demandé<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locataires?fields=<span style="color:orange">id,nom,prenom</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     * @param fields Les champs demandés, séparés par des virgules (voir CHAMPS)
+     * @param after L'id du dernier locataire de la page précédente (optionnel)
+     * @param limit Le nombre de locataires de la page (optionnel, tous les locataires sans limit ni after)
+     * @return une liste de locataires réduits aux champs demandés
+     */
+    public List<Map<String, Object>> findAllChamps(String fields, String after, Integer limit) {
+        Projection projection = Projection.de(fields, CHAMPS);
+        Query query = limit == null && after == null ? new Query() : Pagination.apres(after, limit);
+        return mongoTemplate.query(Locataire.class).as(Document.class).matching(projection.appliquer(query)).all()
+                .stream().map(projection::lire).toList();
+    }
+
+    /**
+     * Cette fonction permet de parcourir tous les locataires au fil du curseur MongoDB<br>
+     * Le flux doit être fermé par l'appelant
+     * @return un flux de locataires
+     */
+    public Stream<Locataire> stream() {
+        return repository.streamAllBy();
+    }
+
+    /**
+     * Cette fonction permet d'enregistrer en une fois un grand nombre de locataires (tableau JSON ou NDJSON)<br>
+     * Les locataires sont insérés par lots, un locataire invalide est rejeté sans bloquer les autres<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locataires/bulk
+     * @param corps Le corps de la requête
+     * @return Le bilan de l'import
+     */
+    public ResultatImport importer(InputStream corps) {
+        return importEnMasse.importer(corps, Locataire.class);
+    }
+
     /**
      * Cette fonction permet de sauvegarder un nouveau locataire en base de données<br>
      * <b>Requête Postman en POST</b> : localhost:8080/locataires
@@ -56,6 +123,15 @@ public class LocataireServiceImpl implements LocataireService {
         });
     }
 
+    /**
+     * Cette fonction permet de récupérer en une seule requête les locataires correspondant à une liste d'ids
+     * @param ids Les ids des locataires
+     * @return Une liste de locataires
+     */
+    public List<Locataire> findAllById(Collection<String> ids) {
+        return repository.findAllById(ids);
+    }
+
     /**
      * Cette fonction permet de mettre à jour le locataire grâce à son id
      * <b>Requête Postman en PUT</b> : localhost:8080/locataires/<span style="color:orange">id</span>
@@ -0,0 +1,91 @@
+package fr.maxime.ecfback.locations;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Durée en jours de la plus longue location, conservée dans MongoDB (collection compteurs) et non en mémoire :
+ * elle est juste quel que soit l'état du flux des changements, et partagée par toutes les instances.<br>
+ * Chaque écriture de location la relève avec $max avant d'écrire la location : une location enregistrée est
+ * toujours couverte. Elle ne diminue jamais (une suppression ne la recalcule pas), ce qui en fait une borne sûre :
+ * une location active à une date donnée a forcément commencé au plus max() jours avant.<br>
+ * Tant que le compteur n'a pas été calculé sur les locations existantes (base d'avant le compteur), il l'est une fois
+ * par MongoDB ($group sur dateFin - dateDebut) puis marqué calcule. Les locations écrites par un autre outil
+ * que l'application doivent relever le compteur elles-mêmes.
+ */
+@Component
+public class DureeLocations {
+
+    static final String COLLECTION = "compteurs";
+    static final String ID = "locations-duree-max";
+    static final String JOURS = "jours";
+    static final String CALCULE = "calcule";
+
+    Logger logger = LoggerFactory.getLogger(DureeLocations.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    public DureeLocations(MongoTemplate mongoTemplate) {
+        logger.info("Création du service DureeLocations");
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Cette fonction relève la durée maximale si la location est plus longue
+     * @param debut La date de début de la location
+     * @param fin La date de fin de la location
+     */
+    public void enregistrer(LocalDate debut, LocalDate fin) {
+        if (debut != null && fin != null) {
+            relever(new Update().max(JOURS, Math.max(0, ChronoUnit.DAYS.between(debut, fin))));
+        }
+    }
+
+    /**
+     * Cette fonction retourne la durée en jours de la plus longue location enregistrée
+     * @return La durée maximale d'une location en jours
+     */
+    public long max() {
+        Document compteur = mongoTemplate.findById(ID, Document.class, COLLECTION);
+        if (compteur == null || !Boolean.TRUE.equals(compteur.get(CALCULE))) {
+            // Les écritures concurrentes relèvent le compteur avant d'écrire : le calcul ne peut que l'augmenter
+            compteur = relever(new Update().max(JOURS, calculer()).set(CALCULE, true));
+        }
+        return ((Number) compteur.get(JOURS)).longValue();
+    }
+
+    private Document relever(Update update) {
+        return mongoTemplate.findAndModify(query(where("_id").is(ID)), update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, COLLECTION);
+    }
+
+    /**
+     * Les dates sont stockées à minuit de la zone du serveur : un écart qui n'est pas un nombre entier de jours
+     * (changement d'heure) est arrondi au jour supérieur
+     */
+    private long calculer() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.project().and(ArithmeticOperators.Subtract.valueOf("dateFin").subtract("dateDebut")).as("duree"),
+                Aggregation.group().max("duree").as("duree"));
+        Document resultat = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Location.class), Document.class)
+                .getUniqueMappedResult();
+        long millis = resultat == null || resultat.get("duree") == null ? 0 : ((Number) resultat.get("duree")).longValue();
+        long jours = (millis + TimeUnit.DAYS.toMillis(1) - 1) / TimeUnit.DAYS.toMillis(1);
+        logger.info("Durée maximale des locations calculée : " + jours + " jours");
+        return Math.max(0, jours);
+    }
+}
@@ -6,6 +6,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -15,14 +17,18 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+@CompoundIndex(name = "dateDebut_dateFin", def = "{'dateDebut': 1, 'dateFin': 1}")
 public class Location {
 
     private String id;
     private LocalDate dateDebut;
+    @Indexed
     private LocalDate dateFin;
     private Double prixTotal;
+    @Indexed
     @DBRef
     private Locataire locataire;
+    @Indexed
     @DBRef
     private Vehicule vehicule;
 }
@@ -1,59 +1,147 @@
 package fr.maxime.ecfback.locations;
 
-import org.springframework.http.HttpStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.maxime.ecfback.commun.Idempotence;
+import fr.maxime.ecfback.commun.Ndjson;
+import fr.maxime.ecfback.tarifs.DemandeDevis;
+import fr.maxime.ecfback.tarifs.Devis;
+import fr.maxime.ecfback.tarifs.TarifService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 
 @RestController
 @CrossOrigin
+@Profile("!reactif")
 @RequestMapping("/locations")
 public class LocationController {
 
     private final LocationServiceImpl service;
+    private final ObjectMapper objectMapper;
+    private final MigrationLocations migration;
+    private final Idempotence idempotence;
+    private final TarifService tarifService;
 
-    public LocationController(LocationServiceImpl service) {
+    public LocationController(LocationServiceImpl service, ObjectMapper objectMapper, MigrationLocations migration,
+                              Idempotence idempotence, TarifService tarifService) {
         this.service = service;
+        this.objectMapper = objectMapper;
+        this.migration = migration;
+        this.idempotence = idempotence;
+        this.tarifService = tarifService;
     }
 
     /**
      * Cette fonction permet de récupérer la liste de toutes les locations présentes dans la base de données<br>
-     * <b>Requête Postman en GET</b> : localhost:8080/locations
+     * Avec les paramètres limit et/ou after, la liste est paginée par curseur sur l'id :
+     * after est l'id du dernier élément de la page précédente<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
      *
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
      * @return une liste de locations
      */
     @GetMapping("")
-    public List<Location> findAll() {
-        return service.findAll();
+    public List<Location> findAll(@RequestParam(required = false) Integer limit,
+                                  @RequestParam(required = false) String after) {
+        if (limit == null && after == null) {
+            return service.findAll();
+        }
+        return service.findPage(after, limit);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locations réduites aux champs demandés, pour les écrans de liste<br>
+     * "locataire" et "vehicule" ajoutent le document référencé, "locataire.nom" un seul de ses champs.
+     * Les autres champs ne sont ni lus en base, ni envoyés. La pagination (limit, after) est la même que sans fields<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?fields=<span style="color:orange">dateDebut,dateFin,locataire.nom,vehicule.immatriculation</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?fields=<span style="color:orange">dateDebut,dateFin,locataire.nom,vehicule.immatriculation</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param fields Les champs demandés, séparés par des virgules (l'id est toujours renvoyé)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return une liste de locations réduites aux champs demandés
+     */
+    @GetMapping(value = "", params = "fields")
+    public List<Map<String, Object>> findAllChamps(@RequestParam String fields,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String after) {
+        return service.findAllChamps(fields, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de retrouver les locations actives sur au moins une partie de la période [activeFrom, activeTo]<br>
+     * La liste est triée (sort, dateDebut par défaut, "-" pour un tri décroissant) et paginée (limit, page)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?activeFrom=<span style="color:orange">debut</span>&activeTo=<span style="color:orange">fin</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?activeFrom=<span style="color:orange">debut</span>&activeTo=<span style="color:orange">fin</span>&sort=<span style="color:orange">-dateFin</span>&limit=<span style="color:orange">limit</span>&page=<span style="color:orange">page</span>
+     *
+     * @param activeFrom Le premier jour de la période (Format : "YYYY-MM-DD")
+     * @param activeTo   Le dernier jour de la période (Format : "YYYY-MM-DD")
+     * @param sort       Le champ de tri : dateDebut, dateFin ou prixTotal (optionnel)
+     * @param limit      Le nombre d'éléments de la page (optionnel)
+     * @param page       Le numéro de la page, à partir de 0 (optionnel)
+     * @return Une liste de locations
+     */
+    @GetMapping(value = "", params = {"activeFrom", "activeTo"})
+    public List<Location> findAllActives(@RequestParam LocalDate activeFrom,
+                                         @RequestParam LocalDate activeTo,
+                                         @RequestParam(required = false) String sort,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestParam(required = false) Integer page) {
+        return service.findAllActives(activeFrom, activeTo, sort, limit, page);
+    }
+
+    /**
+     * Cette fonction permet de récupérer toutes les locations au format NDJSON (un objet JSON par ligne)<br>
+     * Les documents sont écrits au fil du curseur MongoDB, sans charger la collection en mémoire<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations avec l'en-tête Accept: application/x-ndjson
+     *
+     * @return le flux des locations
+     */
+    @GetMapping(value = "", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody stream() {
+        return Ndjson.ecrire(objectMapper, service::stream);
     }
 
     /**
      * Cette fonction permet de sauvegarder une nouvelle location en base de données<br>
-     * Elle calcule le prix total de la location grâçe à la fonction calculPrixTotal du service<br>
-     * Si le véhicule est déjà loué, elle retourne une erreur 406 - NOT_ACCEPTABLE
-     * et enregistre le résultat dans l'objet Location
+     * Elle calcule le prix total de la location grâçe à la fonction calculPrixTotal du service
+     * et enregistre le résultat dans l'objet Location<br>
+     * Si le véhicule est déjà loué sur une partie de la période, elle retourne une erreur 406 - NOT_ACCEPTABLE<br>
+     * Avec un en-tête Idempotency-Key, les rejeux de la requête renvoient la location déjà enregistrée
+     * sans la recalculer ni l'enregistrer une deuxième fois (voir Idempotence)<br>
      * <b>Requête Postman en POST</b> : localhost:8080/locations
      *
      * @param entity Une location
+     * @param cle La clé d'idempotence choisie par le client (optionnelle)
      * @return La nouvelle location enregistrée dans la base de données
      */
     @PostMapping("")
-    public Location save(@RequestBody Location entity) {
-        String idVehicule = entity.getVehicule().getId();
-        String idLocation = entity.getId();
-        LocalDate dateDebut = entity.getDateDebut();
-        LocalDate dateFin = entity.getDateFin();
-        Double prixTotal = service.calculPrixTotal(idVehicule, idLocation, dateDebut, dateFin);
-        entity.setPrixTotal(prixTotal);
-
-        if (Objects.equals(entity.getVehicule().getStatus(), "Loué")) {
-            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Le véhicule est déjà loué");
+    public Location save(@RequestBody Location entity,
+                         @RequestHeader(name = Idempotence.EN_TETE, required = false) String cle) {
+        if (cle == null) {
+            return service.reserver(entity);
         }
-        return service.save(entity);
+        return idempotence.executer("POST /locations", cle, entity, Location.class, () -> service.reserver(entity));
+    }
 
+    /**
+     * Cette fonction permet de chiffrer en un appel jusqu'à plusieurs centaines de locations (véhicule, période),
+     * sans les enregistrer ni vérifier la disponibilité des véhicules (voir TarifService)<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locations/quotes
+     *
+     * @param demandes Les véhicules et périodes à chiffrer
+     * @return Un devis par demande, dans le même ordre
+     */
+    @PostMapping("quotes")
+    public List<Devis> devis(@RequestBody List<DemandeDevis> demandes) {
+        return tarifService.devis(demandes);
     }
 
     /**
@@ -112,7 +200,7 @@ public class LocationController {
      * @return Une liste de locations
      */
     @GetMapping("dateDebut&dateFin")
-    public List<Location> findAllByDateDebutAndDateFin(LocalDate dateDebut, String dateFin) {
+    public List<Location> findAllByDateDebutAndDateFin(@RequestParam LocalDate dateDebut, @RequestParam LocalDate dateFin) {
         return service.findAllByDateDebutAndDateFin(dateDebut, dateFin);
     }
 
@@ -141,4 +229,27 @@ public class LocationController {
     public Location update(Location location, String id) {
         return service.update(location, id);
     }
+
+    /**
+     * Cette fonction permet de lancer (ou reprendre) la conversion des anciennes locations au format instantane,
+     * en arrière-plan et par lots (voir MigrationLocations). Elle demande ecfback.locations.format=instantane<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locations/migration
+     *
+     * @return L'état de la migration
+     */
+    @PostMapping("migration")
+    public Map<String, Object> demarrerMigration() {
+        return migration.demarrer();
+    }
+
+    /**
+     * Cette fonction permet de suivre la conversion des locations au format instantane<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations/migration
+     *
+     * @return Le nombre de locations converties, le dernier id traité, si la migration est terminée ou en cours
+     */
+    @GetMapping("migration")
+    public Map<String, Object> etatMigration() {
+        return migration.etat();
+    }
 }
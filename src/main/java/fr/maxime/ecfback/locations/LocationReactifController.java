@@ -0,0 +1,227 @@
+package fr.maxime.ecfback.locations;
+
+import fr.maxime.ecfback.commun.Idempotence;
+import fr.maxime.ecfback.tarifs.DemandeDevis;
+import fr.maxime.ecfback.tarifs.Devis;
+import fr.maxime.ecfback.tarifs.TarifService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes /locations de la pile réactive (profil "reactif"), identiques à celles de LocationController<br>
+ * Les listes sont envoyées en JSON ou, avec l'en-tête Accept: application/x-ndjson, au fil de l'eau avec backpressure
+ */
+@RestController
+@CrossOrigin
+@Profile("reactif")
+@RequestMapping("/locations")
+public class LocationReactifController {
+
+    private final LocationReactifService service;
+    private final TarifService tarifService;
+
+    public LocationReactifController(LocationReactifService service, TarifService tarifService) {
+        this.service = service;
+        this.tarifService = tarifService;
+    }
+
+    /**
+     * Cette fonction permet de récupérer la liste de toutes les locations présentes dans la base de données<br>
+     * Avec les paramètres limit et/ou after, la liste est paginée par curseur sur l'id :
+     * after est l'id du dernier élément de la page précédente<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return un flux de locations
+     */
+    @GetMapping(value = "", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Location> findAll(@RequestParam(required = false) Integer limit,
+                                  @RequestParam(required = false) String after) {
+        if (limit == null && after == null) {
+            return service.findAll();
+        }
+        return service.findPage(after, limit);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locations réduites aux champs demandés, pour les écrans de liste<br>
+     * "locataire" et "vehicule" ajoutent le document référencé, "locataire.nom" un seul de ses champs.
+     * Les autres champs ne sont ni lus en base, ni envoyés. La pagination (limit, after) est la même que sans fields<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?fields=<span style="color:orange">dateDebut,dateFin,locataire.nom,vehicule.immatriculation</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?fields=<span style="color:orange">dateDebut,dateFin,locataire.nom,vehicule.immatriculation</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param fields Les champs demandés, séparés par des virgules (l'id est toujours renvoyé)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return un flux de locations réduites aux champs demandés
+     */
+    @GetMapping(value = "", params = "fields", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Map<String, Object>> findAllChamps(@RequestParam String fields,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String after) {
+        return service.findAllChamps(fields, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de retrouver les locations actives sur au moins une partie de la période [activeFrom, activeTo]<br>
+     * La liste est triée (sort, dateDebut par défaut, "-" pour un tri décroissant) et paginée (limit, page)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?activeFrom=<span style="color:orange">debut</span>&activeTo=<span style="color:orange">fin</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?activeFrom=<span style="color:orange">debut</span>&activeTo=<span style="color:orange">fin</span>&sort=<span style="color:orange">-dateFin</span>&limit=<span style="color:orange">limit</span>&page=<span style="color:orange">page</span>
+     *
+     * @param activeFrom Le premier jour de la période (Format : "YYYY-MM-DD")
+     * @param activeTo   Le dernier jour de la période (Format : "YYYY-MM-DD")
+     * @param sort       Le champ de tri : dateDebut, dateFin ou prixTotal (optionnel)
+     * @param limit      Le nombre d'éléments de la page (optionnel)
+     * @param page       Le numéro de la page, à partir de 0 (optionnel)
+     * @return Un flux de locations
+     */
+    @GetMapping(value = "", params = {"activeFrom", "activeTo"}, produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Location> findAllActives(@RequestParam LocalDate activeFrom,
+                                         @RequestParam LocalDate activeTo,
+                                         @RequestParam(required = false) String sort,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestParam(required = false) Integer page) {
+        return service.findAllActives(activeFrom, activeTo, sort, limit, page);
+    }
+
+    /**
+     * Cette fonction permet de sauvegarder une nouvelle location en base de données<br>
+     * Elle calcule le prix total de la location grâçe à la fonction calculPrixTotal du service
+     * et enregistre le résultat dans l'objet Location<br>
+     * Si le véhicule est déjà loué sur une partie de la période, elle retourne une erreur 406 - NOT_ACCEPTABLE<br>
+     * Avec un en-tête Idempotency-Key, les rejeux de la requête renvoient la location déjà enregistrée
+     * sans la recalculer ni l'enregistrer une deuxième fois (voir Idempotence)<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locations
+     *
+     * @param entity Une location
+     * @param cle La clé d'idempotence choisie par le client (optionnelle)
+     * @return La nouvelle location enregistrée dans la base de données
+     */
+    @PostMapping("")
+    public Mono<Location> save(@RequestBody Location entity,
+                               @RequestHeader(name = Idempotence.EN_TETE, required = false) String cle) {
+        if (cle == null) {
+            return service.reserver(entity);
+        }
+        return service.reserver(entity, cle);
+    }
+
+    /**
+     * Cette fonction permet de chiffrer en un appel jusqu'à plusieurs centaines de locations (véhicule, période),
+     * sans les enregistrer ni vérifier la disponibilité des véhicules (voir TarifService)<br>
+     * Les véhicules sont lus avec le driver bloquant : le calcul est fait hors de la boucle d'événements<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locations/quotes
+     *
+     * @param demandes Les véhicules et périodes à chiffrer
+     * @return Un devis par demande, dans le même ordre
+     */
+    @PostMapping("quotes")
+    public Mono<List<Devis>> devis(@RequestBody List<DemandeDevis> demandes) {
+        return Mono.fromCallable(() -> tarifService.devis(demandes)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location en passant par son id<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations/<span style="color:orange">id</span>
+     *
+     * @param id L'id de la location
+     * @return la location recherchée
+     */
+    @GetMapping("{id}")
+    public Mono<Location> findById(@PathVariable String id) {
+        return service.findById(id);
+    }
+
+    /**
+     * Cette fonction permet de supprimer une location de la base de données en passant par son id<br>
+     * <b>Requête Postman en DELETE</b> : localhost:8080/vehicules/<span style="color:orange">id</span>
+     *
+     * @param id L'id de la location à supprimer
+     */
+    @DeleteMapping("{id}")
+    public Mono<Void> deleteById(@PathVariable String id) {
+        return service.deleteById(id);
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location en fonction de sa date de début de location<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations/datedebut?dateDebut=<span style="color:orange">dateDebut</span>
+     *
+     * @param dateDebut La date de début de location (Format : "YYYY-MM-DD")
+     * @return Un flux de locations
+     */
+    @GetMapping("dateDebut")
+    public Flux<Location> findAllByDateDebut(@RequestParam LocalDate dateDebut) {
+        return service.findAllByDateDebut(dateDebut);
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location en fonction de sa date de fin de location<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations/datefin?dateFin=<span style="color:orange">dateFin</span>
+     *
+     * @param dateFin La date de fin de location (Format : "YYYY-MM-DD")
+     * @return Un flux de locations
+     */
+    @GetMapping("dateFin")
+    public Flux<Location> findAllByDateFin(@RequestParam LocalDate dateFin) {
+        return service.findAllByDateFin(dateFin);
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location en fonction de sa date de début et de fin de location
+     * <b>Requête Postman en GET</b> : localhost:8080/locations/datedebut&fin?dateDebut=<span style="color:orange">dateDebut</span>&dateFin=<span style="color:orange">dateFin</span>
+     *
+     * @param dateDebut La date de début de location (Format : "YYYY-MM-DD")
+     * @param dateFin   La date de fin de location (Format : "YYYY-MM-DD")
+     * @return Un flux de locations
+     */
+    @GetMapping("dateDebut&dateFin")
+    public Flux<Location> findAllByDateDebutAndDateFin(@RequestParam LocalDate dateDebut, @RequestParam LocalDate dateFin) {
+        return service.findAllByDateDebutAndDateFin(dateDebut, dateFin);
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location grâce au nom du locataire<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations/nom?nom=<span style="color:orange">nom</span>
+     * @param nom Le nom de famille du locataire
+     * @return Un flux de locations
+     */
+    @GetMapping("nom")
+    public Flux<Location> findAllByLocataireName(@RequestParam String nom) {
+        return service.findAllByLocataireName(nom);
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location grâce au numéro d'immatriculation du véhicule
+     * <b>Requête Postman en GET</b> : localhost:8080/locations/immatriculation?immatriculation=<span style="color:orange">immatriculation</span>
+     * @param immatriculation L'immatriculation du véhicule
+     * @return Un flux de locations
+     */
+    @GetMapping("immatriculation")
+    public Flux<Location> findAllByImmatriculation(@RequestParam String immatriculation) {
+        return service.findAllByImmatriculation(immatriculation);
+    }
+
+    /**
+     * Cette fonction permet de mettre à jour la location grâce à son id<br>
+     * <b>Requête Postman en PUT</b> : localhost:8080/locations/<span style="color:orange">id</span>
+     *
+     * @param location La location modifiée
+     * @param id L'id de la location
+     * @return La location mise à jour
+     */
+    @PutMapping("{id}")
+    public Mono<Location> update(@RequestBody Location location, @PathVariable String id) {
+        return service.update(location, id);
+    }
+}
@@ -0,0 +1,92 @@
+package fr.maxime.ecfback.locations;
+
+import fr.maxime.ecfback.commun.Pagination;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locataires.LocataireReactifService;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import fr.maxime.ecfback.vehicules.VehiculeReactifService;
+import org.bson.Document;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Lecture réactive des locations (profil "reactif"), sur le même principe que LocationResolver :
+ * les documents bruts sont regroupés par lots, et les locataires et véhicules de chaque lot sont chargés
+ * avec une requête $in par collection.<br>
+ * Un lot n'est demandé au curseur qu'une fois le précédent consommé : la backpressure du client remonte jusqu'à MongoDB.
+ */
+@Component
+@Profile("reactif")
+public class LocationReactifResolver {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final LocataireReactifService locataireService;
+    private final VehiculeReactifService vehiculeService;
+
+    public LocationReactifResolver(ReactiveMongoTemplate mongoTemplate,
+                                   LocataireReactifService locataireService,
+                                   VehiculeReactifService vehiculeService) {
+        this.mongoTemplate = mongoTemplate;
+        this.locataireService = locataireService;
+        this.vehiculeService = vehiculeService;
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locations correspondant à la requête, locataires et véhicules inclus
+     * @param query La requête sur la collection location
+     * @return Un flux de locations
+     */
+    public Flux<Location> find(Query query) {
+        return mongoTemplate.query(Location.class).as(Document.class).matching(query).all()
+                .buffer(Pagination.LIMITE_PAR_DEFAUT)
+                .concatMap(this::resoudre);
+    }
+
+    private Flux<Location> resoudre(List<Document> documents) {
+        Set<String> idsLocataires = new HashSet<>();
+        Set<String> idsVehicules = new HashSet<>();
+        for (Document document : documents) {
+            if (!document.containsKey(LocationResolver.INSTANTANE)) {
+                ajouterId(idsLocataires, LocationResolver.idReference(document, LocationResolver.LOCATAIRE));
+                ajouterId(idsVehicules, LocationResolver.idReference(document, LocationResolver.VEHICULE));
+            }
+        }
+
+        Mono<Map<String, Locataire>> locataires = idsLocataires.isEmpty() ? Mono.just(Map.of())
+                : locataireService.findAllById(idsLocataires).collectMap(Locataire::getId, Function.identity());
+        Mono<Map<String, Vehicule>> vehicules = idsVehicules.isEmpty() ? Mono.just(Map.of())
+                : vehiculeService.findAllById(idsVehicules).collectMap(Vehicule::getId, Function.identity());
+
+        return Mono.zip(locataires, vehicules).flatMapIterable(references -> {
+            List<Location> locations = new ArrayList<>(documents.size());
+            for (Document document : documents) {
+                Location location = LocationResolver.lire(mongoTemplate.getConverter(), document);
+                if (document.containsKey(LocationResolver.INSTANTANE)) {
+                    LocationResolver.lireInstantane(location, document);
+                } else {
+                    location.setLocataire(references.getT1().get(LocationResolver.idReference(document, LocationResolver.LOCATAIRE)));
+                    location.setVehicule(references.getT2().get(LocationResolver.idReference(document, LocationResolver.VEHICULE)));
+                }
+                locations.add(location);
+            }
+            return locations;
+        });
+    }
+
+    private static void ajouterId(Set<String> ids, String id) {
+        if (id != null) {
+            ids.add(id);
+        }
+    }
+}
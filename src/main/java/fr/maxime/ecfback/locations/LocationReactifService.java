@@ -0,0 +1,161 @@
+package fr.maxime.ecfback.locations;
+
+import fr.maxime.ecfback.commun.Idempotence;
+import fr.maxime.ecfback.commun.Pagination;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locataires.LocataireReactifService;
+import fr.maxime.ecfback.vehicules.VehiculeReactifService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Service des locations de la pile réactive (profil "reactif").<br>
+ * Les lectures utilisent le driver MongoDB réactif. Les écritures (réservation, modification, suppression)
+ * passent par LocationServiceImpl, qui vérifie la disponibilité du véhicule sous son verrou : elles sont exécutées
+ * sur le scheduler boundedElastic pour ne jamais bloquer la boucle d'événements.
+ */
+@Service
+@Profile("reactif")
+public class LocationReactifService {
+
+    Logger logger = LoggerFactory.getLogger(LocationReactifService.class);
+
+    private final LocationReactifResolver resolver;
+    private final LocationServiceImpl locationService;
+    private final LocataireReactifService locataireService;
+    private final VehiculeReactifService vehiculeService;
+    private final Idempotence idempotence;
+
+    public LocationReactifService(LocationReactifResolver resolver,
+                                  LocationServiceImpl locationService,
+                                  LocataireReactifService locataireService,
+                                  VehiculeReactifService vehiculeService,
+                                  Idempotence idempotence) {
+        logger.info("Création du service Location réactif");
+        this.resolver = resolver;
+        this.locationService = locationService;
+        this.locataireService = locataireService;
+        this.vehiculeService = vehiculeService;
+        this.idempotence = idempotence;
+    }
+
+    public Flux<Location> findAll() {
+        return resolver.find(new Query());
+    }
+
+    public Flux<Location> findPage(String after, Integer limit) {
+        return resolver.find(Pagination.apres(after, limit));
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locations réduites aux champs demandés, locataires et véhicules projetés
+     * inclus (voir LocationServiceImpl.findAllChamps) : la lecture est faite avec le driver bloquant, hors de la boucle
+     * d'événements
+     * @param fields Les champs demandés, séparés par des virgules (voir LocationServiceImpl.CHAMPS)
+     * @param after L'id de la dernière location de la page précédente (optionnel)
+     * @param limit Le nombre de locations de la page (optionnel, toutes sans limit ni after)
+     * @return un flux de locations réduites aux champs demandés
+     */
+    public Flux<Map<String, Object>> findAllChamps(String fields, String after, Integer limit) {
+        return Mono.fromCallable(() -> locationService.findAllChamps(fields, after, limit))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(locations -> locations);
+    }
+
+    /**
+     * Cette fonction permet de retrouver les locations actives sur au moins une partie de la période [debut, fin]<br>
+     * La requête est celle de LocationServiceImpl.findAllActives (bornée par la durée de la plus longue location)
+     */
+    public Flux<Location> findAllActives(LocalDate debut, LocalDate fin, String tri, Integer limit, Integer page) {
+        return Mono.fromCallable(() -> locationService.requeteActives(debut, fin, tri, limit, page))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(resolver::find);
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location en passant par son id, 404 - NOT_FOUND si elle n'existe pas
+     * @param id L'id de la location
+     * @return la location recherchée
+     */
+    public Mono<Location> findById(String id) {
+        return resolver.find(query(where("id").is(id))).next().switchIfEmpty(Mono.error(() -> {
+            logger.warn("Locations : FindById invalide : " + id);
+            return new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }));
+    }
+
+    public Mono<Location> reserver(Location location) {
+        return Mono.fromCallable(() -> locationService.reserver(location)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Cette fonction permet de réserver une location une seule fois par clé d'idempotence : les rejeux renvoient
+     * la location déjà enregistrée (voir Idempotence, qui attend la première requête sur le même scheduler)
+     * @param location La location à enregistrer
+     * @param cle La valeur de l'en-tête Idempotency-Key
+     * @return La location enregistrée par la première requête de la clé
+     */
+    public Mono<Location> reserver(Location location, String cle) {
+        return Mono.fromCallable(() -> idempotence.executer("POST /locations", cle, location, Location.class,
+                        () -> locationService.reserver(location)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<Location> update(Location location, String id) {
+        return Mono.fromCallable(() -> locationService.update(location, id)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<Void> deleteById(String id) {
+        return Mono.<Void>fromRunnable(() -> locationService.deleteById(id)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Flux<Location> findAllByDateDebut(LocalDate dateDebut) {
+        return resolver.find(query(where("dateDebut").is(dateDebut)));
+    }
+
+    public Flux<Location> findAllByDateFin(LocalDate dateFin) {
+        return resolver.find(query(where("dateFin").is(dateFin)));
+    }
+
+    public Flux<Location> findAllByDateDebutAndDateFin(LocalDate dateDebut, LocalDate dateFin) {
+        return resolver.find(query(where("dateDebut").is(dateDebut).and("dateFin").is(dateFin)));
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location grâce au nom du locataire (voir LocationServiceImpl)
+     * @param nom Le nom de famille du locataire
+     * @return Un flux de locations
+     */
+    public Flux<Location> findAllByLocataireName(String nom) {
+        return locataireService.findAllByNom(nom).collectList()
+                .flatMapMany(locataires -> locataires.isEmpty() ? Flux.empty()
+                        : resolver.find(query(LocationResolver.critereReference(LocationResolver.LOCATAIRE,
+                                locataires.stream().map(Locataire::getId).toList()))));
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location grâce au numéro d'immatriculation du véhicule (voir LocationServiceImpl)
+     * @param immatriculation L'immatriculation du véhicule
+     * @return Un flux de locations
+     */
+    public Flux<Location> findAllByImmatriculation(String immatriculation) {
+        return vehiculeService.findByImmatriculation(immatriculation)
+                .flatMapMany(vehicule -> resolver.find(query(LocationResolver.critereReference(LocationResolver.VEHICULE,
+                        List.of(vehicule.getId())))));
+    }
+}
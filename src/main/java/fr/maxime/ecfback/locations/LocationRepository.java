@@ -9,7 +9,7 @@ public interface LocationRepository extends MongoRepository<Location, String> {
 
     List<Location> findAllByDateDebut(LocalDate dateDebut);
     List<Location> findAllByDateFin(LocalDate dateFin);
-    List<Location> findAllByDateDebutAndDateFin(LocalDate dateDebut, String dateFin);
+    List<Location> findAllByDateDebutAndDateFin(LocalDate dateDebut, LocalDate dateFin);
 
 
 
@@ -0,0 +1,529 @@
+package fr.maxime.ecfback.locations;
+
+import com.mongodb.DBRef;
+import fr.maxime.ecfback.commun.MetriquesRequete;
+import fr.maxime.ecfback.commun.Projection;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locataires.LocataireServiceImpl;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import fr.maxime.ecfback.vehicules.VehiculeServiceImpl;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Lecture des locations sans résolution des @DBRef une par une.<br>
+ * Par défaut (ecfback.locations.resolution=lot) les documents sont lus bruts, les ids des locataires et véhicules
+ * référencés sont collectés puis chargés avec une seule requête $in par collection.<br>
+ * Avec ecfback.locations.resolution=lookup la jointure est faite par MongoDB dans un pipeline d'agrégation ($lookup).<br>
+ * Deux formats de document coexistent (ecfback.locations.format ne choisit que celui des écritures) :
+ * <ul>
+ *     <li>dbref : locataire et vehicule sont des @DBRef, résolus à chaque lecture</li>
+ *     <li>instantane : idLocataire et idVehicule sont de simples ObjectId et le champ instantane copie les champs
+ *     affichés au moment de la réservation (nom, prenom, immatriculation, marque, modele, prix).
+ *     Ces locations sont lues sans requête sur les locataires ni les véhicules</li>
+ * </ul>
+ * Les anciens documents sont convertis par MigrationLocations : leur instantané est marqué migre, il copie le locataire
+ * et le véhicule tels qu'ils étaient au moment de la migration et non de la réservation.
+ */
+@Component
+public class LocationResolver {
+
+    static final String LOCATAIRE = "locataire";
+    static final String VEHICULE = "vehicule";
+    public static final String ID_LOCATAIRE = "idLocataire";
+    public static final String ID_VEHICULE = "idVehicule";
+    static final String INSTANTANE = "instantane";
+    static final String MIGRE = "migre";
+    private static final List<String> CHAMPS_LOCATAIRE = List.of("nom", "prenom");
+    private static final List<String> CHAMPS_VEHICULE = List.of("immatriculation", "marque", "modele", "prix");
+
+    Logger logger = LoggerFactory.getLogger(LocationResolver.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final LocataireServiceImpl locataireService;
+    private final VehiculeServiceImpl vehiculeService;
+    private final boolean lookup;
+    private final boolean instantanes;
+
+    public LocationResolver(MongoTemplate mongoTemplate,
+                            LocataireServiceImpl locataireService,
+                            VehiculeServiceImpl vehiculeService,
+                            @Value("${ecfback.locations.resolution:lot}") String resolution,
+                            @Value("${ecfback.locations.format:dbref}") String format) {
+        logger.info("Résolution des références des locations : " + resolution + ", format des écritures : " + format);
+        this.mongoTemplate = mongoTemplate;
+        this.locataireService = locataireService;
+        this.vehiculeService = vehiculeService;
+        this.lookup = "lookup".equals(resolution);
+        this.instantanes = "instantane".equals(format);
+    }
+
+    /**
+     * @return true si les locations sont écrites au format instantane (ecfback.locations.format)
+     */
+    public boolean instantanes() {
+        return instantanes;
+    }
+
+    /**
+     * Cette fonction enregistre une location au format instantane<br>
+     * À la création, le locataire et le véhicule sont relus pour copier leurs champs affichés dans l'instantané.
+     * Une modification ne réécrit que les champs de la location ($set) : l'instantané enregistré (et son marqueur migre)
+     * est conservé, seule la partie d'un locataire ou d'un véhicule remplacé par un autre est recopiée
+     * @param location La location à enregistrer
+     * @return La location enregistrée, avec son id
+     */
+    public Location enregistrer(Location location) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(location, document);
+        document.remove(LOCATAIRE);
+        document.remove(VEHICULE);
+        if (location.getLocataire() != null && location.getLocataire().getId() != null) {
+            document.put(ID_LOCATAIRE, idMongo(location.getLocataire().getId()));
+        }
+        if (location.getVehicule() != null && location.getVehicule().getId() != null) {
+            document.put(ID_VEHICULE, idMongo(location.getVehicule().getId()));
+        }
+        String collection = mongoTemplate.getCollectionName(Location.class);
+
+        Document existant = null;
+        if (location.getId() != null) {
+            Query query = query(where("id").is(location.getId()));
+            query.fields().include(INSTANTANE, ID_LOCATAIRE, ID_VEHICULE);
+            existant = mongoTemplate.query(Location.class).as(Document.class).matching(query).firstValue();
+        }
+        if (existant == null) {
+            document.put(INSTANTANE, instantane(locataire(location), vehicule(location)));
+            mongoTemplate.save(document, collection);
+            location.setId(String.valueOf(document.get("_id")));
+            return location;
+        }
+
+        Update update = new Update();
+        document.forEach((champ, valeur) -> {
+            if (!"_id".equals(champ)) {
+                update.set(champ, valeur);
+            }
+        });
+        // Une location encore au format dbref perd ses @DBRef au profit de idLocataire / idVehicule
+        update.unset(LOCATAIRE).unset(VEHICULE);
+        for (String champ : List.of(ID_LOCATAIRE, ID_VEHICULE)) {
+            if (!document.containsKey(champ)) {
+                update.unset(champ);
+            }
+        }
+        if (existant.get(INSTANTANE) == null) {
+            update.set(INSTANTANE, instantane(locataire(location), vehicule(location)));
+        } else {
+            if (!Objects.equals(existant.get(ID_LOCATAIRE), document.get(ID_LOCATAIRE))) {
+                recopier(update, instantane(locataire(location), null), CHAMPS_LOCATAIRE);
+            }
+            if (!Objects.equals(existant.get(ID_VEHICULE), document.get(ID_VEHICULE))) {
+                recopier(update, instantane(null, vehicule(location)), CHAMPS_VEHICULE);
+            }
+        }
+        mongoTemplate.updateFirst(query(where("_id").is(existant.get("_id"))), update, collection);
+        return location;
+    }
+
+    private Locataire locataire(Location location) {
+        return location.getLocataire() == null || location.getLocataire().getId() == null ? null
+                : locataireService.findAllById(List.of(location.getLocataire().getId())).stream().findFirst().orElse(null);
+    }
+
+    private Vehicule vehicule(Location location) {
+        return location.getVehicule() == null || location.getVehicule().getId() == null ? null
+                : vehiculeService.findAllById(List.of(location.getVehicule().getId())).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * Remplace dans l'instantané enregistré les champs d'une de ses parties (locataire ou véhicule)
+     */
+    private static void recopier(Update update, Document partie, List<String> champs) {
+        for (String champ : champs) {
+            if (partie.get(champ) != null) {
+                update.set(INSTANTANE + "." + champ, partie.get(champ));
+            } else {
+                update.unset(INSTANTANE + "." + champ);
+            }
+        }
+    }
+
+    /**
+     * Cette fonction construit l'instantané d'une location : les champs du locataire et du véhicule
+     * affichés avec elle, figés au moment de la réservation
+     * @param locataire Le locataire, null s'il n'existe pas
+     * @param vehicule Le véhicule, null s'il n'existe pas
+     * @return Le document à enregistrer dans le champ instantane
+     */
+    static Document instantane(Locataire locataire, Vehicule vehicule) {
+        Document instantane = new Document();
+        if (locataire != null) {
+            instantane.append("nom", locataire.getNom()).append("prenom", locataire.getPrenom());
+        }
+        if (vehicule != null) {
+            instantane.append("immatriculation", vehicule.getImmatriculation())
+                    .append("marque", vehicule.getMarque())
+                    .append("modele", vehicule.getModele())
+                    .append("prix", vehicule.getPrix());
+        }
+        return instantane;
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locations correspondant à la requête, locataires et véhicules inclus
+     * @param query La requête sur la collection location
+     * @return Une liste de locations
+     */
+    public List<Location> find(Query query) {
+        if (lookup) {
+            return findAvecLookup(query);
+        }
+        List<Document> documents = mongoTemplate.query(Location.class).as(Document.class).matching(query).all();
+        return resoudre(documents);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locations correspondant à la requête, réduites aux champs de la projection<br>
+     * Les locataires et véhicules demandés sont chargés avec une requête $in par collection, projetée elle aussi
+     * (quel que soit ecfback.locations.resolution)
+     * @param query La requête sur la collection location
+     * @param projection Les champs demandés
+     * @return Une liste de locations réduites aux champs demandés
+     */
+    public List<Map<String, Object>> find(Query query, Projection projection) {
+        projection.appliquer(query);
+        if (projection.reference(LOCATAIRE) != null) {
+            query.fields().include(ID_LOCATAIRE);
+        }
+        if (projection.reference(VEHICULE) != null) {
+            query.fields().include(ID_VEHICULE);
+        }
+        List<Document> documents = mongoTemplate.query(Location.class).as(Document.class).matching(query).all();
+        Map<String, Map<String, Object>> locataires = references(documents, LOCATAIRE, Locataire.class, projection.reference(LOCATAIRE));
+        Map<String, Map<String, Object>> vehicules = references(documents, VEHICULE, Vehicule.class, projection.reference(VEHICULE));
+
+        List<Map<String, Object>> locations = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            Map<String, Object> location = projection.lire(document);
+            if (locataires != null) {
+                location.put(LOCATAIRE, locataires.get(idReference(document, LOCATAIRE)));
+            }
+            if (vehicules != null) {
+                location.put(VEHICULE, vehicules.get(idReference(document, VEHICULE)));
+            }
+            locations.add(location);
+        }
+        return locations;
+    }
+
+    /**
+     * Charge en une requête les documents référencés par le champ, réduits à leur projection
+     * @return Les documents référencés par id, null si la référence n'est pas demandée
+     */
+    private Map<String, Map<String, Object>> references(List<Document> documents, String champ, Class<?> type,
+                                                        Projection projection) {
+        if (projection == null) {
+            return null;
+        }
+        Set<String> ids = new HashSet<>();
+        for (Document document : documents) {
+            ajouterId(ids, idReference(document, champ));
+        }
+        Map<String, Map<String, Object>> references = new HashMap<>();
+        if (ids.isEmpty()) {
+            return references;
+        }
+        MetriquesRequete.resolution(ids.size());
+        mongoTemplate.query(type).as(Document.class).matching(projection.appliquer(query(where("id").in(ids)))).all()
+                .forEach(document -> references.put(String.valueOf(document.get("_id")), projection.lire(document)));
+        return references;
+    }
+
+    /**
+     * Cette fonction permet de parcourir les locations au fil du curseur MongoDB<br>
+     * Les références sont résolues par lots de taille fixe : la mémoire utilisée ne dépend pas du nombre de locations
+     * @param query La requête sur la collection location
+     * @param taille Le nombre de documents résolus ensemble
+     * @return Un flux de locations, à fermer par l'appelant
+     */
+    public Stream<Location> stream(Query query, int taille) {
+        Stream<Document> documents = mongoTemplate.query(Location.class).as(Document.class).matching(query).stream();
+        Iterator<Document> curseur = documents.iterator();
+        Iterator<List<Location>> lots = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return curseur.hasNext();
+            }
+
+            @Override
+            public List<Location> next() {
+                List<Document> lot = new ArrayList<>(taille);
+                while (lot.size() < taille && curseur.hasNext()) {
+                    lot.add(curseur.next());
+                }
+                return resoudre(lot);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(lots, Spliterator.ORDERED), false)
+                .flatMap(List::stream)
+                .onClose(documents::close);
+    }
+
+    /**
+     * Cette fonction permet de retrouver une location par son id, locataire et véhicule inclus
+     * @param id L'id de la location
+     * @return La location si elle existe
+     */
+    public Optional<Location> findById(String id) {
+        return find(query(where("id").is(id))).stream().findFirst();
+    }
+
+    /**
+     * Cette fonction transforme des documents bruts de la collection location en locations<br>
+     * Les références sont résolues par lot : une requête pour les locataires, une pour les véhicules.
+     * Les locations au format instantane n'en ont pas besoin
+     * @param documents Les documents bruts
+     * @return Les locations avec leur locataire et leur véhicule
+     */
+    public List<Location> resoudre(List<Document> documents) {
+        Set<String> idsLocataires = new HashSet<>();
+        Set<String> idsVehicules = new HashSet<>();
+        for (Document document : documents) {
+            if (!document.containsKey(INSTANTANE)) {
+                ajouterId(idsLocataires, idReference(document, LOCATAIRE));
+                ajouterId(idsVehicules, idReference(document, VEHICULE));
+            }
+        }
+
+        Map<String, Locataire> locataires = new HashMap<>();
+        if (!idsLocataires.isEmpty()) {
+            MetriquesRequete.resolution(idsLocataires.size());
+            locataireService.findAllById(idsLocataires).forEach(locataire -> locataires.put(locataire.getId(), locataire));
+        }
+        Map<String, Vehicule> vehicules = new HashMap<>();
+        if (!idsVehicules.isEmpty()) {
+            MetriquesRequete.resolution(idsVehicules.size());
+            vehiculeService.findAllById(idsVehicules).forEach(vehicule -> vehicules.put(vehicule.getId(), vehicule));
+        }
+
+        List<Location> locations = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            Location location = lire(document);
+            if (document.containsKey(INSTANTANE)) {
+                lireInstantane(location, document);
+            } else {
+                location.setLocataire(locataires.get(idReference(document, LOCATAIRE)));
+                location.setVehicule(vehicules.get(idReference(document, VEHICULE)));
+            }
+            locations.add(location);
+        }
+        return locations;
+    }
+
+    /**
+     * Cette fonction permet de récupérer l'id d'une référence @DBRef d'un document brut
+     * @param reference La valeur brute du champ
+     * @return L'id référencé, null si le champ n'est pas une référence
+     */
+    public static String idReference(Object reference) {
+        return reference instanceof DBRef dbRef ? String.valueOf(dbRef.getId()) : null;
+    }
+
+    /**
+     * Cette fonction permet de récupérer l'id du locataire ou du véhicule d'un document brut, quel que soit son format
+     * (idLocataire / idVehicule, sinon la @DBRef). La projection doit inclure les deux champs
+     * @param document Le document brut de la location
+     * @param champ locataire ou vehicule
+     * @return L'id référencé, null si la location n'en a pas
+     */
+    public static String idReference(Document document, String champ) {
+        Object id = document.get(champId(champ));
+        return id != null ? String.valueOf(id) : idReference(document.get(champ));
+    }
+
+    /**
+     * Cette fonction construit le critère des locations qui référencent un des ids, quel que soit leur format
+     * ($or indexé des deux côtés : la @DBRef et idLocataire / idVehicule)
+     * @param champ locataire ou vehicule
+     * @param ids Les ids des locataires ou véhicules
+     * @return Le critère à ajouter à la requête
+     */
+    public static Criteria critereReference(String champ, Collection<String> ids) {
+        // Entités réduites à leur id : converties en @DBRef par Spring Data
+        List<Object> references = ids.stream().map(id -> {
+            if (VEHICULE.equals(champ)) {
+                Vehicule vehicule = new Vehicule();
+                vehicule.setId(id);
+                return (Object) vehicule;
+            }
+            Locataire locataire = new Locataire();
+            locataire.setId(id);
+            return locataire;
+        }).toList();
+        return new Criteria().orOperator(where(champ).in(references),
+                where(champId(champ)).in(ids.stream().map(LocationResolver::idMongo).toList()));
+    }
+
+    /**
+     * Cette fonction construit l'expression d'agrégation qui extrait l'id du locataire ou du véhicule<br>
+     * idLocataire / idVehicule s'il existe, sinon l'id de la @DBRef : le chemin "champ.$id" n'est pas utilisable
+     * dans une agrégation, l'id est donc lu via $objectToArray
+     * @param champ Le champ contenant la référence (locataire ou vehicule)
+     * @return L'expression de l'id référencé
+     */
+    public static Document expressionIdReference(String champ) {
+        Document reference = new Document("$objectToArray", "$" + champ);
+        Document idDbRef = new Document("$let", new Document("vars", new Document("ref", reference))
+                .append("in", new Document("$arrayElemAt", List.of("$$ref.v",
+                        new Document("$indexOfArray", List.of("$$ref.k", new Document("$literal", "$id")))))));
+        return new Document("$ifNull", List.of("$" + champId(champ), idDbRef));
+    }
+
+    static String champId(String champ) {
+        return LOCATAIRE.equals(champ) ? ID_LOCATAIRE : ID_VEHICULE;
+    }
+
+    /**
+     * Les ids générés par MongoDB sont enregistrés en ObjectId, comme les ids des documents référencés
+     */
+    static Object idMongo(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    /**
+     * Cette fonction renseigne le locataire et le véhicule d'une location au format instantane depuis son instantané,
+     * sans requête : seuls les champs copiés à la réservation sont renseignés (le prix est celui de la réservation,
+     * sauf pour un instantané marqué migre, copié lors de la migration depuis le véhicule de l'époque de la migration)
+     * @param location La location lue sans ses références
+     * @param document Son document brut
+     */
+    static void lireInstantane(Location location, Document document) {
+        Document instantane = document.get(INSTANTANE, Document.class);
+        String idLocataire = idReference(document, LOCATAIRE);
+        if (idLocataire != null) {
+            Locataire locataire = new Locataire();
+            locataire.setId(idLocataire);
+            locataire.setNom(instantane.getString("nom"));
+            locataire.setPrenom(instantane.getString("prenom"));
+            location.setLocataire(locataire);
+        }
+        String idVehicule = idReference(document, VEHICULE);
+        if (idVehicule != null) {
+            Vehicule vehicule = new Vehicule();
+            vehicule.setId(idVehicule);
+            vehicule.setImmatriculation(instantane.getString("immatriculation"));
+            vehicule.setMarque(instantane.getString("marque"));
+            vehicule.setModele(instantane.getString("modele"));
+            Object prix = instantane.get("prix");
+            vehicule.setPrix(prix instanceof Number nombre ? nombre.doubleValue() : null);
+            location.setVehicule(vehicule);
+        }
+    }
+
+    private static void ajouterId(Set<String> ids, String id) {
+        if (id != null) {
+            ids.add(id);
+        }
+    }
+
+    private List<Location> findAvecLookup(Query query) {
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(context -> new Document("$match", context.getMappedObject(query.getQueryObject())));
+        if (query.isSorted()) {
+            operations.add(context -> new Document("$sort", context.getMappedObject(query.getSortObject())));
+        }
+        if (query.getSkip() > 0) {
+            operations.add(Aggregation.skip(query.getSkip()));
+        }
+        if (query.getLimit() > 0) {
+            operations.add(Aggregation.limit(query.getLimit()));
+        }
+        ajouterJointure(operations, LOCATAIRE, mongoTemplate.getCollectionName(Locataire.class));
+        ajouterJointure(operations, VEHICULE, mongoTemplate.getCollectionName(Vehicule.class));
+
+        List<Document> documents = mongoTemplate
+                .aggregate(Aggregation.newAggregation(Location.class, operations), Document.class)
+                .getMappedResults();
+
+        List<Location> locations = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            Location location = lire(document);
+            if (document.containsKey(INSTANTANE)) {
+                lireInstantane(location, document);
+            } else {
+                location.setLocataire(lireJointure(document, LOCATAIRE, Locataire.class));
+                location.setVehicule(lireJointure(document, VEHICULE, Vehicule.class));
+            }
+            locations.add(location);
+        }
+        return locations;
+    }
+
+    /**
+     * Ajoute au pipeline l'extraction de l'id de la référence (voir expressionIdReference)
+     * puis le $lookup sur la collection référencée
+     */
+    private static void ajouterJointure(List<AggregationOperation> operations, String champ, String collection) {
+        Document id = expressionIdReference(champ);
+        operations.add(context -> new Document("$addFields", new Document("_" + champ + "Id", id)));
+        operations.add(context -> new Document("$lookup", new Document("from", collection)
+                .append("localField", "_" + champ + "Id")
+                .append("foreignField", "_id")
+                .append("as", "_" + champ)));
+    }
+
+    private <T> T lireJointure(Document document, String champ, Class<T> type) {
+        List<?> resultats = document.get("_" + champ, List.class);
+        if (resultats == null || resultats.isEmpty()) {
+            return null;
+        }
+        return mongoTemplate.getConverter().read(type, (Document) resultats.get(0));
+    }
+
+    private Location lire(Document document) {
+        return lire(mongoTemplate.getConverter(), document);
+    }
+
+    /**
+     * Lit une location depuis son document brut sans ses références (ni son instantané), résolues à part
+     */
+    static Location lire(MongoConverter converter, Document document) {
+        Document sansReferences = new Document(document);
+        sansReferences.remove(LOCATAIRE);
+        sansReferences.remove(VEHICULE);
+        sansReferences.remove(ID_LOCATAIRE);
+        sansReferences.remove(ID_VEHICULE);
+        sansReferences.remove(INSTANTANE);
+        return converter.read(Location.class, sansReferences);
+    }
+}
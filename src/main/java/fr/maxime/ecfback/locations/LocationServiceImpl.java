@@ -1,35 +1,88 @@
 package fr.maxime.ecfback.locations;
 
+import fr.maxime.ecfback.commun.Pagination;
+import fr.maxime.ecfback.commun.Projection;
+import fr.maxime.ecfback.commun.Verrous;
+import fr.maxime.ecfback.disponibilites.DisponibiliteService;
+import fr.maxime.ecfback.journal.EvenementJournal;
+import fr.maxime.ecfback.journal.Journal;
 import fr.maxime.ecfback.locataires.Locataire;
 import fr.maxime.ecfback.locataires.LocataireServiceImpl;
+import fr.maxime.ecfback.resumes.ResumeService;
+import fr.maxime.ecfback.tarifs.MoteurTarifs;
 import fr.maxime.ecfback.vehicules.Vehicule;
 import fr.maxime.ecfback.vehicules.VehiculeServiceImpl;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Service
+@Timed(value = "ecfback.service", description = "Durée des méthodes des services")
 public class LocationServiceImpl implements LocationService {
 
     Logger logger = LoggerFactory.getLogger(LocationServiceImpl.class);
 
+    private static final Set<String> TRIS = Set.of("dateDebut", "dateFin", "prixTotal");
+
+    /** Les champs d'une location qu'une liste peut demander avec fields=, y compris ceux du locataire et du véhicule */
+    public static final List<String> CHAMPS = Stream.of(
+            Stream.of("id", "dateDebut", "dateFin", "prixTotal", LocationResolver.LOCATAIRE, LocationResolver.VEHICULE),
+            LocataireServiceImpl.CHAMPS.stream().map(champ -> LocationResolver.LOCATAIRE + "." + champ),
+            VehiculeServiceImpl.CHAMPS.stream().map(champ -> LocationResolver.VEHICULE + "." + champ))
+            .flatMap(champs -> champs).toList();
+
     private final LocationRepository repository;
+    private final LocationResolver resolver;
     private final VehiculeServiceImpl vehiculeService;
+    private final LocataireServiceImpl locataireService;
+    private final DisponibiliteService disponibiliteService;
+    private final ResumeService resumeService;
+    private final DureeLocations dureeLocations;
+    private final MoteurTarifs moteurTarifs;
+    private final Journal journal;
+    private final Verrous verrous;
+    private final Verrous verrousLocations;
 
     public LocationServiceImpl(LocationRepository repository,
+                               LocationResolver resolver,
                                VehiculeServiceImpl vehiculeService,
-                               LocataireServiceImpl locataireService) {
+                               LocataireServiceImpl locataireService,
+                               DisponibiliteService disponibiliteService,
+                               ResumeService resumeService,
+                               DureeLocations dureeLocations,
+                               MoteurTarifs moteurTarifs,
+                               Journal journal,
+                               @Value("${ecfback.reservations.verrous:256}") int nombreVerrous) {
         logger.info("Création du service Location");
         this.repository = repository;
+        this.resolver = resolver;
         this.vehiculeService = vehiculeService;
+        this.locataireService = locataireService;
+        this.disponibiliteService = disponibiliteService;
+        this.resumeService = resumeService;
+        this.dureeLocations = dureeLocations;
+        this.moteurTarifs = moteurTarifs;
+        this.journal = journal;
+        this.verrous = new Verrous(nombreVerrous);
+        this.verrousLocations = new Verrous(nombreVerrous);
     }
 
     /**
@@ -39,18 +92,78 @@ public class LocationServiceImpl implements LocationService {
      */
     @Override
     public List<Location> findAll() {
-        return repository.findAll();
+        return resolver.find(new Query());
+    }
+
+    /**
+     * Cette fonction permet de récupérer une page de locations triée par id<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     * @param after L'id de la dernière location de la page précédente (absent pour la première page)
+     * @param limit Le nombre de locations de la page
+     * @return une liste de locations
+     */
+    public List<Location> findPage(String after, Integer limit) {
+        return resolver.find(Pagination.apres(after, limit));
+    }
+
+    /**
+     * Cette fonction permet de récupérer les locations réduites aux champs demandés<br>
+     * "locataire" ou "vehicule" ajoute le document référencé, "locataire.nom" seulement un de ses champs :
+     * les références ne sont chargées que si elles sont demandées, et réduites elles aussi<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?fields=<span style="color:orange">dateDebut,dateFin,locataire.nom,vehicule.immatriculation</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     * @param fields Les champs demandés, séparés par des virgules (voir CHAMPS)
+     * @param after L'id de la dernière location de la page précédente (optionnel)
+     * @param limit Le nombre de locations de la page (optionnel, toutes les locations sans limit ni after)
+     * @return une liste de locations réduites aux champs demandés
+     */
+    public List<Map<String, Object>> findAllChamps(String fields, String after, Integer limit) {
+        Query query = limit == null && after == null ? new Query() : Pagination.apres(after, limit);
+        return resolver.find(query, Projection.de(fields, CHAMPS));
+    }
+
+    /**
+     * Cette fonction permet de parcourir toutes les locations au fil du curseur MongoDB<br>
+     * Le flux doit être fermé par l'appelant
+     * @return un flux de locations
+     */
+    public Stream<Location> stream() {
+        return resolver.stream(new Query(), Pagination.LIMITE_PAR_DEFAUT);
     }
 
     /**
      * Cette fonction permet de sauvegarder une nouvelle location en base de données<br>
+     * Les résumés du véhicule et du locataire sont mis à jour dans la foulée (ancienne version retirée, nouvelle ajoutée)
+     * et l'écriture est ajoutée au journal (voir Journal)<br>
+     * Une modification se fait sous le verrou de la location : deux écritures simultanées de la même location
+     * ne peuvent pas lire la même ancienne version et la retirer deux fois des résumés<br>
+     * Le format du document dépend de ecfback.locations.format (voir LocationResolver)<br>
      * <b>Requête Postman en POST</b> : localhost:8080/locations
      * @param entity Une location
      * @return La nouvelle location enregistrée dans la base de données
      */
     @Override
     public Location save(Location entity) {
-        return repository.save(entity);
+        if (entity.getId() == null) {
+            return enregistrer(entity, null);
+        }
+        Lock verrou = verrousLocations.pour(entity.getId());
+        verrou.lock();
+        try {
+            return enregistrer(entity, resumeService.contribution(entity.getId()));
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    private Location enregistrer(Location entity, ResumeService.Contribution ancienne) {
+        dureeLocations.enregistrer(entity.getDateDebut(), entity.getDateFin());
+        Location location = resolver.instantanes() ? resolver.enregistrer(entity) : repository.save(entity);
+        this.indexerDisponibilite(location);
+        resumeService.retirer(ancienne);
+        resumeService.ajouter(location);
+        journal.enregistrer(Journal.LOCATION, location.getId(),
+                ancienne == null ? EvenementJournal.CREATION : EvenementJournal.MODIFICATION, location);
+        return location;
     }
 
     /**
@@ -61,29 +174,110 @@ public class LocationServiceImpl implements LocationService {
      */
     @Override
     public Location findById(String id) {
-        return repository.findById(id).orElseThrow(()-> {
+        return resolver.findById(id).orElseThrow(()-> {
             logger.warn("Locations : FindById invalide : " + id);
             return new ResponseStatusException(HttpStatus.NOT_FOUND);
         });
     }
 
+    /**
+     * Cette fonction permet de réserver un véhicule : elle calcule le prix total de la location
+     * puis l'enregistre si le véhicule est libre sur la période<br>
+     * La vérification et l'enregistrement se font sous le verrou du véhicule : deux réservations simultanées
+     * du même véhicule ne peuvent pas passer toutes les deux, celles d'autres véhicules ne sont pas bloquées<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locations
+     * @param entity Une location
+     * @return La nouvelle location enregistrée dans la base de données
+     */
+    public Location reserver(Location entity) {
+        verifierDates(entity);
+        entity.setPrixTotal(this.calculPrixTotal(entity.getVehicule().getId(), entity.getId(),
+                entity.getDateDebut(), entity.getDateFin()));
+        Lock verrou = verrous.pour(entity.getVehicule().getId());
+        verrou.lock();
+        try {
+            verifierDisponibilite(entity);
+            return this.save(entity);
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Cette fonction permet de mettre à jour la location grâce à son id<br>
+     * Comme pour une réservation, le véhicule doit être libre sur la nouvelle période (hors cette location)
+     * @param location La location modifiée
+     * @param id L'id de la location
+     * @return La location mise à jour
+     */
     @Override
     public Location update(Location location, String id) {
         if (!Objects.equals(location.getId(), id)) {
             logger.warn("In invalide : " + id);
             throw new ResponseStatusException(HttpStatus.NOT_FOUND);
         }
-        return this.repository.save(location);
+        verifierDates(location);
+        Lock verrou = verrous.pour(location.getVehicule().getId());
+        verrou.lock();
+        try {
+            verifierDisponibilite(location);
+            return this.save(location);
+        } finally {
+            verrou.unlock();
+        }
     }
 
     /**
      * Cette fonction permet de supprimer une location de la base de données en passant par son id<br>
+     * Comme une modification, la suppression se fait sous le verrou de la location (voir save)<br>
      * <b>Requête Postman en DELETE</b> : localhost:8080/locations/<span style="color:orange">id</span>
      * @param id L'id de la location à supprimer
      */
     @Override
     public void deleteById(String id) {
-        repository.deleteById(id);
+        Lock verrou = verrousLocations.pour(id);
+        verrou.lock();
+        try {
+            ResumeService.Contribution ancienne = resumeService.contribution(id);
+            repository.deleteById(id);
+            disponibiliteService.retirer(id);
+            resumeService.retirer(ancienne);
+            journal.enregistrer(Journal.LOCATION, id, EvenementJournal.SUPPRESSION, null);
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Cette fonction vérifie que la location a un véhicule et une période cohérente,
+     * sinon elle retourne une erreur 400 - BAD_REQUEST
+     * @param location La location à enregistrer
+     */
+    private void verifierDates(Location location) {
+        if (location.getVehicule() == null || location.getVehicule().getId() == null
+                || location.getDateDebut() == null || location.getDateFin() == null
+                || !location.getDateFin().isAfter(location.getDateDebut())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Véhicule ou dates de location invalides");
+        }
+    }
+
+    /**
+     * Cette fonction vérifie que le véhicule de la location est libre sur sa période,
+     * sinon elle retourne une erreur 406 - NOT_ACCEPTABLE
+     * @param location La location à enregistrer
+     */
+    private void verifierDisponibilite(Location location) {
+        if (!disponibiliteService.estDisponible(location.getVehicule().getId(), location.getDateDebut(),
+                location.getDateFin(), location.getId())) {
+            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Le véhicule est déjà loué");
+        }
+    }
+
+    private void indexerDisponibilite(Location location) {
+        if (location.getVehicule() != null) {
+            disponibiliteService.enregistrer(location.getId(), location.getVehicule().getId(),
+                    location.getDateDebut(), location.getDateFin());
+        }
     }
 
     /**
@@ -93,7 +287,7 @@ public class LocationServiceImpl implements LocationService {
      * @return Une liste de locations
      */
     public List<Location> findAllByDateDebut(LocalDate dateDebut) {
-        return repository.findAllByDateDebut(dateDebut);
+        return resolver.find(query(where("dateDebut").is(dateDebut)));
     }
 
     /**
@@ -103,7 +297,7 @@ public class LocationServiceImpl implements LocationService {
      * @return Une liste de locations
      */
     public List<Location> findAllByDateFin(LocalDate dateFin) {
-        return repository.findAllByDateFin(dateFin);
+        return resolver.find(query(where("dateFin").is(dateFin)));
     }
 
     /**
@@ -113,49 +307,93 @@ public class LocationServiceImpl implements LocationService {
      * @param dateFin La date de fin de location (Format : "YYYY-MM-DD")
      * @return Une liste de locations
      */
-    public List<Location> findAllByDateDebutAndDateFin(LocalDate dateDebut, String dateFin) {
-        return repository.findAllByDateDebutAndDateFin(dateDebut, dateFin);
+    public List<Location> findAllByDateDebutAndDateFin(LocalDate dateDebut, LocalDate dateFin) {
+        return resolver.find(query(where("dateDebut").is(dateDebut).and("dateFin").is(dateFin)));
+    }
+
+    /**
+     * Cette fonction permet de retrouver les locations actives sur au moins une partie de la période [debut, fin] :
+     * dateDebut &lt;= fin et dateFin &gt; debut. Comme pour les disponibilités, le jour de fin d'une location n'est pas
+     * loué : une location qui se termine le jour debut n'est pas active<br>
+     * La date de début est aussi bornée par le bas (debut moins la durée de la plus longue location, lue dans MongoDB,
+     * voir DureeLocations) : le parcours de l'index dateDebut_dateFin se limite à la période demandée, quelle que soit
+     * la profondeur de l'historique<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/locations?activeFrom=<span style="color:orange">debut</span>&activeTo=<span style="color:orange">fin</span>&sort=<span style="color:orange">-dateDebut</span>&limit=<span style="color:orange">limit</span>&page=<span style="color:orange">page</span>
+     * @param debut Le premier jour de la période (Format : "YYYY-MM-DD")
+     * @param fin Le dernier jour de la période (Format : "YYYY-MM-DD")
+     * @param tri Le champ de tri (dateDebut, dateFin ou prixTotal), précédé de "-" pour un tri décroissant (dateDebut par défaut)
+     * @param limit Le nombre de locations de la page
+     * @param page Le numéro de la page, à partir de 0
+     * @return Une liste de locations
+     */
+    public List<Location> findAllActives(LocalDate debut, LocalDate fin, String tri, Integer limit, Integer page) {
+        return resolver.find(requeteActives(debut, fin, tri, limit, page));
+    }
+
+    /**
+     * Cette fonction construit la requête des locations actives sur la période [debut, fin] (voir findAllActives)
+     */
+    Query requeteActives(LocalDate debut, LocalDate fin, String tri, Integer limit, Integer page) {
+        if (fin.isBefore(debut)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "activeTo doit être après activeFrom");
+        }
+        LocalDate debutAuPlusTot = debut.minusDays(dureeLocations.max());
+        return query(where("dateDebut").gte(debutAuPlusTot).lte(fin).and("dateFin").gt(debut))
+                .with(Pagination.page(page, limit, tri(tri)));
+    }
+
+    private static Sort tri(String tri) {
+        if (tri == null || tri.isBlank()) {
+            return Sort.by("dateDebut", "id");
+        }
+        boolean decroissant = tri.startsWith("-");
+        String champ = decroissant ? tri.substring(1) : tri;
+        if (!TRIS.contains(champ)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Tri impossible sur " + champ + ", valeurs acceptées : " + TRIS);
+        }
+        Sort.Direction direction = decroissant ? Sort.Direction.DESC : Sort.Direction.ASC;
+        return Sort.by(direction, champ).and(Sort.by(direction, "id"));
     }
 
     /**
      * Cette fonction permet de retrouver une location grâce au nom du locataire<br>
+     * Le filtre est fait par MongoDB : on récupère les locataires portant ce nom (index sur nom)
+     * puis les locations qui les référencent (index sur locataire)<br>
      * <b>Requête Postman en GET</b> : localhost:8080/locations/nom?nom=<span style="color:orange">nom</span>
-     * @param nom
-     * @return
+     * @param nom Le nom de famille du locataire
+     * @return Une liste de locations
      */
     public List<Location> findAllByLocataireName(String nom) {
-        List<Location> locations = this.repository.findAll();
-        List<Location> locationlist = new ArrayList<>();
-        for (Location location: locations
-             ) {
-            if (Objects.equals(location.getLocataire().getNom(), nom)) {
-                locationlist.add(location);
-            }
+        List<Locataire> locataires = this.locataireService.findAllByNom(nom);
+        if (locataires.isEmpty()) {
+            return new ArrayList<>();
         }
-        return locationlist;
+        return this.resolver.find(query(LocationResolver.critereReference(LocationResolver.LOCATAIRE,
+                locataires.stream().map(Locataire::getId).toList())));
     }
 
     /**
-     * Cette fonction permet de retrouver une location grâce au numéro d'immatriculation du véhicule
+     * Cette fonction permet de retrouver une location grâce au numéro d'immatriculation du véhicule<br>
+     * L'immatriculation est d'abord résolue en véhicule (index unique sur immatriculation)
+     * puis les locations sont recherchées par leur référence au véhicule (index sur vehicule)<br>
      * <b>Requête Postman en GET</b> : localhost:8080/locations/immatriculation?immatriculation=<span style="color:orange">immatriculation</span>
      * @param immatriculation L'immatriculation du véhicule
      * @return Une liste de location
      */
     public List<Location> findAllByImmatriculation(String immatriculation){
-        List<Location> locations = this.repository.findAll();
-        List<Location> locationlist = new ArrayList<>();
-        for (Location location: locations
-        ) {
-            if (Objects.equals(location.getVehicule().getImmatriculation(), immatriculation)) {
-                locationlist.add(location);
-            }
+        Vehicule vehicule = this.vehiculeService.findByImmatriculation(immatriculation);
+        if (vehicule == null) {
+            return new ArrayList<>();
         }
-        return locationlist;
+        return this.resolver.find(query(LocationResolver.critereReference(LocationResolver.VEHICULE,
+                List.of(vehicule.getId()))));
     }
 
     /**
      * Cette fonction permet de calculer le prix total de la location en fonction du prix à la journée du véhicule
-     * et de la durée de la location, calculée en comparant la date de début et de fin de la location.
+     * et de la durée de la location, calculée en comparant la date de début et de fin de la location.<br>
+     * Les coefficients par type et par saison et la remise par semaine de la grille tarifaire s'appliquent
+     * (voir MoteurTarifs), le véhicule est lu dans le cache.
      * @param idVoiture L'id du véhicule
      * @param idLocation L'id de la location
      * @param dateDebut La date de début de la location (Format : "YYYY-MM-DD")
@@ -164,10 +402,8 @@ public class LocationServiceImpl implements LocationService {
      */
     @Override
     public Double calculPrixTotal(String idVoiture, String idLocation, LocalDate dateDebut, LocalDate dateFin) {
-        Double prixUnitaire = this.vehiculeService.findById(idVoiture).getPrix();
-        Long duration = ChronoUnit.DAYS.between(dateDebut, dateFin);
-        Double prixTotal = prixUnitaire*duration;
-        return prixTotal;
+        Vehicule vehicule = this.vehiculeService.findById(idVoiture);
+        return this.moteurTarifs.prix(vehicule.getPrix(), vehicule.getType(), dateDebut, dateFin);
     }
 
 
@@ -0,0 +1,203 @@
+package fr.maxime.ecfback.locations;
+
+import com.mongodb.DBRef;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import io.micrometer.core.annotation.Timed;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Conversion des locations au format dbref vers le format instantane (voir LocationResolver), application en marche.<br>
+ * Les locations sont parcourues dans l'ordre de leur _id par lots (ecfback.locations.migration.taille-lot) :
+ * les locataires et véhicules d'un lot sont lus en une requête $in par collection, puis le lot est réécrit
+ * en une écriture groupée. Après chaque lot, le dernier _id traité est enregistré dans la collection migrations :
+ * une migration interrompue (arrêt, erreur) reprend à ce point.<br>
+ * Chaque mise à jour ne porte que sur une location encore au format dbref : une location réécrite entre-temps
+ * par l'application (donc déjà au format instantane) n'est pas écrasée.<br>
+ * L'état du locataire et du véhicule à la réservation n'a pas été conservé : l'instantané est construit depuis
+ * leur état actuel et marqué migre (instantane.migre : true). Son prix est le prix à la journée du véhicule lors
+ * de la migration, pas forcément celui de la réservation ; le prix payé reste prixTotal.
+ */
+@Service
+@Timed(value = "ecfback.service", description = "Durée des méthodes des services")
+public class MigrationLocations {
+
+    static final String COLLECTION = "migrations";
+    static final String ID = "locations-instantane";
+
+    Logger logger = LoggerFactory.getLogger(MigrationLocations.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final LocationResolver resolver;
+    private final int tailleLot;
+    private final AtomicBoolean enCours = new AtomicBoolean();
+
+    public MigrationLocations(MongoTemplate mongoTemplate,
+                              LocationResolver resolver,
+                              @Value("${ecfback.locations.migration.taille-lot:500}") int tailleLot) {
+        logger.info("Création du service MigrationLocations");
+        this.mongoTemplate = mongoTemplate;
+        this.resolver = resolver;
+        this.tailleLot = tailleLot;
+    }
+
+    /**
+     * Cette fonction lance la migration en arrière-plan, ou la reprend depuis son dernier lot enregistré<br>
+     * Elle est refusée (409 - CONFLICT) si les nouvelles locations sont encore écrites au format dbref
+     * @return L'état de la migration
+     */
+    public Map<String, Object> demarrer() {
+        if (!resolver.instantanes()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Migration impossible : ecfback.locations.format doit valoir instantane");
+        }
+        if (enCours.compareAndSet(false, true)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    migrer();
+                } finally {
+                    enCours.set(false);
+                }
+            }, "migration-locations");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return etat();
+    }
+
+    /**
+     * Cette fonction permet de connaître l'avancement de la migration
+     * @return Le nombre de locations converties, le dernier _id traité, si elle est terminée ou en cours
+     */
+    public Map<String, Object> etat() {
+        Map<String, Object> etat = new LinkedHashMap<>();
+        Document avancement = mongoTemplate.findById(ID, Document.class, COLLECTION);
+        if (avancement != null) {
+            avancement.forEach((champ, valeur) -> {
+                if (!"_id".equals(champ)) {
+                    etat.put(champ, "dernierId".equals(champ) ? String.valueOf(valeur) : valeur);
+                }
+            });
+        }
+        etat.put("enCours", enCours.get());
+        return etat;
+    }
+
+    /**
+     * Cette fonction convertit, lot par lot, toutes les locations restantes depuis le dernier lot enregistré
+     * @return Le nombre de locations converties par cet appel
+     */
+    public long migrer() {
+        String collection = mongoTemplate.getCollectionName(Location.class);
+        Document avancement = mongoTemplate.findById(ID, Document.class, COLLECTION);
+        Object dernierId = avancement != null ? avancement.get("dernierId") : null;
+        long convertis = avancement != null && avancement.get("convertis") instanceof Number nombre ? nombre.longValue() : 0;
+        long debut = System.currentTimeMillis();
+        long cetAppel = 0;
+        logger.info("Migration des locations au format instantane " + (dernierId == null ? "démarrée" : "reprise après " + dernierId));
+        try {
+            while (true) {
+                Criteria criteres = where(LocationResolver.INSTANTANE).exists(false);
+                if (dernierId != null) {
+                    criteres.and("_id").gt(dernierId);
+                }
+                Query lecture = query(criteres).with(Sort.by("_id")).limit(tailleLot);
+                lecture.fields().include(LocationResolver.LOCATAIRE, LocationResolver.VEHICULE);
+                List<Document> lot = mongoTemplate.find(lecture, Document.class, collection);
+                if (lot.isEmpty()) {
+                    break;
+                }
+                long modifies = convertir(lot, collection);
+                convertis += modifies;
+                cetAppel += modifies;
+                dernierId = lot.get(lot.size() - 1).get("_id");
+                enregistrer(new Update().set("dernierId", dernierId).set("convertis", convertis)
+                        .set("termine", false).set("misAJour", new Date()).unset("erreur"));
+            }
+            enregistrer(new Update().set("termine", true).set("misAJour", new Date()));
+            logger.info("Migration des locations terminée : " + cetAppel + " converties en "
+                    + (System.currentTimeMillis() - debut) + " ms (" + convertis + " au total)");
+        } catch (DataAccessException e) {
+            logger.error("Migration des locations interrompue après " + dernierId + " : " + e.getMessage());
+            enregistrer(new Update().set("erreur", e.getMessage()).set("misAJour", new Date()));
+        }
+        return cetAppel;
+    }
+
+    private long convertir(List<Document> lot, String collection) {
+        Map<Object, Locataire> locataires = references(lot, LocationResolver.LOCATAIRE, Locataire.class);
+        Map<Object, Vehicule> vehicules = references(lot, LocationResolver.VEHICULE, Vehicule.class);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+        for (Document document : lot) {
+            DBRef locataire = document.get(LocationResolver.LOCATAIRE) instanceof DBRef reference ? reference : null;
+            DBRef vehicule = document.get(LocationResolver.VEHICULE) instanceof DBRef reference ? reference : null;
+            Update update = new Update()
+                    .set(LocationResolver.INSTANTANE, LocationResolver.instantane(
+                            locataire != null ? locataires.get(locataire.getId()) : null,
+                            vehicule != null ? vehicules.get(vehicule.getId()) : null)
+                            .append(LocationResolver.MIGRE, true))
+                    .unset(LocationResolver.LOCATAIRE)
+                    .unset(LocationResolver.VEHICULE);
+            if (locataire != null) {
+                update.set(LocationResolver.ID_LOCATAIRE, locataire.getId());
+            }
+            if (vehicule != null) {
+                update.set(LocationResolver.ID_VEHICULE, vehicule.getId());
+            }
+            bulk.updateOne(new BasicQuery(new Document("_id", document.get("_id"))
+                    .append(LocationResolver.INSTANTANE, new Document("$exists", false))), update);
+        }
+        return bulk.execute().getModifiedCount();
+    }
+
+    /**
+     * Charge en une requête les locataires ou véhicules référencés par le lot
+     * @return Les entités par id brut (celui de la @DBRef)
+     */
+    private <T> Map<Object, T> references(List<Document> lot, String champ, Class<T> type) {
+        Set<Object> ids = new HashSet<>();
+        for (Document document : lot) {
+            if (document.get(champ) instanceof DBRef reference) {
+                ids.add(reference.getId());
+            }
+        }
+        Map<Object, T> references = new HashMap<>();
+        if (ids.isEmpty()) {
+            return references;
+        }
+        mongoTemplate.find(query(where("_id").in(ids)), Document.class, mongoTemplate.getCollectionName(type))
+                .forEach(document -> references.put(document.get("_id"), mongoTemplate.getConverter().read(type, document)));
+        return references;
+    }
+
+    private void enregistrer(Update update) {
+        mongoTemplate.upsert(query(where("_id").is(ID)), update, COLLECTION);
+    }
+}
@@ -0,0 +1,44 @@
+package fr.maxime.ecfback.resumes;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Transient;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Résumé des locations d'un véhicule (collection resumeVehicule) ou d'un locataire (collection resumeLocataire),
+ * d'id celui du véhicule ou du locataire. Il est tenu à jour à chaque écriture de location (voir ResumeService).<br>
+ * periodes ne contient que les locations en cours ou à venir : la location active est calculée à la lecture.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Resume {
+
+    private String id;
+    private Long locations;
+    private Long joursLoues;
+    private Double revenu;
+    private LocalDate derniereFin;
+    private List<Periode> periodes = new ArrayList<>();
+    @Transient
+    private Periode locationActive;
+
+    /**
+     * Une location en cours ou à venir, avec le locataire et le véhicule concernés
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Periode {
+        private String idLocation;
+        private String idVehicule;
+        private String idLocataire;
+        private LocalDate dateDebut;
+        private LocalDate dateFin;
+    }
+}
@@ -0,0 +1,55 @@
+package fr.maxime.ecfback.resumes;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@CrossOrigin
+@Profile("!reactif")
+@RequestMapping("/resumes")
+public class ResumeController {
+
+    private final ResumeService service;
+
+    public ResumeController(ResumeService service) {
+        this.service = service;
+    }
+
+    /**
+     * Cette fonction permet de récupérer le résumé des locations d'un véhicule
+     * (jours loués, chiffre d'affaires, dernière date de fin, location active)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/resumes/vehicules/<span style="color:orange">id</span>
+     *
+     * @param id L'id du véhicule
+     * @return Le résumé du véhicule
+     */
+    @GetMapping("vehicules/{id}")
+    public Resume vehicule(@PathVariable String id) {
+        return service.vehicule(id);
+    }
+
+    /**
+     * Cette fonction permet de récupérer le résumé des locations d'un locataire<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/resumes/locataires/<span style="color:orange">id</span>
+     *
+     * @param id L'id du locataire
+     * @return Le résumé du locataire
+     */
+    @GetMapping("locataires/{id}")
+    public Resume locataire(@PathVariable String id) {
+        return service.locataire(id);
+    }
+
+    /**
+     * Cette fonction permet de recalculer tous les résumés depuis les locations, par lots en parallèle<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/resumes/reconstruction
+     *
+     * @return Le nombre de résumés écrits et la durée de la reconstruction
+     */
+    @PostMapping("reconstruction")
+    public Map<String, Long> reconstruire() {
+        return service.reconstruire();
+    }
+}
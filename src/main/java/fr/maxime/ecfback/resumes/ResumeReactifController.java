@@ -0,0 +1,61 @@
+package fr.maxime.ecfback.resumes;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+
+/**
+ * Routes /resumes de la pile réactive (profil "reactif"), identiques à celles de ResumeController<br>
+ * ResumeService utilise le driver bloquant : ses appels sont exécutés sur le scheduler boundedElastic
+ */
+@RestController
+@CrossOrigin
+@Profile("reactif")
+@RequestMapping("/resumes")
+public class ResumeReactifController {
+
+    private final ResumeService service;
+
+    public ResumeReactifController(ResumeService service) {
+        this.service = service;
+    }
+
+    /**
+     * Cette fonction permet de récupérer le résumé des locations d'un véhicule
+     * (jours loués, chiffre d'affaires, dernière date de fin, location active)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/resumes/vehicules/<span style="color:orange">id</span>
+     *
+     * @param id L'id du véhicule
+     * @return Le résumé du véhicule
+     */
+    @GetMapping("vehicules/{id}")
+    public Mono<Resume> vehicule(@PathVariable String id) {
+        return Mono.fromCallable(() -> service.vehicule(id)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Cette fonction permet de récupérer le résumé des locations d'un locataire<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/resumes/locataires/<span style="color:orange">id</span>
+     *
+     * @param id L'id du locataire
+     * @return Le résumé du locataire
+     */
+    @GetMapping("locataires/{id}")
+    public Mono<Resume> locataire(@PathVariable String id) {
+        return Mono.fromCallable(() -> service.locataire(id)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Cette fonction permet de recalculer tous les résumés depuis les locations, par lots en parallèle<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/resumes/reconstruction
+     *
+     * @return Le nombre de résumés écrits et la durée de la reconstruction
+     */
+    @PostMapping("reconstruction")
+    public Mono<Map<String, Long>> reconstruire() {
+        return Mono.fromCallable(service::reconstruire).subscribeOn(Schedulers.boundedElastic());
+    }
+}
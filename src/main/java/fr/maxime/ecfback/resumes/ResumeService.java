@@ -0,0 +1,293 @@
+package fr.maxime.ecfback.resumes;
+
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationResolver;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import io.micrometer.core.annotation.Timed;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Résumés matérialisés des locations par véhicule et par locataire (voir Resume).<br>
+ * LocationServiceImpl les met à jour à chaque enregistrement ou suppression de location par des mises à jour
+ * atomiques ($inc, $max, $push, $pull) : un résumé se lit ensuite en un seul accès par _id, sans parcourir
+ * la collection location. Une erreur de mise à jour est journalisée sans faire échouer la location :
+ * la reconstruction (reconstruire) recalcule alors tous les résumés.
+ */
+@Service
+@Timed(value = "ecfback.service", description = "Durée des méthodes des services")
+public class ResumeService {
+
+    public static final String VEHICULES = "resumeVehicule";
+    public static final String LOCATAIRES = "resumeLocataire";
+
+    private static final String VEHICULE = "vehicule";
+    private static final String LOCATAIRE = "locataire";
+
+    Logger logger = LoggerFactory.getLogger(ResumeService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final int tailleLot;
+    private final int threads;
+
+    public ResumeService(MongoTemplate mongoTemplate,
+                         @Value("${ecfback.resumes.reconstruction.taille-lot:500}") int tailleLot,
+                         @Value("${ecfback.resumes.reconstruction.threads:4}") int threads) {
+        logger.info("Création du service Resume");
+        this.mongoTemplate = mongoTemplate;
+        this.tailleLot = tailleLot;
+        this.threads = threads;
+    }
+
+    /**
+     * Cette fonction permet de lire le résumé des locations d'un véhicule (un seul accès par _id)
+     * @param id L'id du véhicule
+     * @return Le résumé, vide si le véhicule n'a jamais été loué
+     */
+    public Resume vehicule(String id) {
+        return lire(VEHICULES, id);
+    }
+
+    /**
+     * Cette fonction permet de lire le résumé des locations d'un locataire (un seul accès par _id)
+     * @param id L'id du locataire
+     * @return Le résumé, vide si le locataire n'a jamais loué
+     */
+    public Resume locataire(String id) {
+        return lire(LOCATAIRES, id);
+    }
+
+    private Resume lire(String collection, String id) {
+        Resume resume = mongoTemplate.findById(id, Resume.class, collection);
+        if (resume == null) {
+            resume = vide(id);
+        }
+        LocalDate aujourdhui = LocalDate.now();
+        resume.getPeriodes().removeIf(periode -> !periode.getDateFin().isAfter(aujourdhui));
+        resume.getPeriodes().sort(Comparator.comparing(Resume.Periode::getDateDebut));
+        resume.setLocationActive(resume.getPeriodes().stream()
+                .filter(periode -> !periode.getDateDebut().isAfter(aujourdhui))
+                .findFirst().orElse(null));
+        return resume;
+    }
+
+    /**
+     * Cette fonction lit en base ce qu'une location apporte aux résumés, avant sa modification ou sa suppression
+     * @param idLocation L'id de la location
+     * @return La contribution de la location, null si elle n'existe pas
+     */
+    public Contribution contribution(String idLocation) {
+        Query query = query(where("id").is(idLocation));
+        query.fields().include("dateDebut", "dateFin", "prixTotal", VEHICULE, LOCATAIRE,
+                LocationResolver.ID_VEHICULE, LocationResolver.ID_LOCATAIRE);
+        Document document = mongoTemplate.query(Location.class).as(Document.class).matching(query).firstValue();
+        return document == null ? null : contribution(document);
+    }
+
+    /**
+     * Cette fonction ajoute une location enregistrée aux résumés de son véhicule et de son locataire
+     * @param location La location enregistrée
+     */
+    public void ajouter(Location location) {
+        Contribution contribution = new Contribution(location.getId(),
+                location.getVehicule() != null ? location.getVehicule().getId() : null,
+                location.getLocataire() != null ? location.getLocataire().getId() : null,
+                location.getDateDebut(), location.getDateFin(),
+                location.getPrixTotal() != null ? location.getPrixTotal() : 0);
+        try {
+            ajouter(VEHICULES, contribution.idVehicule(), contribution);
+            ajouter(LOCATAIRES, contribution.idLocataire(), contribution);
+        } catch (DataAccessException e) {
+            logger.warn("Résumés non mis à jour pour la location " + location.getId() + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cette fonction retire des résumés une location modifiée ou supprimée
+     * @param contribution La contribution lue avant la modification ou la suppression, ignorée si null
+     */
+    public void retirer(Contribution contribution) {
+        if (contribution == null) {
+            return;
+        }
+        try {
+            retirer(VEHICULES, VEHICULE, contribution.idVehicule(), contribution);
+            retirer(LOCATAIRES, LOCATAIRE, contribution.idLocataire(), contribution);
+        } catch (DataAccessException e) {
+            logger.warn("Résumés non mis à jour pour la location " + contribution.idLocation() + " : " + e.getMessage());
+        }
+    }
+
+    private void ajouter(String collection, String id, Contribution contribution) {
+        if (id == null) {
+            return;
+        }
+        Query resume = query(where("id").is(id));
+        Update update = new Update()
+                .inc("locations", 1)
+                .inc("joursLoues", contribution.jours())
+                .inc("revenu", contribution.prixTotal());
+        if (contribution.dateFin() != null) {
+            update.max("derniereFin", contribution.dateFin());
+            if (contribution.dateFin().isAfter(LocalDate.now())) {
+                update.push("periodes", contribution.periode());
+            }
+        }
+        mongoTemplate.upsert(resume, update, Resume.class, collection);
+        // Les périodes terminées sont retirées ici : un même $pull et $push sur periodes est refusé par MongoDB
+        mongoTemplate.updateFirst(resume, new Update().pull("periodes", new Document("dateFin",
+                new Document("$lte", mongoTemplate.getConverter().convertToMongoType(LocalDate.now())))), Resume.class, collection);
+    }
+
+    private void retirer(String collection, String champ, String id, Contribution contribution) {
+        if (id == null) {
+            return;
+        }
+        Query resume = query(where("id").is(id));
+        mongoTemplate.updateFirst(resume, new Update()
+                .inc("locations", -1)
+                .inc("joursLoues", -contribution.jours())
+                .inc("revenu", -contribution.prixTotal())
+                .pull("periodes", new Document("idLocation", contribution.idLocation())), Resume.class, collection);
+
+        // $max ne sait pas revenir en arrière : la dernière date de fin est relue (index sur la référence)
+        Query derniere = query(LocationResolver.critereReference(champ, List.of(id))).with(Sort.by(Sort.Direction.DESC, "dateFin")).limit(1);
+        derniere.fields().include("dateFin");
+        Document document = mongoTemplate.query(Location.class).as(Document.class).matching(derniere).firstValue();
+        LocalDate derniereFin = document == null ? null
+                : mongoTemplate.getConverter().getConversionService().convert(document.get("dateFin"), LocalDate.class);
+        mongoTemplate.updateFirst(resume, derniereFin == null ? new Update().unset("derniereFin")
+                : new Update().set("derniereFin", derniereFin), Resume.class, collection);
+    }
+
+    /**
+     * Cette fonction recalcule tous les résumés depuis la collection location<br>
+     * Les véhicules puis les locataires sont découpés en lots (ecfback.resumes.reconstruction.taille-lot) traités
+     * en parallèle (ecfback.resumes.reconstruction.threads) : chaque lot lit les locations de ses ids
+     * (index sur la référence) puis remplace ses résumés en une écriture groupée.<br>
+     * Les locations écrites pendant la reconstruction peuvent être écrasées : la relancer une fois le trafic calme.
+     * @return Le nombre de résumés écrits par collection et la durée en millisecondes
+     */
+    public Map<String, Long> reconstruire() {
+        long debut = System.currentTimeMillis();
+        ExecutorService executeur = Executors.newFixedThreadPool(threads);
+        try {
+            Map<String, Long> rapport = new LinkedHashMap<>();
+            rapport.put("vehicules", reconstruire(executeur, Vehicule.class, VEHICULE, VEHICULES));
+            rapport.put("locataires", reconstruire(executeur, Locataire.class, LOCATAIRE, LOCATAIRES));
+            rapport.put("dureeMs", System.currentTimeMillis() - debut);
+            logger.info("Résumés reconstruits : " + rapport);
+            return rapport;
+        } finally {
+            executeur.shutdown();
+        }
+    }
+
+    private long reconstruire(ExecutorService executeur, Class<?> type, String champ, String collection) {
+        Query query = new Query();
+        query.fields().include("id");
+        List<String> ids;
+        try (Stream<Document> documents = mongoTemplate.query(type).as(Document.class).matching(query).stream()) {
+            ids = documents.map(document -> String.valueOf(document.get("_id"))).toList();
+        }
+        List<CompletableFuture<Integer>> lots = new ArrayList<>();
+        for (int debut = 0; debut < ids.size(); debut += tailleLot) {
+            List<String> lot = ids.subList(debut, Math.min(debut + tailleLot, ids.size()));
+            lots.add(CompletableFuture.supplyAsync(() -> reconstruireLot(champ, collection, lot), executeur));
+        }
+        return lots.stream().mapToLong(CompletableFuture::join).sum();
+    }
+
+    private int reconstruireLot(String champ, String collection, List<String> ids) {
+        Map<String, Resume> resumes = new LinkedHashMap<>();
+        ids.forEach(id -> resumes.put(id, vide(id)));
+
+        LocalDate aujourdhui = LocalDate.now();
+        Query query = query(LocationResolver.critereReference(champ, ids));
+        query.fields().include("dateDebut", "dateFin", "prixTotal", VEHICULE, LOCATAIRE,
+                LocationResolver.ID_VEHICULE, LocationResolver.ID_LOCATAIRE);
+        try (Stream<Document> documents = mongoTemplate.query(Location.class).as(Document.class).matching(query).stream()) {
+            documents.forEach(document -> {
+                Contribution contribution = contribution(document);
+                Resume resume = resumes.get(VEHICULE.equals(champ) ? contribution.idVehicule() : contribution.idLocataire());
+                if (resume == null) {
+                    return;
+                }
+                resume.setLocations(resume.getLocations() + 1);
+                resume.setJoursLoues(resume.getJoursLoues() + contribution.jours());
+                resume.setRevenu(resume.getRevenu() + contribution.prixTotal());
+                if (contribution.dateFin() != null) {
+                    if (resume.getDerniereFin() == null || contribution.dateFin().isAfter(resume.getDerniereFin())) {
+                        resume.setDerniereFin(contribution.dateFin());
+                    }
+                    if (contribution.dateFin().isAfter(aujourdhui)) {
+                        resume.getPeriodes().add(contribution.periode());
+                    }
+                }
+            });
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Resume.class, collection);
+        resumes.values().forEach(resume ->
+                bulk.replaceOne(query(where("id").is(resume.getId())), resume, FindAndReplaceOptions.options().upsert()));
+        bulk.execute();
+        return resumes.size();
+    }
+
+    private Contribution contribution(Document document) {
+        ConversionService conversion = mongoTemplate.getConverter().getConversionService();
+        Object prixTotal = document.get("prixTotal");
+        return new Contribution(String.valueOf(document.get("_id")),
+                LocationResolver.idReference(document, VEHICULE),
+                LocationResolver.idReference(document, LOCATAIRE),
+                conversion.convert(document.get("dateDebut"), LocalDate.class),
+                conversion.convert(document.get("dateFin"), LocalDate.class),
+                prixTotal instanceof Number nombre ? nombre.doubleValue() : 0);
+    }
+
+    private static Resume vide(String id) {
+        return new Resume(id, 0L, 0L, 0.0, null, new ArrayList<>(), null);
+    }
+
+    /**
+     * Ce qu'une location apporte aux résumés de son véhicule et de son locataire
+     */
+    public record Contribution(String idLocation, String idVehicule, String idLocataire,
+                               LocalDate dateDebut, LocalDate dateFin, double prixTotal) {
+
+        long jours() {
+            return dateDebut != null && dateFin != null ? ChronoUnit.DAYS.between(dateDebut, dateFin) : 0;
+        }
+
+        Resume.Periode periode() {
+            return new Resume.Periode(idLocation, idVehicule, idLocataire, dateDebut, dateFin);
+        }
+    }
+}
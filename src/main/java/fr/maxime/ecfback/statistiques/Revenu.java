@@ -0,0 +1,19 @@
+package fr.maxime.ecfback.statistiques;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Chiffre d'affaires d'un groupe de locations : un type de véhicule ou un mois (AAAA-MM)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Revenu {
+
+    private String cle;
+    private Double revenu;
+    private Long locations;
+
+}
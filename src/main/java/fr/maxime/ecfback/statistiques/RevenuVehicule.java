@@ -0,0 +1,23 @@
+package fr.maxime.ecfback.statistiques;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Chiffre d'affaires d'un véhicule : somme des prixTotal de ses locations
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevenuVehicule {
+
+    private String idVehicule;
+    private String immatriculation;
+    private String marque;
+    private String modele;
+    private String type;
+    private Double revenu;
+    private Long locations;
+
+}
@@ -0,0 +1,99 @@
+package fr.maxime.ecfback.statistiques;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@CrossOrigin
+@Profile("!reactif")
+@RequestMapping("/stats")
+public class StatistiqueController {
+
+    private final StatistiqueService service;
+
+    public StatistiqueController(StatistiqueService service) {
+        this.service = service;
+    }
+
+    /**
+     * Cette fonction permet de récupérer le chiffre d'affaires de chaque véhicule (somme des prixTotal de ses locations)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/stats/revenus/vehicules<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/stats/revenus/vehicules?debut=<span style="color:orange">debut</span>&fin=<span style="color:orange">fin</span>
+     *
+     * @param debut La date de début de la période (optionnelle, Format : "YYYY-MM-DD")
+     * @param fin La date de fin de la période (optionnelle, Format : "YYYY-MM-DD")
+     * @return Le chiffre d'affaires par véhicule
+     */
+    @GetMapping("revenus/vehicules")
+    public List<RevenuVehicule> revenusParVehicule(@RequestParam(required = false) LocalDate debut,
+                                                   @RequestParam(required = false) LocalDate fin) {
+        return service.revenusParVehicule(debut, fin);
+    }
+
+    /**
+     * Cette fonction permet de récupérer le chiffre d'affaires par type de véhicule<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/stats/revenus/types?debut=<span style="color:orange">debut</span>&fin=<span style="color:orange">fin</span>
+     *
+     * @param debut La date de début de la période (optionnelle)
+     * @param fin La date de fin de la période (optionnelle)
+     * @return Le chiffre d'affaires par type
+     */
+    @GetMapping("revenus/types")
+    public List<Revenu> revenusParType(@RequestParam(required = false) LocalDate debut,
+                                       @RequestParam(required = false) LocalDate fin) {
+        return service.revenusParType(debut, fin);
+    }
+
+    /**
+     * Cette fonction permet de récupérer le chiffre d'affaires par mois (AAAA-MM)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/stats/revenus/mois?debut=<span style="color:orange">debut</span>&fin=<span style="color:orange">fin</span>
+     *
+     * @param debut La date de début de la période (optionnelle)
+     * @param fin La date de fin de la période (optionnelle)
+     * @return Le chiffre d'affaires par mois
+     */
+    @GetMapping("revenus/mois")
+    public List<Revenu> revenusParMois(@RequestParam(required = false) LocalDate debut,
+                                       @RequestParam(required = false) LocalDate fin) {
+        return service.revenusParMois(debut, fin);
+    }
+
+    /**
+     * Cette fonction permet de récupérer le taux d'utilisation de chaque véhicule sur la période [debut, fin[<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/stats/utilisation?debut=<span style="color:orange">debut</span>&fin=<span style="color:orange">fin</span>
+     *
+     * @param debut La date de début de la période
+     * @param fin La date de fin de la période (exclue)
+     * @return Le taux d'utilisation par véhicule
+     */
+    @GetMapping("utilisation")
+    public List<UtilisationVehicule> utilisation(@RequestParam LocalDate debut, @RequestParam LocalDate fin) {
+        return service.utilisation(debut, fin);
+    }
+
+    /**
+     * Cette fonction permet de compter les véhicules par etat et par status<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/stats/vehicules
+     *
+     * @return Le nombre de véhicules pour chaque valeur, par champ
+     */
+    @GetMapping("vehicules")
+    public Map<String, Map<String, Long>> vehicules() {
+        return service.vehicules();
+    }
+
+    /**
+     * Cette fonction permet de consulter les compteurs du cache des statistiques<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/stats/cache
+     *
+     * @return Les compteurs du cache
+     */
+    @GetMapping("cache")
+    public Map<String, Long> statistiquesCache() {
+        return service.statistiquesCache();
+    }
+}
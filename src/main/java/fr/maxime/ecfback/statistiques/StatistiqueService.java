@@ -0,0 +1,311 @@
+package fr.maxime.ecfback.statistiques;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationResolver;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import io.micrometer.core.annotation.Timed;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Statistiques de la flotte calculées par MongoDB (pipelines d'agrégation) : seuls les résultats agrégés
+ * sont lus par l'application.<br>
+ * Les résultats sont mis en cache : passé ecfback.cache.stats.rafraichissement, la valeur en cache est encore
+ * servie pendant qu'elle est recalculée en arrière-plan. Des tableaux de bord qui interrogent l'API toutes
+ * les quelques secondes déclenchent donc au plus une agrégation par statistique et par période de rafraîchissement.
+ */
+@Service
+@Timed(value = "ecfback.service", description = "Durée des méthodes des services")
+public class StatistiqueService {
+
+    private static final String REVENUS_VEHICULES = "revenus-vehicules";
+    private static final String REVENUS_TYPES = "revenus-types";
+    private static final String REVENUS_MOIS = "revenus-mois";
+    private static final String UTILISATION = "utilisation";
+    private static final String VEHICULES = "vehicules";
+    private static final String INCONNU = "inconnu";
+
+    Logger logger = LoggerFactory.getLogger(StatistiqueService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final LoadingCache<Requete, Object> cache;
+
+    public StatistiqueService(MongoTemplate mongoTemplate,
+                              @Value("${ecfback.cache.stats.taille-max:1000}") long tailleMax,
+                              @Value("${ecfback.cache.stats.rafraichissement:30s}") Duration rafraichissement,
+                              @Value("${ecfback.cache.stats.expiration:10m}") Duration expiration) {
+        logger.info("Création du service Statistique : rafraîchissement " + rafraichissement + ", expiration " + expiration);
+        this.mongoTemplate = mongoTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(tailleMax)
+                .refreshAfterWrite(rafraichissement)
+                .expireAfterWrite(expiration)
+                .recordStats()
+                .build(this::calculer);
+    }
+
+    /**
+     * Cette fonction permet de calculer le chiffre d'affaires de chaque véhicule, du plus élevé au plus faible<br>
+     * Une location compte dans la période si elle commence dans [debut, fin]
+     * @param debut La date de début de la période (optionnelle)
+     * @param fin La date de fin de la période (optionnelle)
+     * @return Le chiffre d'affaires par véhicule
+     */
+    public List<RevenuVehicule> revenusParVehicule(LocalDate debut, LocalDate fin) {
+        verifierPeriode(debut, fin, false);
+        return enCache(new Requete(REVENUS_VEHICULES, debut, fin));
+    }
+
+    /**
+     * Cette fonction permet de calculer le chiffre d'affaires par type de véhicule, du plus élevé au plus faible
+     * @param debut La date de début de la période (optionnelle)
+     * @param fin La date de fin de la période (optionnelle)
+     * @return Le chiffre d'affaires par type
+     */
+    public List<Revenu> revenusParType(LocalDate debut, LocalDate fin) {
+        verifierPeriode(debut, fin, false);
+        return enCache(new Requete(REVENUS_TYPES, debut, fin));
+    }
+
+    /**
+     * Cette fonction permet de calculer le chiffre d'affaires par mois de début de location (AAAA-MM), dans l'ordre chronologique
+     * @param debut La date de début de la période (optionnelle)
+     * @param fin La date de fin de la période (optionnelle)
+     * @return Le chiffre d'affaires par mois
+     */
+    public List<Revenu> revenusParMois(LocalDate debut, LocalDate fin) {
+        verifierPeriode(debut, fin, false);
+        return enCache(new Requete(REVENUS_MOIS, debut, fin));
+    }
+
+    /**
+     * Cette fonction permet de calculer le taux d'utilisation de chaque véhicule sur la période [debut, fin[,
+     * du plus élevé au plus faible. Les véhicules sans location sur la période apparaissent avec un taux de 0
+     * @param debut La date de début de la période
+     * @param fin La date de fin de la période (exclue)
+     * @return Le taux d'utilisation par véhicule
+     */
+    public List<UtilisationVehicule> utilisation(LocalDate debut, LocalDate fin) {
+        verifierPeriode(debut, fin, true);
+        return enCache(new Requete(UTILISATION, debut, fin));
+    }
+
+    /**
+     * Cette fonction permet de compter les véhicules par etat et par status
+     * @return Le nombre de véhicules pour chaque valeur, par champ
+     */
+    public Map<String, Map<String, Long>> vehicules() {
+        return enCache(new Requete(VEHICULES, null, null));
+    }
+
+    /**
+     * Cette fonction retourne les compteurs du cache des statistiques
+     * @return Les compteurs (taille, succès, échecs, évictions)
+     */
+    public Map<String, Long> statistiquesCache() {
+        CacheStats stats = cache.stats();
+        Map<String, Long> compteurs = new LinkedHashMap<>();
+        compteurs.put("taille", cache.estimatedSize());
+        compteurs.put("succes", stats.hitCount());
+        compteurs.put("echecs", stats.missCount());
+        compteurs.put("evictions", stats.evictionCount());
+        return compteurs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T enCache(Requete requete) {
+        return (T) cache.get(requete);
+    }
+
+    private Object calculer(Requete requete) {
+        return switch (requete.statistique()) {
+            case REVENUS_VEHICULES -> mongoTemplate.aggregate(Aggregation.newAggregation(Location.class,
+                    revenusParVehiculePipeline(requete, true)), RevenuVehicule.class).getMappedResults();
+            case REVENUS_TYPES -> {
+                List<AggregationOperation> operations = revenusParVehiculePipeline(requete, false);
+                operations.add(etape("$group", new Document("_id", "$_vehicule.type")
+                        .append("revenu", new Document("$sum", "$revenu"))
+                        .append("locations", new Document("$sum", "$locations"))));
+                operations.add(etape("$project", new Document("_id", 0).append("cle", "$_id")
+                        .append("revenu", 1).append("locations", 1)));
+                operations.add(etape("$sort", new Document("revenu", -1)));
+                yield mongoTemplate.aggregate(Aggregation.newAggregation(Location.class, operations), Revenu.class)
+                        .getMappedResults();
+            }
+            case REVENUS_MOIS -> {
+                List<AggregationOperation> operations = filtrePeriode(requete);
+                operations.add(etape("$group", new Document("_id", new Document("$dateToString",
+                        new Document("format", "%Y-%m").append("date", "$dateDebut")
+                                .append("timezone", ZoneId.systemDefault().getId())))
+                        .append("revenu", new Document("$sum", "$prixTotal"))
+                        .append("locations", new Document("$sum", 1))));
+                operations.add(etape("$project", new Document("_id", 0).append("cle", "$_id")
+                        .append("revenu", 1).append("locations", 1)));
+                operations.add(etape("$sort", new Document("cle", 1)));
+                yield mongoTemplate.aggregate(Aggregation.newAggregation(Location.class, operations), Revenu.class)
+                        .getMappedResults();
+            }
+            case UTILISATION -> utilisationPipeline(requete);
+            case VEHICULES -> compterVehicules();
+            default -> throw new IllegalArgumentException("Statistique inconnue : " + requete.statistique());
+        };
+    }
+
+    /**
+     * Regroupe les locations par véhicule (revenu, nombre de locations) puis joint le véhicule ($lookup)
+     * @param projection true pour produire directement des RevenuVehicule triés, false pour garder le véhicule joint
+     */
+    private List<AggregationOperation> revenusParVehiculePipeline(Requete requete, boolean projection) {
+        List<AggregationOperation> operations = filtrePeriode(requete);
+        operations.add(etape("$group", new Document("_id", LocationResolver.expressionIdReference("vehicule"))
+                .append("revenu", new Document("$sum", "$prixTotal"))
+                .append("locations", new Document("$sum", 1))));
+        operations.add(etape("$lookup", new Document("from", mongoTemplate.getCollectionName(Vehicule.class))
+                .append("localField", "_id")
+                .append("foreignField", "_id")
+                .append("as", "_vehicule")));
+        operations.add(etape("$unwind", new Document("path", "$_vehicule").append("preserveNullAndEmptyArrays", true)));
+        if (projection) {
+            operations.add(etape("$project", new Document("_id", 0)
+                    .append("idVehicule", new Document("$toString", "$_id"))
+                    .append("immatriculation", "$_vehicule.immatriculation")
+                    .append("marque", "$_vehicule.marque")
+                    .append("modele", "$_vehicule.modele")
+                    .append("type", "$_vehicule.type")
+                    .append("revenu", 1)
+                    .append("locations", 1)));
+            operations.add(etape("$sort", new Document("revenu", -1)));
+        }
+        return operations;
+    }
+
+    /**
+     * Jours loués de chaque véhicule sur [debut, fin[ : chaque location est tronquée aux bornes de la période.<br>
+     * Les dates sont des minuits du fuseau de l'application : une période qui traverse un changement d'heure
+     * contient une journée de 23 ou 25 heures, d'où l'arrondi au jour ($round, MongoDB 4.2 ou plus).<br>
+     * Les véhicules sans location sont ajoutés avec 0 jour par $unionWith (MongoDB 4.4 ou plus)
+     */
+    private List<UtilisationVehicule> utilisationPipeline(Requete requete) {
+        Object debut = mongoTemplate.getConverter().convertToMongoType(requete.debut());
+        Object fin = mongoTemplate.getConverter().convertToMongoType(requete.fin());
+        long joursPeriode = ChronoUnit.DAYS.between(requete.debut(), requete.fin());
+        String collectionVehicules = mongoTemplate.getCollectionName(Vehicule.class);
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(where("dateDebut").lt(requete.fin())
+                .and("dateFin").gt(requete.debut())));
+        operations.add(etape("$project", new Document("_vehiculeId", LocationResolver.expressionIdReference("vehicule"))
+                .append("jours", new Document("$round", List.of(new Document("$divide", List.of(
+                        new Document("$subtract", List.of(
+                                new Document("$min", List.of("$dateFin", fin)),
+                                new Document("$max", List.of("$dateDebut", debut)))),
+                        ChronoUnit.DAYS.getDuration().toMillis())), 0)))));
+        operations.add(etape("$group", new Document("_id", "$_vehiculeId")
+                .append("joursLoues", new Document("$sum", "$jours"))));
+        operations.add(etape("$unionWith", new Document("coll", collectionVehicules)
+                .append("pipeline", List.of(new Document("$project",
+                        new Document("_id", 1).append("joursLoues", new Document("$literal", 0)))))));
+        operations.add(etape("$group", new Document("_id", "$_id")
+                .append("joursLoues", new Document("$sum", "$joursLoues"))));
+        operations.add(etape("$lookup", new Document("from", collectionVehicules)
+                .append("localField", "_id")
+                .append("foreignField", "_id")
+                .append("as", "_vehicule")));
+        operations.add(etape("$unwind", "$_vehicule"));
+        operations.add(etape("$project", new Document("_id", 0)
+                .append("idVehicule", new Document("$toString", "$_id"))
+                .append("immatriculation", "$_vehicule.immatriculation")
+                .append("marque", "$_vehicule.marque")
+                .append("modele", "$_vehicule.modele")
+                .append("joursLoues", 1)
+                .append("joursPeriode", new Document("$literal", joursPeriode))
+                .append("taux", new Document("$divide", List.of("$joursLoues", joursPeriode)))));
+        operations.add(etape("$sort", new Document("taux", -1).append("idVehicule", 1)));
+        return mongoTemplate.aggregate(Aggregation.newAggregation(Location.class, operations), UtilisationVehicule.class)
+                .getMappedResults();
+    }
+
+    /**
+     * Compte les véhicules par etat et par status en une seule agrégation ($facet)
+     */
+    private Map<String, Map<String, Long>> compterVehicules() {
+        List<String> champs = List.of("etat", "status");
+        Document facettes = new Document();
+        for (String champ : champs) {
+            facettes.append(champ, List.of(new Document("$group",
+                    new Document("_id", "$" + champ).append("nombre", new Document("$sum", 1))),
+                    new Document("$sort", new Document("nombre", -1))));
+        }
+        Document resultat = mongoTemplate.aggregate(
+                Aggregation.newAggregation(Vehicule.class, etape("$facet", facettes)), Document.class).getUniqueMappedResult();
+
+        Map<String, Map<String, Long>> comptes = new LinkedHashMap<>();
+        for (String champ : champs) {
+            Map<String, Long> valeurs = new LinkedHashMap<>();
+            List<Document> groupes = resultat == null ? List.of() : resultat.getList(champ, Document.class, List.of());
+            for (Document groupe : groupes) {
+                Object valeur = groupe.get("_id");
+                valeurs.put(valeur == null ? INCONNU : valeur.toString(), ((Number) groupe.get("nombre")).longValue());
+            }
+            comptes.put(champ, valeurs);
+        }
+        return comptes;
+    }
+
+    /**
+     * Filtre les locations qui commencent dans [debut, fin] si la période est renseignée (index dateDebut_dateFin)
+     */
+    private static List<AggregationOperation> filtrePeriode(Requete requete) {
+        List<AggregationOperation> operations = new ArrayList<>();
+        if (requete.debut() != null) {
+            operations.add(Aggregation.match(where("dateDebut").gte(requete.debut()).lte(requete.fin())));
+        }
+        return operations;
+    }
+
+    private static AggregationOperation etape(String operateur, Object contenu) {
+        return context -> new Document(operateur, contenu);
+    }
+
+    /**
+     * Cette fonction vérifie la période demandée, 400 - BAD_REQUEST si elle est incomplète ou inversée
+     * @param obligatoire true si la période doit être renseignée
+     */
+    private static void verifierPeriode(LocalDate debut, LocalDate fin, boolean obligatoire) {
+        if ((debut == null) != (fin == null) || (obligatoire && debut == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    obligatoire ? "debut et fin sont obligatoires" : "debut et fin doivent être renseignés ensemble");
+        }
+        if (debut != null && (obligatoire ? !fin.isAfter(debut) : fin.isBefore(debut))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "fin doit être après debut");
+        }
+    }
+
+    /**
+     * Clé du cache : la statistique et sa période (null si non renseignée)
+     */
+    private record Requete(String statistique, LocalDate debut, LocalDate fin) {
+    }
+}
@@ -0,0 +1,23 @@
+package fr.maxime.ecfback.statistiques;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Taux d'utilisation d'un véhicule sur une période : jours loués / jours de la période
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UtilisationVehicule {
+
+    private String idVehicule;
+    private String immatriculation;
+    private String marque;
+    private String modele;
+    private Double joursLoues;
+    private Long joursPeriode;
+    private Double taux;
+
+}
@@ -0,0 +1,9 @@
+package fr.maxime.ecfback.tarifs;
+
+import java.time.LocalDate;
+
+/**
+ * Un élément de POST /locations/quotes : le véhicule et la période à chiffrer
+ */
+public record DemandeDevis(String idVehicule, LocalDate dateDebut, LocalDate dateFin) {
+}
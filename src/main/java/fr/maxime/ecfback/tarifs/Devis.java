@@ -0,0 +1,12 @@
+package fr.maxime.ecfback.tarifs;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDate;
+
+/**
+ * Le prix d'une demande de devis, ou l'erreur qui empêche de la chiffrer (véhicule introuvable, dates invalides)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Devis(String idVehicule, LocalDate dateDebut, LocalDate dateFin, Double prixTotal, String erreur) {
+}
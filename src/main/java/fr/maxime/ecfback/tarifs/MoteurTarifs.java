@@ -0,0 +1,294 @@
+package fr.maxime.ecfback.tarifs;
+
+import fr.maxime.ecfback.changements.Changement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Calcul des prix de location à partir de la grille tarifaire, gardée en mémoire.<br>
+ * Le prix d'un jour est le prix à la journée du véhicule multiplié par :
+ * <ul>
+ *     <li>le coefficient du type du véhicule (tarif sans dates de ce type, sinon tarif sans dates commun, sinon 1)</li>
+ *     <li>le coefficient de la saison du jour (saison de ce type, sinon saison commune, sinon 1 ; si deux saisons
+ *     se chevauchent, celle qui commence le plus tard)</li>
+ * </ul>
+ * Les jours compris dans des semaines entières de location sont ensuite remisés de remiseSemaine
+ * (celle du type, sinon la remise commune), puis le prix est arrondi au centime.<br>
+ * Au chargement, les coefficients de chaque type sont précalculés jour par jour et cumulés (sommes préfixes)
+ * sur un horizon couvrant toutes les saisons : le prix d'une période est alors la différence de deux cumuls,
+ * quel que soit le nombre de jours, sans allocation ni accès à la base. Hors de l'horizon, aucune saison ne
+ * s'applique.<br>
+ * La grille est chargée au premier calcul puis rechargée par TarifService à chaque modification des tarifs.
+ * Les modifications faites par une autre instance de l'application sont vues à la réception du changement
+ * si le flux des changements est actif (voir FluxChangements), sinon après un rechargement (POST /tarifs/rechargement).
+ */
+@Component
+public class MoteurTarifs {
+
+    /** Horizon minimal autour de la date de chargement, en jours */
+    static final int JOURS_AVANT = 366;
+    static final int JOURS_APRES = 3 * 366;
+
+    Logger logger = LoggerFactory.getLogger(MoteurTarifs.class);
+
+    private final TarifRepository repository;
+    private final Lock chargement = new ReentrantLock();
+    private volatile Grille grille;
+
+    public MoteurTarifs(TarifRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Cette fonction calcule le prix d'une location
+     * @param prixJour Le prix à la journée du véhicule
+     * @param type Le type du véhicule (null s'il n'en a pas)
+     * @param dateDebut Le premier jour de la location
+     * @param dateFin Le jour de fin de la location, non compté
+     * @return Le prix total de la location
+     */
+    public double prix(double prixJour, String type, LocalDate dateDebut, LocalDate dateFin) {
+        Grille courante = grilleSiNecessaire();
+        return courante.bareme(type).prix(courante.origine, prixJour, dateDebut.toEpochDay(), dateFin.toEpochDay());
+    }
+
+    /**
+     * Cette fonction calcule les prix d'un lot de locations en une passe (tableaux parallèles, un élément par location)
+     * @param prixJour Les prix à la journée des véhicules
+     * @param types Les types des véhicules
+     * @param debuts Les premiers jours des locations (LocalDate.toEpochDay)
+     * @param fins Les jours de fin des locations (LocalDate.toEpochDay), non comptés
+     * @param prix Les prix totaux calculés
+     */
+    public void prix(double[] prixJour, String[] types, long[] debuts, long[] fins, double[] prix) {
+        Grille courante = grilleSiNecessaire();
+        for (int i = 0; i < prix.length; i++) {
+            prix[i] = courante.bareme(types[i]).prix(courante.origine, prixJour[i], debuts[i], fins[i]);
+        }
+    }
+
+    /**
+     * Cette fonction relit la grille tarifaire depuis la collection tarif<br>
+     * Les calculs en cours utilisent l'ancienne grille jusqu'à la fin du chargement. La lecture est faite sous le
+     * même verrou que le remplacement : deux rechargements simultanés ne peuvent pas installer une lecture plus
+     * ancienne après une plus récente
+     */
+    public void recharger() {
+        chargement.lock();
+        try {
+            remplacer(repository.findAll());
+        } finally {
+            chargement.unlock();
+        }
+    }
+
+    /**
+     * Cette fonction remplace la grille tarifaire par celle construite à partir des tarifs
+     * @param tarifs Les tarifs
+     */
+    public void remplacer(List<Tarif> tarifs) {
+        chargement.lock();
+        try {
+            long debut = System.currentTimeMillis();
+            grille = Grille.de(tarifs, LocalDate.now());
+            logger.info("Grille tarifaire chargée : " + tarifs.size() + " tarifs, " + grille.parType.size()
+                    + " types, " + grille.commun.cumul.length + " jours en " + (System.currentTimeMillis() - debut) + " ms");
+        } finally {
+            chargement.unlock();
+        }
+    }
+
+    /**
+     * Cette fonction recharge la grille déjà chargée quand un tarif est écrit (par cette instance ou une autre)
+     * @param changement Le changement publié par FluxChangements
+     */
+    @EventListener
+    public void changement(Changement changement) {
+        if (changement.concerne("tarif") && grille != null) {
+            recharger();
+        }
+    }
+
+    private Grille grilleSiNecessaire() {
+        Grille courante = grille;
+        if (courante != null) {
+            return courante;
+        }
+        chargement.lock();
+        try {
+            if (grille == null) {
+                recharger();
+            }
+            return grille;
+        } finally {
+            chargement.unlock();
+        }
+    }
+
+    /**
+     * La grille tarifaire précalculée, immuable : un barème commun et un barème par type ayant ses propres tarifs
+     */
+    static final class Grille {
+
+        private final long origine;
+        private final Bareme commun;
+        private final Map<String, Bareme> parType;
+
+        private Grille(long origine, Bareme commun, Map<String, Bareme> parType) {
+            this.origine = origine;
+            this.commun = commun;
+            this.parType = parType;
+        }
+
+        Bareme bareme(String type) {
+            Bareme bareme = type == null ? null : parType.get(type);
+            return bareme != null ? bareme : commun;
+        }
+
+        static Grille de(List<Tarif> tarifs, LocalDate aujourdhui) {
+            long origine = aujourdhui.toEpochDay() - JOURS_AVANT;
+            long fin = aujourdhui.toEpochDay() + JOURS_APRES;
+            for (Tarif tarif : tarifs) {
+                if (tarif.getDateDebut() != null && tarif.getDateFin() != null) {
+                    origine = Math.min(origine, tarif.getDateDebut().toEpochDay());
+                    fin = Math.max(fin, tarif.getDateFin().toEpochDay());
+                }
+            }
+            int jours = Math.toIntExact(fin - origine);
+            long debutHorizon = origine;
+            List<Tarif> saisons = tarifs.stream()
+                    .filter(tarif -> tarif.getDateDebut() != null && tarif.getDateFin() != null)
+                    .sorted(Comparator.comparing(Tarif::getDateDebut))
+                    .toList();
+
+            double[] saisonsCommunes = new double[jours];
+            Arrays.fill(saisonsCommunes, 1.0);
+            appliquer(saisonsCommunes, origine, saisons, null);
+            double baseCommune = valeur(tarifs, null, Tarif::getCoefficient, 1.0);
+            double remiseCommune = valeur(tarifs, null, Tarif::getRemiseSemaine, 0.0);
+            Bareme commun = new Bareme(baseCommune, remiseCommune, cumuler(saisonsCommunes, baseCommune));
+
+            Map<String, Bareme> parType = new HashMap<>();
+            tarifs.stream().map(Tarif::getType).filter(Objects::nonNull).distinct().forEach(type -> {
+                double[] saisonsType = saisonsCommunes.clone();
+                appliquer(saisonsType, debutHorizon, saisons, type);
+                double base = valeur(tarifs, type, Tarif::getCoefficient, baseCommune);
+                parType.put(type, new Bareme(base, valeur(tarifs, type, Tarif::getRemiseSemaine, remiseCommune),
+                        cumuler(saisonsType, base)));
+            });
+            return new Grille(origine, commun, parType);
+        }
+
+        /**
+         * Écrit les coefficients des saisons du type (type null : saisons communes) dans l'ordre de leur début
+         */
+        private static void appliquer(double[] coefficients, long origine, List<Tarif> saisons, String type) {
+            for (Tarif saison : saisons) {
+                if (!Objects.equals(saison.getType(), type) || saison.getCoefficient() == null) {
+                    continue;
+                }
+                int debut = (int) (saison.getDateDebut().toEpochDay() - origine);
+                int fin = (int) (saison.getDateFin().toEpochDay() - origine);
+                if (debut < fin) {
+                    Arrays.fill(coefficients, debut, fin, saison.getCoefficient());
+                }
+            }
+        }
+
+        /**
+         * La valeur du tarif sans dates du type (type null : commun), sinon la valeur par défaut
+         */
+        private static double valeur(List<Tarif> tarifs, String type, Function<Tarif, Double> champ,
+                                     double parDefaut) {
+            double valeur = parDefaut;
+            for (Tarif tarif : tarifs) {
+                if (tarif.getDateDebut() == null && tarif.getDateFin() == null
+                        && Objects.equals(tarif.getType(), type) && champ.apply(tarif) != null) {
+                    valeur = champ.apply(tarif);
+                }
+            }
+            return valeur;
+        }
+
+        /**
+         * @return cumul[i] = somme des coefficients des i premiers jours de l'horizon
+         */
+        private static double[] cumuler(double[] saisons, double base) {
+            double[] cumul = new double[saisons.length + 1];
+            for (int i = 0; i < saisons.length; i++) {
+                cumul[i + 1] = cumul[i] + base * saisons[i];
+            }
+            return cumul;
+        }
+    }
+
+    /**
+     * Les coefficients cumulés d'un type de véhicule et sa remise par semaine entière
+     */
+    static final class Bareme {
+
+        private final double base;
+        private final double remiseSemaine;
+        private final double[] cumul;
+
+        private Bareme(double base, double remiseSemaine, double[] cumul) {
+            this.base = base;
+            this.remiseSemaine = remiseSemaine;
+            this.cumul = cumul;
+        }
+
+        double prix(long origine, double prixJour, long debut, long fin) {
+            long jours = fin - debut;
+            if (jours <= 0) {
+                return prixJour * jours;
+            }
+            long semaines = jours / 7;
+            double coefficients;
+            if (remiseSemaine > 0 && semaines > 0) {
+                long finSemaines = debut + 7 * semaines;
+                coefficients = (1 - remiseSemaine) * somme(origine, debut, finSemaines) + somme(origine, finSemaines, fin);
+            } else {
+                coefficients = somme(origine, debut, fin);
+            }
+            // Arrondi au centime : les cumuls de coefficients décimaux ne sont pas exacts en double
+            return Math.round(prixJour * coefficients * 100) / 100.0;
+        }
+
+        /**
+         * La somme des coefficients des jours [debut, fin[, au coefficient de base hors de l'horizon
+         */
+        private double somme(long origine, long debut, long fin) {
+            long i = debut - origine;
+            long j = fin - origine;
+            long n = cumul.length - 1;
+            double somme = 0;
+            if (i < 0) {
+                long limite = Math.min(j, 0);
+                somme += (limite - i) * base;
+                i = limite;
+            }
+            if (j > n) {
+                long limite = Math.max(i, n);
+                somme += (j - limite) * base;
+                j = limite;
+            }
+            if (i < j) {
+                somme += cumul[(int) j] - cumul[(int) i];
+            }
+            return somme;
+        }
+    }
+}
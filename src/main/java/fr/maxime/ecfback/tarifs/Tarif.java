@@ -0,0 +1,31 @@
+package fr.maxime.ecfback.tarifs;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+
+/**
+ * Une ligne de la grille tarifaire (voir MoteurTarifs).<br>
+ * type limite le tarif aux véhicules de ce type (tous les véhicules s'il est absent).
+ * Avec dateDebut et dateFin, c'est une saison : le prix à la journée du véhicule est multiplié par coefficient
+ * chaque jour de [dateDebut, dateFin[. Sans dates, coefficient s'applique toute l'année, hors saisons.<br>
+ * remiseSemaine (entre 0 et 1, tarif sans dates) est retirée du prix des jours compris dans des semaines entières
+ * de location.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class Tarif {
+
+    private String id;
+    private String nom;
+    private String type;
+    private LocalDate dateDebut;
+    private LocalDate dateFin;
+    private Double coefficient;
+    private Double remiseSemaine;
+}
@@ -0,0 +1,75 @@
+package fr.maxime.ecfback.tarifs;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@CrossOrigin
+@Profile("!reactif")
+@RequestMapping("/tarifs")
+public class TarifController {
+
+    private final TarifService service;
+
+    public TarifController(TarifService service) {
+        this.service = service;
+    }
+
+    /**
+     * Cette fonction permet de récupérer la grille tarifaire (coefficients par type et par saison, remises par semaine)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/tarifs
+     *
+     * @return La liste des tarifs
+     */
+    @GetMapping("")
+    public List<Tarif> findAll() {
+        return service.findAll();
+    }
+
+    /**
+     * Cette fonction permet d'ajouter un tarif, pris en compte immédiatement dans le calcul des prix<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/tarifs
+     *
+     * @param tarif Le tarif
+     * @return Le tarif enregistré
+     */
+    @PostMapping("")
+    public Tarif save(@RequestBody Tarif tarif) {
+        return service.save(tarif);
+    }
+
+    /**
+     * Cette fonction permet de modifier un tarif grâce à son id<br>
+     * <b>Requête Postman en PUT</b> : localhost:8080/tarifs/<span style="color:orange">id</span>
+     *
+     * @param tarif Le tarif modifié
+     * @param id L'id du tarif
+     * @return Le tarif enregistré
+     */
+    @PutMapping("{id}")
+    public Tarif update(@RequestBody Tarif tarif, @PathVariable String id) {
+        return service.update(tarif, id);
+    }
+
+    /**
+     * Cette fonction permet de supprimer un tarif<br>
+     * <b>Requête Postman en DELETE</b> : localhost:8080/tarifs/<span style="color:orange">id</span>
+     *
+     * @param id L'id du tarif
+     */
+    @DeleteMapping("{id}")
+    public void deleteById(@PathVariable String id) {
+        service.deleteById(id);
+    }
+
+    /**
+     * Cette fonction permet de relire la grille tarifaire en base (tarifs modifiés par une autre instance)<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/tarifs/rechargement
+     */
+    @PostMapping("rechargement")
+    public void recharger() {
+        service.recharger();
+    }
+}
@@ -0,0 +1,7 @@
+package fr.maxime.ecfback.tarifs;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface TarifRepository extends MongoRepository<Tarif, String> {
+
+}
@@ -0,0 +1,171 @@
+package fr.maxime.ecfback.tarifs;
+
+import fr.maxime.ecfback.vehicules.Vehicule;
+import fr.maxime.ecfback.vehicules.VehiculeServiceImpl;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+@Service
+@Timed(value = "ecfback.service", description = "Durée des méthodes des services")
+public class TarifService {
+
+    Logger logger = LoggerFactory.getLogger(TarifService.class);
+
+    private final TarifRepository repository;
+    private final MoteurTarifs moteur;
+    private final VehiculeServiceImpl vehiculeService;
+    private final int devisMax;
+
+    public TarifService(TarifRepository repository,
+                        MoteurTarifs moteur,
+                        VehiculeServiceImpl vehiculeService,
+                        @Value("${ecfback.tarifs.devis.taille-max:1000}") int devisMax) {
+        logger.info("Création du service Tarif");
+        this.repository = repository;
+        this.moteur = moteur;
+        this.vehiculeService = vehiculeService;
+        this.devisMax = devisMax;
+    }
+
+    /**
+     * Cette fonction permet de récupérer la grille tarifaire<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/tarifs
+     * @return La liste des tarifs
+     */
+    public List<Tarif> findAll() {
+        return repository.findAll();
+    }
+
+    /**
+     * Cette fonction permet d'ajouter ou de modifier un tarif, la grille est rechargée dans la foulée<br>
+     * Un coefficient négatif ou nul, une remise hors de [0, 1[ ou une saison sans fin retournent une erreur 400 - BAD_REQUEST<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/tarifs
+     * @param tarif Le tarif
+     * @return Le tarif enregistré
+     */
+    public Tarif save(Tarif tarif) {
+        verifier(tarif);
+        Tarif enregistre = repository.save(tarif);
+        moteur.recharger();
+        return enregistre;
+    }
+
+    /**
+     * Cette fonction permet de modifier un tarif grâce à son id
+     * <b>Requête Postman en PUT</b> : localhost:8080/tarifs/<span style="color:orange">id</span>
+     * @param tarif Le tarif modifié
+     * @param id L'id du tarif
+     * @return Le tarif enregistré
+     */
+    public Tarif update(Tarif tarif, String id) {
+        if (!Objects.equals(tarif.getId(), id)) {
+            logger.warn("Id invalide : " + id);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        return this.save(tarif);
+    }
+
+    /**
+     * Cette fonction permet de supprimer un tarif, la grille est rechargée dans la foulée<br>
+     * <b>Requête Postman en DELETE</b> : localhost:8080/tarifs/<span style="color:orange">id</span>
+     * @param id L'id du tarif
+     */
+    public void deleteById(String id) {
+        repository.deleteById(id);
+        moteur.recharger();
+    }
+
+    /**
+     * Cette fonction permet de relire la grille tarifaire en base, après une modification faite par une autre instance<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/tarifs/rechargement
+     */
+    public void recharger() {
+        moteur.recharger();
+    }
+
+    /**
+     * Cette fonction permet de chiffrer un lot de locations (véhicule, période) sans les enregistrer<br>
+     * Les véhicules sont lus en une fois (cache puis une requête $in pour les absents), les prix sont calculés
+     * en mémoire par MoteurTarifs. Une demande impossible à chiffrer a un message d'erreur à la place du prix<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/locations/quotes
+     * @param demandes Les véhicules et périodes à chiffrer (au plus ecfback.tarifs.devis.taille-max)
+     * @return Un devis par demande, dans le même ordre
+     */
+    public List<Devis> devis(List<DemandeDevis> demandes) {
+        if (demandes.size() > devisMax) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Au plus " + devisMax + " devis par requête");
+        }
+        Set<String> ids = new HashSet<>();
+        for (DemandeDevis demande : demandes) {
+            if (demande.idVehicule() != null) {
+                ids.add(demande.idVehicule());
+            }
+        }
+        Map<String, Vehicule> vehicules = new HashMap<>();
+        if (!ids.isEmpty()) {
+            vehiculeService.findAllById(ids).forEach(vehicule -> vehicules.put(vehicule.getId(), vehicule));
+        }
+
+        // Les demandes valides sont chiffrées ensemble, les autres reçoivent leur erreur
+        int taille = demandes.size();
+        String[] erreurs = new String[taille];
+        double[] prixJour = new double[taille];
+        String[] types = new String[taille];
+        long[] debuts = new long[taille];
+        long[] fins = new long[taille];
+        for (int i = 0; i < taille; i++) {
+            DemandeDevis demande = demandes.get(i);
+            Vehicule vehicule = vehicules.get(demande.idVehicule());
+            if (vehicule == null) {
+                erreurs[i] = "Véhicule introuvable";
+            } else if (vehicule.getPrix() == null) {
+                erreurs[i] = "Véhicule sans prix";
+            } else if (demande.dateDebut() == null || demande.dateFin() == null || !demande.dateFin().isAfter(demande.dateDebut())) {
+                erreurs[i] = "La date de fin doit être postérieure à la date de début";
+            } else {
+                prixJour[i] = vehicule.getPrix();
+                types[i] = vehicule.getType();
+                debuts[i] = demande.dateDebut().toEpochDay();
+                fins[i] = demande.dateFin().toEpochDay();
+            }
+        }
+        double[] prix = new double[taille];
+        moteur.prix(prixJour, types, debuts, fins, prix);
+
+        List<Devis> devis = new ArrayList<>(taille);
+        for (int i = 0; i < taille; i++) {
+            DemandeDevis demande = demandes.get(i);
+            devis.add(new Devis(demande.idVehicule(), demande.dateDebut(), demande.dateFin(),
+                    erreurs[i] == null ? prix[i] : null, erreurs[i]));
+        }
+        return devis;
+    }
+
+    private void verifier(Tarif tarif) {
+        if (tarif.getCoefficient() != null && tarif.getCoefficient() <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Le coefficient doit être positif");
+        }
+        if (tarif.getRemiseSemaine() != null && (tarif.getRemiseSemaine() < 0 || tarif.getRemiseSemaine() >= 1)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La remise par semaine doit être comprise entre 0 et 1");
+        }
+        if ((tarif.getDateDebut() == null) != (tarif.getDateFin() == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Une saison a une date de début et une date de fin");
+        }
+        if (tarif.getDateDebut() != null && !tarif.getDateFin().isAfter(tarif.getDateDebut())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La date de fin doit être postérieure à la date de début");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package fr.maxime.ecfback.vehicules;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Critères de /vehicules/search, liés aux paramètres de la requête : seuls les critères renseignés filtrent
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FiltreVehicules {
+
+    private String marque;
+    private String modele;
+    private String type;
+    private String etat;
+    private String status;
+    private Double prixMin;
+    private Double prixMax;
+
+}
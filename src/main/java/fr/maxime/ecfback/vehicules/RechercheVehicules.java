@@ -0,0 +1,381 @@
+package fr.maxime.ecfback.vehicules;
+
+import fr.maxime.ecfback.changements.Changement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Index en mémoire des mots du catalogue pour la recherche de véhicules (marque, modèle, type et immatriculation).<br>
+ * Les mots sont normalisés (minuscules, sans accents) et rangés dans un arbre trié : les mots commençant par
+ * un préfixe forment une plage contiguë de l'arbre, une recherche ne parcourt donc jamais tout le catalogue.
+ * Chaque mot pointe vers un tableau trié de numéros de véhicules, combinés entre mots recherchés par des BitSet.
+ * Les numéros sont attribués dans l'ordre marque, modèle, immatriculation au chargement : à score égal, les
+ * véhicules sont classés dans cet ordre (ceux ajoutés depuis le chargement viennent après).<br>
+ * L'immatriculation est indexée par groupe ("ab", "123", "cd") et, à partir de chaque groupe, sans séparateurs
+ * ("ab123cd", "123cd") : un mot mêlant lettres et chiffres retrouve ainsi une plaque partielle.<br>
+ * Comme DisponibiliteService, l'index est chargé une seule fois depuis la collection vehicule (au premier appel)
+ * puis tenu à jour par VehiculeServiceImpl et VehiculeReactifService à chaque écriture, et par les changements
+ * reçus des autres instances si le flux des changements est actif (voir FluxChangements).
+ */
+@Component
+public class RechercheVehicules {
+
+    Logger logger = LoggerFactory.getLogger(RechercheVehicules.class);
+
+    private static final Pattern SEPARATEURS = Pattern.compile("[^a-z0-9]+");
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}");
+    private static final Pattern LETTRES_ET_CHIFFRES = Pattern.compile("(?=.*[a-z])(?=.*[0-9]).*");
+
+    private static final Comparator<Vehicule> ORDRE = Comparator
+            .comparing(Vehicule::getMarque, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(Vehicule::getModele, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(Vehicule::getImmatriculation, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final VehiculeRepository repository;
+    private final MongoTemplate mongoTemplate;
+    private final Lock ecriture = new ReentrantLock();
+    private volatile Index index;
+
+    public RechercheVehicules(VehiculeRepository repository, MongoTemplate mongoTemplate) {
+        this.repository = repository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Cette fonction recherche les véhicules dont les mots commencent par chacun des mots du texte<br>
+     * Un véhicule doit correspondre à tous les mots recherchés. Il est classé d'abord par le nombre de mots
+     * recherchés qu'il contient en entier ("208" avant "2008" pour "208"), puis par marque, modèle et immatriculation
+     * @param texte Le texte recherché ("peug 208", "AB-12")
+     * @param debut Le nombre de véhicules classés à sauter (pagination)
+     * @param limite Le nombre de véhicules retournés
+     * @return Les véhicules trouvés, du plus pertinent au moins pertinent
+     */
+    public List<Vehicule> rechercher(String texte, long debut, int limite) {
+        Index courant = chargerSiNecessaire();
+        List<String> recherches = List.copyOf(new LinkedHashSet<>(mots(texte)));
+        if (recherches.isEmpty()) {
+            return List.of();
+        }
+
+        int taille = courant.vehicules.length;
+        BitSet candidats = null;
+        BitSet[] exacts = new BitSet[recherches.size()];
+        for (int i = 0; i < recherches.size(); i++) {
+            BitSet trouves = new BitSet(taille);
+            exacts[i] = new BitSet(taille);
+            courant.chercher(courant.mots, recherches.get(i), trouves, exacts[i]);
+            if (LETTRES_ET_CHIFFRES.matcher(recherches.get(i)).matches()) {
+                courant.chercher(courant.plaques, recherches.get(i), trouves, exacts[i]);
+            }
+            if (candidats == null) {
+                candidats = trouves;
+            } else {
+                candidats.and(trouves);
+            }
+            if (candidats.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        // Lu après les mots : un numéro publié dans un mot a déjà son véhicule dans ce tableau
+        Vehicule[] vehicules = courant.vehicules;
+        int[] parNiveau = new int[recherches.size() + 1];
+        for (int numero = candidats.nextSetBit(0); numero >= 0; numero = candidats.nextSetBit(numero + 1)) {
+            if (numero >= vehicules.length || vehicules[numero] == null) {
+                candidats.clear(numero);
+            } else {
+                parNiveau[niveau(exacts, numero)]++;
+            }
+        }
+
+        // Les niveaux entièrement avant la page sont sautés sans les parcourir
+        List<Vehicule> page = new ArrayList<>(Math.min(limite, candidats.cardinality()));
+        long aSauter = debut;
+        for (int niveau = recherches.size(); niveau >= 0 && page.size() < limite; niveau--) {
+            if (parNiveau[niveau] <= aSauter) {
+                aSauter -= parNiveau[niveau];
+                continue;
+            }
+            for (int numero = candidats.nextSetBit(0); numero >= 0 && page.size() < limite;
+                 numero = candidats.nextSetBit(numero + 1)) {
+                if (niveau(exacts, numero) == niveau) {
+                    if (aSauter > 0) {
+                        aSauter--;
+                    } else {
+                        page.add(vehicules[numero]);
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Cette fonction indexe (ou réindexe) un véhicule enregistré<br>
+     * L'index en garde une copie : l'instance de l'appelant peut être modifiée ensuite sans fausser l'index
+     * @param vehicule Le véhicule enregistré
+     */
+    public void indexer(Vehicule vehicule) {
+        Vehicule copie = new Vehicule(vehicule.getId(), vehicule.getMarque(), vehicule.getModele(),
+                vehicule.getImmatriculation(), vehicule.getType(), vehicule.getPrix(), vehicule.getEtat(), vehicule.getStatus());
+        chargerSiNecessaire();
+        ecriture.lock();
+        try {
+            index.indexer(copie);
+        } finally {
+            ecriture.unlock();
+        }
+    }
+
+    /**
+     * Cette fonction retire un véhicule supprimé de l'index
+     * @param id L'id du véhicule supprimé
+     */
+    public void retirer(String id) {
+        chargerSiNecessaire();
+        ecriture.lock();
+        try {
+            index.retirer(id);
+        } finally {
+            ecriture.unlock();
+        }
+    }
+
+    /**
+     * Cette fonction reconstruit l'index depuis la collection vehicule, après un import en masse<br>
+     * Les recherches utilisent l'ancien index jusqu'à la fin du chargement, les écritures de véhicules attendent
+     */
+    public void recharger() {
+        ecriture.lock();
+        try {
+            index = charger();
+        } finally {
+            ecriture.unlock();
+        }
+    }
+
+    /**
+     * Cette fonction applique à l'index un véhicule écrit par une autre instance (ou par celle-ci : l'index
+     * est alors déjà à jour), ou le recharge si des changements ont pu être perdus<br>
+     * Rien n'est fait tant que l'index n'est pas chargé : le chargement lira l'état courant
+     * @param changement Le changement publié par FluxChangements
+     */
+    @EventListener
+    public void changement(Changement changement) {
+        if (!changement.concerne(mongoTemplate.getCollectionName(Vehicule.class)) || index == null) {
+            return;
+        }
+        switch (changement.operation()) {
+            case INSERTION, MODIFICATION -> {
+                if (changement.document() != null) {
+                    indexer(mongoTemplate.getConverter().read(Vehicule.class, changement.document()));
+                } else {
+                    // Supprimé avant la relecture du document : la suppression suit dans le flux
+                    retirer(changement.id());
+                }
+            }
+            case SUPPRESSION -> retirer(changement.id());
+            case REINITIALISATION -> {
+                recharger();
+                logger.info("Index de recherche des véhicules rechargé après la perte de changements");
+            }
+        }
+    }
+
+    /**
+     * Cette fonction découpe un texte en mots normalisés : minuscules, sans accents, séparés par tout autre caractère
+     * qu'une lettre ou un chiffre
+     * @param texte Le texte à découper
+     * @return Les mots du texte
+     */
+    static List<String> mots(String texte) {
+        if (texte == null) {
+            return List.of();
+        }
+        String normalise = ACCENTS.matcher(Normalizer.normalize(texte, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATEURS.split(normalise)).filter(mot -> !mot.isEmpty()).toList();
+    }
+
+    private static int niveau(BitSet[] exacts, int numero) {
+        int niveau = 0;
+        for (BitSet exact : exacts) {
+            if (exact.get(numero)) {
+                niveau++;
+            }
+        }
+        return niveau;
+    }
+
+    /**
+     * Le chargement lit MongoDB : il est protégé par un ReentrantLock plutôt que par synchronized,
+     * pour ne pas bloquer le thread porteur d'un thread virtuel pendant la lecture (profil "virtuel")
+     */
+    private Index chargerSiNecessaire() {
+        Index courant = index;
+        if (courant != null) {
+            return courant;
+        }
+        ecriture.lock();
+        try {
+            if (index == null) {
+                index = charger();
+            }
+            return index;
+        } finally {
+            ecriture.unlock();
+        }
+    }
+
+    private Index charger() {
+        long debut = System.currentTimeMillis();
+        List<Vehicule> vehicules;
+        try (Stream<Vehicule> flux = repository.streamAllBy()) {
+            vehicules = flux.sorted(ORDRE).toList();
+        }
+        Index nouveau = new Index(vehicules);
+        logger.info("Index de recherche des véhicules chargé : " + vehicules.size() + " véhicules, "
+                + nouveau.mots.size() + " mots, " + nouveau.plaques.size() + " plaques en "
+                + (System.currentTimeMillis() - debut) + " ms");
+        return nouveau;
+    }
+
+    /**
+     * L'index lui-même. Les tableaux de numéros ne sont jamais modifiés : une écriture les remplace par une copie,
+     * les recherches lisent donc sans verrou. Les écritures sont faites sous le verrou de RechercheVehicules
+     */
+    private static final class Index {
+
+        private final NavigableMap<String, int[]> mots = new ConcurrentSkipListMap<>();
+        private final NavigableMap<String, int[]> plaques = new ConcurrentSkipListMap<>();
+        private final Map<String, Integer> numeros = new ConcurrentHashMap<>();
+        private volatile Vehicule[] vehicules;
+        private int suivant;
+
+        private Index(List<Vehicule> charges) {
+            Map<String, List<Integer>> parMot = new HashMap<>();
+            Map<String, List<Integer>> parPlaque = new HashMap<>();
+            vehicules = new Vehicule[Math.max(16, charges.size() + charges.size() / 2)];
+            for (Vehicule vehicule : charges) {
+                int numero = suivant++;
+                vehicules[numero] = vehicule;
+                numeros.put(vehicule.getId(), numero);
+                motsDe(vehicule).forEach(mot -> parMot.computeIfAbsent(mot, cle -> new ArrayList<>()).add(numero));
+                plaquesDe(vehicule).forEach(plaque -> parPlaque.computeIfAbsent(plaque, cle -> new ArrayList<>()).add(numero));
+            }
+            parMot.forEach((mot, liste) -> mots.put(mot, liste.stream().mapToInt(Integer::intValue).toArray()));
+            parPlaque.forEach((plaque, liste) -> plaques.put(plaque, liste.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        private void chercher(NavigableMap<String, int[]> termes, String recherche, BitSet trouves, BitSet exacts) {
+            termes.subMap(recherche, true, recherche + Character.MAX_VALUE, false).forEach((terme, numeros) -> {
+                BitSet cible = terme.equals(recherche) ? exacts : null;
+                for (int numero : numeros) {
+                    trouves.set(numero);
+                    if (cible != null) {
+                        cible.set(numero);
+                    }
+                }
+            });
+        }
+
+        private void indexer(Vehicule vehicule) {
+            Integer existant = numeros.get(vehicule.getId());
+            int numero;
+            if (existant != null) {
+                numero = existant;
+                desindexer(numero, vehicules[numero]);
+            } else {
+                numero = suivant++;
+                if (numero == vehicules.length) {
+                    vehicules = Arrays.copyOf(vehicules, vehicules.length + vehicules.length / 2);
+                }
+            }
+            vehicules[numero] = vehicule;
+            numeros.put(vehicule.getId(), numero);
+            motsDe(vehicule).forEach(mot -> ajouter(mots, mot, numero));
+            plaquesDe(vehicule).forEach(plaque -> ajouter(plaques, plaque, numero));
+        }
+
+        private void retirer(String id) {
+            Integer numero = numeros.remove(id);
+            if (numero != null) {
+                desindexer(numero, vehicules[numero]);
+                vehicules[numero] = null;
+            }
+        }
+
+        private void desindexer(int numero, Vehicule vehicule) {
+            motsDe(vehicule).forEach(mot -> enlever(mots, mot, numero));
+            plaquesDe(vehicule).forEach(plaque -> enlever(plaques, plaque, numero));
+        }
+
+        private static void ajouter(NavigableMap<String, int[]> termes, String terme, int numero) {
+            int[] numeros = termes.getOrDefault(terme, new int[0]);
+            int position = Arrays.binarySearch(numeros, numero);
+            if (position >= 0) {
+                return;
+            }
+            int insertion = -position - 1;
+            int[] copie = new int[numeros.length + 1];
+            System.arraycopy(numeros, 0, copie, 0, insertion);
+            copie[insertion] = numero;
+            System.arraycopy(numeros, insertion, copie, insertion + 1, numeros.length - insertion);
+            termes.put(terme, copie);
+        }
+
+        private static void enlever(NavigableMap<String, int[]> termes, String terme, int numero) {
+            int[] numeros = termes.get(terme);
+            int position = numeros == null ? -1 : Arrays.binarySearch(numeros, numero);
+            if (position < 0) {
+                return;
+            }
+            if (numeros.length == 1) {
+                termes.remove(terme);
+                return;
+            }
+            int[] copie = new int[numeros.length - 1];
+            System.arraycopy(numeros, 0, copie, 0, position);
+            System.arraycopy(numeros, position + 1, copie, position, numeros.length - position - 1);
+            termes.put(terme, copie);
+        }
+
+        private static Set<String> motsDe(Vehicule vehicule) {
+            Set<String> mots = new LinkedHashSet<>();
+            Stream.of(vehicule.getMarque(), vehicule.getModele(), vehicule.getType(), vehicule.getImmatriculation())
+                    .forEach(champ -> mots.addAll(mots(champ)));
+            return mots;
+        }
+
+        private static Set<String> plaquesDe(Vehicule vehicule) {
+            List<String> groupes = mots(vehicule.getImmatriculation());
+            Set<String> plaques = new LinkedHashSet<>();
+            for (int i = 0; i < groupes.size() - 1; i++) {
+                plaques.add(String.join("", groupes.subList(i, groupes.size())));
+            }
+            return plaques;
+        }
+    }
+}
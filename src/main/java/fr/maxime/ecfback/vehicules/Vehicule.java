@@ -3,21 +3,30 @@ package fr.maxime.ecfback.vehicules;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+@CompoundIndex(name = "marque_modele", def = "{'marque': 1, 'modele': 1}")
 public class Vehicule {
 
     private String id;
     private String marque;
+    @Indexed
     private String modele;
+    @Indexed(unique = true, sparse = true)
     private String immatriculation;
+    @Indexed
     private String type;
+    @Indexed
     private Double prix;
+    @Indexed
     private String etat;
+    @Indexed
     private String status;
 
 }
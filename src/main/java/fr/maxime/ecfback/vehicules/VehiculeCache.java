@@ -0,0 +1,173 @@
+package fr.maxime.ecfback.vehicules;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import fr.maxime.ecfback.changements.Changement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache mémoire des véhicules par id et par immatriculation.<br>
+ * Sa taille est bornée (ecfback.cache.vehicules.taille-max) et chaque entrée expire après
+ * ecfback.cache.vehicules.duree. Il est invalidé par les écritures de VehiculeServiceImpl et, si le flux
+ * des changements est actif, par celles des autres instances (voir FluxChangements).<br>
+ * L'immatriculation sous laquelle chaque véhicule a été mis en cache est retenue par id (au plus une par véhicule
+ * de la flotte) : une écriture n'invalide que cette entrée, sans parcourir le cache.<br>
+ * Un chargement par immatriculation en cours pendant une écriture relit la base, et un chargement groupé par ids
+ * n'est pas mis en cache, pour ne pas remettre en cache le véhicule d'avant l'écriture.
+ */
+@Component
+public class VehiculeCache {
+
+    /** Nombre maximal de lectures d'un véhicule par immatriculation quand des écritures ont lieu en même temps */
+    private static final int ESSAIS_CHARGEMENT = 3;
+
+    Logger logger = LoggerFactory.getLogger(VehiculeCache.class);
+
+    private final Cache<String, Vehicule> parId;
+    private final Cache<String, Vehicule> parImmatriculation;
+    private final Map<String, String> immatriculations = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public VehiculeCache(@Value("${ecfback.cache.vehicules.taille-max:10000}") long tailleMax,
+                         @Value("${ecfback.cache.vehicules.duree:10m}") Duration duree) {
+        logger.info("Création du cache Vehicule : " + tailleMax + " entrées, expiration " + duree);
+        this.parId = Caffeine.newBuilder().maximumSize(tailleMax).expireAfterWrite(duree).recordStats().build();
+        this.parImmatriculation = Caffeine.newBuilder().maximumSize(tailleMax).expireAfterWrite(duree).recordStats().build();
+    }
+
+    /**
+     * Cette fonction retourne le véhicule en cache ou le charge puis le met en cache
+     * @param id L'id du véhicule
+     * @param chargement La lecture en base en cas d'absence
+     * @return Le véhicule
+     */
+    public Vehicule findById(String id, Function<String, Vehicule> chargement) {
+        return parId.get(id, chargement);
+    }
+
+    /**
+     * Cette fonction retourne les véhicules en cache et charge les absents en une seule lecture<br>
+     * Caffeine ne bloque pas les invalidations pendant un chargement groupé : si une écriture a lieu pendant
+     * la lecture, les véhicules lus sont retournés sans être mis en cache
+     * @param ids Les ids des véhicules
+     * @param chargement La lecture en base des ids absents du cache
+     * @return Les véhicules trouvés, par id
+     */
+    public Map<String, Vehicule> findAllById(Collection<String> ids,
+                                             Function<Collection<? extends String>, Map<String, Vehicule>> chargement) {
+        Map<String, Vehicule> vehicules = new LinkedHashMap<>(parId.getAllPresent(ids));
+        Set<String> absents = new LinkedHashSet<>(ids);
+        absents.removeAll(vehicules.keySet());
+        if (absents.isEmpty()) {
+            return vehicules;
+        }
+        long avant = invalidations.get();
+        Map<String, Vehicule> charges = chargement.apply(absents);
+        vehicules.putAll(charges);
+        if (invalidations.get() == avant) {
+            parId.putAll(charges);
+            // Une écriture entre la vérification et la mise en cache : les entrées ajoutées sont retirées
+            if (invalidations.get() != avant) {
+                parId.invalidateAll(charges.keySet());
+            }
+        }
+        return vehicules;
+    }
+
+    /**
+     * Cette fonction retourne le véhicule en cache ou le charge puis le met en cache<br>
+     * Une immatriculation inconnue n'est pas mise en cache
+     * @param immatriculation L'immatriculation du véhicule
+     * @param chargement La lecture en base en cas d'absence
+     * @return Le véhicule, null s'il n'existe pas
+     */
+    public Vehicule findByImmatriculation(String immatriculation, Function<String, Vehicule> chargement) {
+        return parImmatriculation.get(immatriculation, cle -> {
+            Vehicule vehicule = null;
+            for (int essai = 0; essai < ESSAIS_CHARGEMENT; essai++) {
+                long avant = invalidations.get();
+                vehicule = chargement.apply(cle);
+                if (vehicule != null) {
+                    immatriculations.put(vehicule.getId(), cle);
+                }
+                // Une écriture pendant la lecture a pu rendre le véhicule lu obsolète : il est relu
+                if (invalidations.get() == avant) {
+                    break;
+                }
+            }
+            return vehicule;
+        });
+    }
+
+    /**
+     * Cette fonction retire du cache le véhicule, sous son id comme sous son immatriculation
+     * @param id L'id du véhicule modifié ou supprimé
+     */
+    public void invalider(String id) {
+        if (id == null) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        parId.invalidate(id);
+        String immatriculation = immatriculations.remove(id);
+        if (immatriculation != null) {
+            parImmatriculation.invalidate(immatriculation);
+        }
+    }
+
+    /**
+     * Cette fonction retire du cache le véhicule écrit par une autre instance, ou vide le cache si des
+     * changements ont pu être perdus
+     * @param changement Le changement publié par FluxChangements
+     */
+    @EventListener
+    public void changement(Changement changement) {
+        if (!changement.concerne("vehicule")) {
+            return;
+        }
+        if (changement.operation() == Changement.Operation.REINITIALISATION) {
+            invalidations.incrementAndGet();
+            parId.invalidateAll();
+            parImmatriculation.invalidateAll();
+            immatriculations.clear();
+        } else {
+            invalider(changement.id());
+        }
+    }
+
+    /**
+     * Cette fonction retourne les compteurs du cache (succès, échecs, évictions) pour chaque index
+     * @return Les compteurs par index
+     */
+    public Map<String, Map<String, Long>> statistiques() {
+        Map<String, Map<String, Long>> statistiques = new LinkedHashMap<>();
+        statistiques.put("id", compteurs(parId));
+        statistiques.put("immatriculation", compteurs(parImmatriculation));
+        return statistiques;
+    }
+
+    private static Map<String, Long> compteurs(Cache<String, Vehicule> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Long> compteurs = new LinkedHashMap<>();
+        compteurs.put("taille", cache.estimatedSize());
+        compteurs.put("succes", stats.hitCount());
+        compteurs.put("echecs", stats.missCount());
+        compteurs.put("evictions", stats.evictionCount());
+        return compteurs;
+    }
+}
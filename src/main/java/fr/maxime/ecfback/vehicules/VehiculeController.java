@@ -1,29 +1,80 @@
 package fr.maxime.ecfback.vehicules;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.maxime.ecfback.commun.Ndjson;
+import fr.maxime.ecfback.commun.ResultatImport;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @CrossOrigin
+@Profile("!reactif")
 @RequestMapping("/vehicules")
 public class VehiculeController {
 
     private final VehiculeServiceImpl service;
+    private final ObjectMapper objectMapper;
 
-    public VehiculeController(VehiculeServiceImpl service) {
+    public VehiculeController(VehiculeServiceImpl service, ObjectMapper objectMapper) {
         this.service = service;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * Cette fonction permet de récupérer la liste de tous les véhicules présents dans la base de données<br>
-     * <b>Requête Postman en GET</b> : localhost:8080/vehicules
+     * Avec les paramètres limit et/ou after, la liste est paginée par curseur sur l'id :
+     * after est l'id du dernier élément de la page précédente<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
      *
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
      * @return une liste de vehicules
      */
     @GetMapping("")
-    public List<Vehicule> findAll() {
-        return service.findAll();
+    public List<Vehicule> findAll(@RequestParam(required = false) Integer limit,
+                                  @RequestParam(required = false) String after) {
+        if (limit == null && after == null) {
+            return service.findAll();
+        }
+        return service.findPage(after, limit);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les véhicules réduits aux champs demandés, pour les écrans de liste<br>
+     * Les autres champs ne sont ni lus en base, ni envoyés. La pagination (limit, after) est la même que sans fields<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules?fields=<span style="color:orange">id,marque,modele,prix</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules?fields=<span style="color:orange">id,marque,modele,prix</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param fields Les champs demandés, séparés par des virgules (l'id est toujours renvoyé)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return une liste de véhicules réduits aux champs demandés
+     */
+    @GetMapping(value = "", params = "fields")
+    public List<Map<String, Object>> findAllChamps(@RequestParam String fields,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String after) {
+        return service.findAllChamps(fields, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de récupérer tous les véhicules au format NDJSON (un objet JSON par ligne)<br>
+     * Les documents sont écrits au fil du curseur MongoDB, sans charger la collection en mémoire<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules avec l'en-tête Accept: application/x-ndjson
+     *
+     * @return le flux des vehicules
+     */
+    @GetMapping(value = "", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody stream() {
+        return Ndjson.ecrire(objectMapper, service::stream);
     }
 
     /**
@@ -38,6 +89,37 @@ public class VehiculeController {
         return service.save(entity);
     }
 
+    /**
+     * Cette fonction permet d'enregistrer en une fois un grand nombre de véhicules<br>
+     * Le corps est un tableau JSON ou un flux NDJSON (Content-Type: application/x-ndjson), lu au fil de l'eau<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/vehicules/bulk
+     *
+     * @param corps Le corps de la requête
+     * @return Le bilan de l'import : nombre de véhicules reçus, insérés, rejetés et le motif de chaque rejet
+     */
+    @PostMapping(value = "bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResultatImport importer(InputStream corps) {
+        return service.importer(corps);
+    }
+
+    /**
+     * Cette fonction permet de rechercher des véhicules par texte libre (marque, modèle, type, immatriculation),
+     * classés par pertinence<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/recherche?q=<span style="color:orange">texte</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/recherche?q=<span style="color:orange">texte</span>&page=<span style="color:orange">page</span>&limit=<span style="color:orange">limit</span>
+     *
+     * @param q Le texte recherché ("peug 208", "AB-12")
+     * @param page Le numéro de la page, à partir de 0 (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel)
+     * @return Une liste de véhicules
+     */
+    @GetMapping("recherche")
+    public List<Vehicule> rechercher(@RequestParam String q,
+                                     @RequestParam(required = false) Integer page,
+                                     @RequestParam(required = false) Integer limit) {
+        return service.rechercher(q, page, limit);
+    }
+
     /**
      * Cette fonction permet de retrouver un véhicule en passant par son id<br>
      * <b>Requête Postman en GET</b> : localhost:8080/vehicules/<span style="color:orange">id</span>
@@ -122,6 +204,41 @@ public class VehiculeController {
         return service.findByImmatriculation(immatriculation);
     }
 
+    /**
+     * Cette fonction permet de filtrer les véhicules sur n'importe quelle combinaison de critères en une seule requête<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/search?marque=<span style="color:orange">marque</span>&modele=<span style="color:orange">modele</span>&type=<span style="color:orange">type</span>&etat=<span style="color:orange">etat</span>&status=<span style="color:orange">status</span>&prixMin=<span style="color:orange">prixMin</span>&prixMax=<span style="color:orange">prixMax</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/search?type=<span style="color:orange">type</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param filtre Les critères : marque, modele, type, etat, status, prixMin et prixMax (tous optionnels)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return Une liste de véhicules
+     */
+    @GetMapping("search")
+    public List<Vehicule> filtrer(FiltreVehicules filtre,
+                                  @RequestParam(required = false) Integer limit,
+                                  @RequestParam(required = false) String after) {
+        return service.filtrer(filtre, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de filtrer les véhicules comme /vehicules/search, réduits aux champs demandés<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/search?type=<span style="color:orange">type</span>&fields=<span style="color:orange">id,marque,modele,prix</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param filtre Les critères : marque, modele, type, etat, status, prixMin et prixMax (tous optionnels)
+     * @param fields Les champs demandés, séparés par des virgules (l'id est toujours renvoyé)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return Une liste de véhicules réduits aux champs demandés
+     */
+    @GetMapping(value = "search", params = "fields")
+    public List<Map<String, Object>> filtrerChamps(FiltreVehicules filtre,
+                                                   @RequestParam String fields,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String after) {
+        return service.filtrerChamps(filtre, fields, after, limit);
+    }
+
     /**
      * Cette fonction permet de retrouver un véhicule en fonction de son état<br>
          * <b>Requête Postman en DELETE</b> : localhost:8080/vehicules/etat?etat=<span style="color:orange">etat</span>
@@ -168,4 +285,28 @@ public class VehiculeController {
     public Vehicule update(@RequestBody Vehicule vehicule, @PathVariable String id) {
         return service.update(vehicule, id);
     }
+
+    /**
+     * Cette fonction permet de retrouver les véhicules libres sur toute une période<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/disponibles?debut=<span style="color:orange">debut</span>&fin=<span style="color:orange">fin</span>
+     *
+     * @param debut La date de début (Format : "YYYY-MM-DD")
+     * @param fin   La date de fin (Format : "YYYY-MM-DD")
+     * @return Une liste de véhicules
+     */
+    @GetMapping("disponibles")
+    public List<Vehicule> findAllDisponibles(@RequestParam LocalDate debut, @RequestParam LocalDate fin) {
+        return service.findAllDisponibles(debut, fin);
+    }
+
+    /**
+     * Cette fonction permet de consulter les compteurs du cache des véhicules (succès, échecs, évictions)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/cache
+     *
+     * @return Les compteurs du cache par index
+     */
+    @GetMapping("cache")
+    public Map<String, Map<String, Long>> statistiquesCache() {
+        return service.statistiquesCache();
+    }
 }
@@ -0,0 +1,285 @@
+package fr.maxime.ecfback.vehicules;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Routes /vehicules de la pile réactive (profil "reactif"), identiques à celles de VehiculeController<br>
+ * Les listes sont envoyées en JSON ou, avec l'en-tête Accept: application/x-ndjson, au fil de l'eau avec backpressure
+ */
+@RestController
+@CrossOrigin
+@Profile("reactif")
+@RequestMapping("/vehicules")
+public class VehiculeReactifController {
+
+    private final VehiculeReactifService service;
+
+    public VehiculeReactifController(VehiculeReactifService service) {
+        this.service = service;
+    }
+
+    /**
+     * Cette fonction permet de récupérer la liste de tous les véhicules, paginée par curseur avec limit et/ou after<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return un flux de vehicules
+     */
+    @GetMapping(value = "", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Vehicule> findAll(@RequestParam(required = false) Integer limit,
+                                  @RequestParam(required = false) String after) {
+        if (limit == null && after == null) {
+            return service.findAll();
+        }
+        return service.findPage(after, limit);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les véhicules réduits aux champs demandés, pour les écrans de liste<br>
+     * Les autres champs ne sont ni lus en base, ni envoyés. La pagination (limit, after) est la même que sans fields<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules?fields=<span style="color:orange">id,marque,modele,prix</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules?fields=<span style="color:orange">id,marque,modele,prix</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param fields Les champs demandés, séparés par des virgules (l'id est toujours renvoyé)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return un flux de véhicules réduits aux champs demandés
+     */
+    @GetMapping(value = "", params = "fields", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Map<String, Object>> findAllChamps(@RequestParam String fields,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String after) {
+        return service.findAllChamps(fields, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de sauvegarder un nouveau véhicule en base de données<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/vehicules
+     *
+     * @param entity Un véhicule
+     * @return Le nouveau vehicule enregistré dans la base de données
+     */
+    @PostMapping("")
+    public Mono<Vehicule> save(@RequestBody Vehicule entity) {
+        return service.save(entity);
+    }
+
+    /**
+     * Cette fonction permet de rechercher des véhicules par texte libre (marque, modèle, type, immatriculation),
+     * classés par pertinence<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/recherche?q=<span style="color:orange">texte</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/recherche?q=<span style="color:orange">texte</span>&page=<span style="color:orange">page</span>&limit=<span style="color:orange">limit</span>
+     *
+     * @param q Le texte recherché ("peug 208", "AB-12")
+     * @param page Le numéro de la page, à partir de 0 (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel)
+     * @return Un flux de véhicules
+     */
+    @GetMapping("recherche")
+    public Flux<Vehicule> rechercher(@RequestParam String q,
+                                     @RequestParam(required = false) Integer page,
+                                     @RequestParam(required = false) Integer limit) {
+        return service.rechercher(q, page, limit);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule en passant par son id<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/<span style="color:orange">id</span>
+     *
+     * @param id L'id du véhicule
+     * @return le véhicule recherché
+     */
+    @GetMapping("{id}")
+    public Mono<Vehicule> findById(@PathVariable String id) {
+        return service.findById(id);
+    }
+
+    /**
+     * Cette fonction permet de supprimer un véhicule de la base de données en passant par son id<br>
+     * <b>Requête Postman en DELETE</b> : localhost:8080/vehicules/<span style="color:orange">id</span>
+     *
+     * @param id L'id du véhicule à supprimer
+     */
+    @DeleteMapping("{id}")
+    public Mono<Void> deleteById(@PathVariable String id) {
+        return service.deleteById(id);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule grâce à sa marque<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/marque?marque=<span style="color:orange">marque</span>
+     *
+     * @param marque La marque du véhicule
+     * @return Un flux de véhicules
+     */
+    @GetMapping("marque")
+    public Flux<Vehicule> findAllByMarque(@RequestParam String marque) {
+        return service.findAllByMarque(marque);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule grâce à son modèle<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/modele?modele=<span style="color:orange">modele</span>
+     *
+     * @param modele Le modèle du véhicule
+     * @return Un flux de véhicules
+     */
+    @GetMapping("modele")
+    public Flux<Vehicule> findAllByModele(@RequestParam String modele) {
+        return service.findAllByModele(modele);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule grâce à sa marque et son modèle<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/marque&modele?marque=<span style="color:orange">marque</span>&modele=<span style="color:orange">modele</span>
+     *
+     * @param marque La marque du véhicule
+     * @param modele Le modèle du véhicule
+     * @return Un flux de véhicules
+     */
+    @GetMapping("marque&modele")
+    public Flux<Vehicule> findAllByMarqueAndModele(@RequestParam String marque, @RequestParam String modele) {
+        return service.findAllByMarqueAndModele(marque, modele);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule en fonction de son type<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/type?type=<span style="color:orange">type</span>
+     *
+     * @param type Le type de véhicule (Voiture, Camion, etc)
+     * @return Un flux de véhicules
+     */
+    @GetMapping("type")
+    public Flux<Vehicule> findAllByType(@RequestParam String type) {
+        return service.findAllByType(type);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule en fonction de son immatriculation<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/immatriculation?immatriculation=<span style="color:orange">immatriculation</span>
+     *
+     * @param immatriculation L'immatriculation du véhicule
+     * @return Le véhicule recherché
+     */
+    @GetMapping("immatriculation")
+    public Mono<Vehicule> findByImmatriculation(@RequestParam String immatriculation) {
+        return service.findByImmatriculation(immatriculation);
+    }
+
+    /**
+     * Cette fonction permet de filtrer les véhicules sur n'importe quelle combinaison de critères en une seule requête<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/search?marque=<span style="color:orange">marque</span>&modele=<span style="color:orange">modele</span>&type=<span style="color:orange">type</span>&etat=<span style="color:orange">etat</span>&status=<span style="color:orange">status</span>&prixMin=<span style="color:orange">prixMin</span>&prixMax=<span style="color:orange">prixMax</span><br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/search?type=<span style="color:orange">type</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param filtre Les critères : marque, modele, type, etat, status, prixMin et prixMax (tous optionnels)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return Un flux de véhicules
+     */
+    @GetMapping(value = "search", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Vehicule> filtrer(FiltreVehicules filtre,
+                                  @RequestParam(required = false) Integer limit,
+                                  @RequestParam(required = false) String after) {
+        return service.filtrer(filtre, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de filtrer les véhicules comme /vehicules/search, réduits aux champs demandés<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/search?type=<span style="color:orange">type</span>&fields=<span style="color:orange">id,marque,modele,prix</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     *
+     * @param filtre Les critères : marque, modele, type, etat, status, prixMin et prixMax (tous optionnels)
+     * @param fields Les champs demandés, séparés par des virgules (l'id est toujours renvoyé)
+     * @param limit Le nombre d'éléments de la page (optionnel)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @return Un flux de véhicules réduits aux champs demandés
+     */
+    @GetMapping(value = "search", params = "fields", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Map<String, Object>> filtrerChamps(FiltreVehicules filtre,
+                                                   @RequestParam String fields,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String after) {
+        return service.filtrerChamps(filtre, fields, after, limit);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule en fonction de son état<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/etat?etat=<span style="color:orange">etat</span>
+     *
+     * @param etat L'état du véhicule (A, B, C, D)
+     * @return Un flux de véhicules
+     */
+    @GetMapping("etat")
+    public Flux<Vehicule> findAllByEtat(@RequestParam String etat) {
+        return service.findAllByEtat(etat);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule en fonction de son prix de location à la journée<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/prix?prix=<span style="color:orange">prix</span>
+     *
+     * @param prix Le prix de location à la journée du véhicule
+     * @return Un flux de véhicules
+     */
+    @GetMapping("prix")
+    public Flux<Vehicule> findAllByPrix(@RequestParam String prix) {
+        return service.findAllByPrix(prix);
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule en fonction de son status de location<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/status?status=<span style="color:orange">status</span>
+     *
+     * @param status Le status de location (Loué, Disponible)
+     * @return Un flux de véhicules
+     */
+    @GetMapping("status")
+    public Flux<Vehicule> findAllByStatus(@RequestParam String status) {
+        return service.findAllByStatus(status);
+    }
+
+    /**
+     * Cette fonction permet de mettre à jour le véhicule grâce à son id<br>
+     * <b>Requête Postman en PUT</b> : localhost:8080/vehicules/<span style="color:orange">id</span>
+     *
+     * @param vehicule Le véhicule modifié
+     * @param id L'id du véhicule
+     * @return Le véhicule mis à jour
+     */
+    @PutMapping("{id}")
+    public Mono<Vehicule> update(@RequestBody Vehicule vehicule, @PathVariable String id) {
+        return service.update(vehicule, id);
+    }
+
+    /**
+     * Cette fonction permet de retrouver les véhicules libres sur toute une période<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/disponibles?debut=<span style="color:orange">debut</span>&fin=<span style="color:orange">fin</span>
+     *
+     * @param debut La date de début (Format : "YYYY-MM-DD")
+     * @param fin   La date de fin (Format : "YYYY-MM-DD")
+     * @return Un flux de véhicules
+     */
+    @GetMapping(value = "disponibles", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Vehicule> findAllDisponibles(@RequestParam LocalDate debut, @RequestParam LocalDate fin) {
+        return service.findAllDisponibles(debut, fin);
+    }
+
+    /**
+     * Cette fonction permet de consulter les compteurs du cache des véhicules (succès, échecs, évictions)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/cache
+     *
+     * @return Les compteurs du cache par index
+     */
+    @GetMapping("cache")
+    public Map<String, Map<String, Long>> statistiquesCache() {
+        return service.statistiquesCache();
+    }
+}
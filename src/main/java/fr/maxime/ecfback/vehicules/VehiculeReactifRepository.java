@@ -0,0 +1,23 @@
+package fr.maxime.ecfback.vehicules;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface VehiculeReactifRepository extends ReactiveMongoRepository<Vehicule, String> {
+
+    Flux<Vehicule> findAllByMarque(String marque);
+    Flux<Vehicule> findAllByModele(String modele);
+    Flux<Vehicule> findAllByMarqueAndModele(String marque, String modele);
+    Flux<Vehicule> findAllByType(String type);
+    Mono<Vehicule> findByImmatriculation(String immatriculation);
+    Flux<Vehicule> findAllByEtat(String etat);
+    Flux<Vehicule> findAllByPrix(String prix);
+    Flux<Vehicule> findAllByStatus(String status);
+    Flux<Vehicule> findAllBy(Pageable pageable);
+    Flux<Vehicule> findAllByIdNotIn(Collection<String> ids);
+
+}
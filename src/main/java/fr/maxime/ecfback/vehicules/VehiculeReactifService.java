@@ -0,0 +1,233 @@
+package fr.maxime.ecfback.vehicules;
+
+import fr.maxime.ecfback.commun.Pagination;
+import fr.maxime.ecfback.commun.Projection;
+import fr.maxime.ecfback.disponibilites.DisponibiliteService;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Service des véhicules de la pile réactive (profil "reactif") : mêmes règles que VehiculeServiceImpl,
+ * avec le driver MongoDB réactif pour les lectures.<br>
+ * Les écritures passent par VehiculeServiceImpl, exécutées hors de la boucle d'événements : elles invalident le cache
+ * partagé avec la pile bloquante, mettent à jour l'index de recherche et sont ajoutées au journal comme celles de la pile
+ * bloquante.
+ */
+@Service
+@Profile("reactif")
+public class VehiculeReactifService {
+
+    Logger logger = LoggerFactory.getLogger(VehiculeReactifService.class);
+
+    private final VehiculeReactifRepository repository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final VehiculeServiceImpl vehiculeService;
+    private final VehiculeCache cache;
+    private final DisponibiliteService disponibiliteService;
+
+    public VehiculeReactifService(VehiculeReactifRepository repository,
+                                  ReactiveMongoTemplate mongoTemplate,
+                                  VehiculeServiceImpl vehiculeService,
+                                  VehiculeCache cache,
+                                  DisponibiliteService disponibiliteService) {
+        logger.info("Création du service Vehicule réactif");
+        this.repository = repository;
+        this.mongoTemplate = mongoTemplate;
+        this.vehiculeService = vehiculeService;
+        this.cache = cache;
+        this.disponibiliteService = disponibiliteService;
+    }
+
+    /**
+     * Cette fonction permet de récupérer tous les véhicules au fil du curseur MongoDB<br>
+     * Le curseur n'avance qu'à la demande du client (backpressure)
+     * @return un flux de véhicules
+     */
+    public Flux<Vehicule> findAll() {
+        return repository.findAll();
+    }
+
+    /**
+     * Cette fonction permet de récupérer une page de véhicules triée par id
+     * @param after L'id du dernier vehicule de la page précédente (absent pour la première page)
+     * @param limit Le nombre de véhicules de la page
+     * @return un flux de véhicules
+     */
+    public Flux<Vehicule> findPage(String after, Integer limit) {
+        return mongoTemplate.find(Pagination.apres(after, limit), Vehicule.class);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les véhicules réduits aux champs demandés (projection MongoDB, voir Projection)
+     * @param fields Les champs demandés, séparés par des virgules (voir VehiculeServiceImpl.CHAMPS)
+     * @param after L'id du dernier élément de la page précédente (optionnel)
+     * @param limit Le nombre d'éléments de la page (optionnel, tous sans limit ni after)
+     * @return un flux de véhicules réduits aux champs demandés
+     */
+    public Flux<Map<String, Object>> findAllChamps(String fields, String after, Integer limit) {
+        return Flux.defer(() -> {
+            Projection projection = Projection.de(fields, VehiculeServiceImpl.CHAMPS);
+            Query query = limit == null && after == null ? new Query() : Pagination.apres(after, limit);
+            return mongoTemplate.query(Vehicule.class).as(Document.class).matching(projection.appliquer(query)).all()
+                    .map(projection::lire);
+        });
+    }
+
+    /**
+     * Cette fonction permet de sauvegarder un véhicule, une immatriculation déjà utilisée retourne une erreur 409 - CONFLICT
+     * @param vehicule Un véhicule
+     * @return Le vehicule enregistré dans la base de données
+     */
+    public Mono<Vehicule> save(Vehicule vehicule) {
+        return Mono.fromCallable(() -> vehiculeService.save(vehicule)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Cette fonction permet de retrouver un véhicule en passant par son id, 404 - NOT_FOUND s'il n'existe pas
+     * @param id L'id du véhicule
+     * @return le véhicule recherché
+     */
+    public Mono<Vehicule> findById(String id) {
+        return repository.findById(id).switchIfEmpty(Mono.error(() -> {
+            logger.warn("Id invalide : " + id);
+            return new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }));
+    }
+
+    /**
+     * Cette fonction permet de récupérer en une seule requête les véhicules correspondant à une liste d'ids
+     * @param ids Les ids des véhicules
+     * @return un flux de véhicules
+     */
+    public Flux<Vehicule> findAllById(Collection<String> ids) {
+        return repository.findAllById(ids);
+    }
+
+    /**
+     * Cette fonction permet de mettre à jour le véhicule grâce à son id
+     * @param vehicule Le véhicule modifié
+     * @param id L'id du véhicule
+     * @return Le véhicule mis à jour
+     */
+    public Mono<Vehicule> update(Vehicule vehicule, String id) {
+        return Mono.fromCallable(() -> vehiculeService.update(vehicule, id)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Cette fonction permet de supprimer un véhicule en passant par son id
+     * @param id L'id du véhicule à supprimer
+     */
+    public Mono<Void> deleteById(String id) {
+        return Mono.<Void>fromRunnable(() -> vehiculeService.deleteById(id)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Cette fonction permet de rechercher des véhicules par texte libre, classés par pertinence (voir VehiculeServiceImpl)<br>
+     * L'index de recherche est chargé au premier appel avec le driver bloquant : la recherche est faite hors de la boucle
+     * d'événements
+     * @param texte Le texte recherché
+     * @param page Le numéro de la page, à partir de 0 (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel)
+     * @return un flux de véhicules
+     */
+    public Flux<Vehicule> rechercher(String texte, Integer page, Integer limit) {
+        return Mono.fromCallable(() -> vehiculeService.rechercher(texte, page, limit))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(vehicules -> vehicules);
+    }
+
+    /**
+     * Cette fonction permet de filtrer les véhicules sur plusieurs critères à la fois, avec la requête de
+     * VehiculeServiceImpl.filtrer (index du critère filtré, pagination par curseur sur l'id)
+     * @param filtre Les critères (tous optionnels)
+     * @param after L'id du dernier véhicule de la page précédente (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel)
+     * @return un flux de véhicules
+     */
+    public Flux<Vehicule> filtrer(FiltreVehicules filtre, String after, Integer limit) {
+        return Flux.defer(() -> mongoTemplate.find(VehiculeServiceImpl.requeteFiltre(filtre, after, limit), Vehicule.class));
+    }
+
+    /**
+     * Cette fonction permet de filtrer les véhicules comme filtrer, réduits aux champs demandés (projection MongoDB)
+     * @param filtre Les critères (tous optionnels)
+     * @param fields Les champs demandés, séparés par des virgules (voir VehiculeServiceImpl.CHAMPS)
+     * @param after L'id du dernier véhicule de la page précédente (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel)
+     * @return un flux de véhicules réduits aux champs demandés
+     */
+    public Flux<Map<String, Object>> filtrerChamps(FiltreVehicules filtre, String fields, String after, Integer limit) {
+        return Flux.defer(() -> {
+            Projection projection = Projection.de(fields, VehiculeServiceImpl.CHAMPS);
+            return mongoTemplate.query(Vehicule.class).as(Document.class)
+                    .matching(projection.appliquer(VehiculeServiceImpl.requeteFiltre(filtre, after, limit))).all()
+                    .map(projection::lire);
+        });
+    }
+
+    public Flux<Vehicule> findAllByMarque(String marque) {
+        return repository.findAllByMarque(marque);
+    }
+
+    public Flux<Vehicule> findAllByModele(String modele) {
+        return repository.findAllByModele(modele);
+    }
+
+    public Flux<Vehicule> findAllByMarqueAndModele(String marque, String modele) {
+        return repository.findAllByMarqueAndModele(marque, modele);
+    }
+
+    public Flux<Vehicule> findAllByType(String type) {
+        return repository.findAllByType(type);
+    }
+
+    public Mono<Vehicule> findByImmatriculation(String immatriculation) {
+        return repository.findByImmatriculation(immatriculation);
+    }
+
+    public Flux<Vehicule> findAllByEtat(String etat) {
+        return repository.findAllByEtat(etat);
+    }
+
+    public Flux<Vehicule> findAllByPrix(String prix) {
+        return repository.findAllByPrix(prix);
+    }
+
+    public Flux<Vehicule> findAllByStatus(String status) {
+        return repository.findAllByStatus(status);
+    }
+
+    /**
+     * Cette fonction permet de retrouver les véhicules libres sur toute la période [debut, fin[<br>
+     * Le premier appel charge l'index des disponibilités avec le driver bloquant : il est fait hors de la boucle d'événements
+     * @param debut La date de début
+     * @param fin La date de fin
+     * @return un flux de véhicules
+     */
+    public Flux<Vehicule> findAllDisponibles(LocalDate debut, LocalDate fin) {
+        if (!fin.isAfter(debut)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "La date de fin doit être après la date de début"));
+        }
+        return Mono.fromCallable(() -> disponibiliteService.vehiculesOccupes(debut, fin))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(repository::findAllByIdNotIn);
+    }
+
+    public Map<String, Map<String, Long>> statistiquesCache() {
+        return cache.statistiques();
+    }
+}
@@ -1,8 +1,11 @@
 package fr.maxime.ecfback.vehicules;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface VehiculeRepository extends MongoRepository<Vehicule, String> {
 
@@ -14,5 +17,8 @@ public interface VehiculeRepository extends MongoRepository<Vehicule, String> {
     List<Vehicule> findAllByEtat(String etat);
     List<Vehicule> findAllByPrix(String prix);
     List<Vehicule> findAllByStatus(String status);
+    List<Vehicule> findAllBy(Pageable pageable);
+    Stream<Vehicule> streamAllBy();
+    List<Vehicule> findAllByIdNotIn(Collection<String> ids);
 
 }
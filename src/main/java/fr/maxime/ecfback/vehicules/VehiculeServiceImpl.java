@@ -1,24 +1,70 @@
 package fr.maxime.ecfback.vehicules;
 
+import fr.maxime.ecfback.commun.ImportEnMasse;
+import fr.maxime.ecfback.commun.Pagination;
+import fr.maxime.ecfback.commun.Projection;
+import fr.maxime.ecfback.commun.ResultatImport;
+import fr.maxime.ecfback.disponibilites.DisponibiliteService;
+import fr.maxime.ecfback.journal.EvenementJournal;
+import fr.maxime.ecfback.journal.Journal;
+import io.micrometer.core.annotation.Timed;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Service
+@Timed(value = "ecfback.service", description = "Durée des méthodes des services")
 public class VehiculeServiceImpl implements VehiculeService {
 
     Logger logger = LoggerFactory.getLogger(VehiculeServiceImpl.class);
 
+    /** Les champs d'un véhicule qu'une liste peut demander avec fields= */
+    public static final List<String> CHAMPS = List.of("id", "marque", "modele", "immatriculation", "type", "prix", "etat", "status");
+
     private final VehiculeRepository repository;
+    private final MongoTemplate mongoTemplate;
+    private final VehiculeCache cache;
+    private final RechercheVehicules recherche;
+    private final DisponibiliteService disponibiliteService;
+    private final ImportEnMasse importEnMasse;
+    private final Journal journal;
 
-    public VehiculeServiceImpl(VehiculeRepository repository) {
+    public VehiculeServiceImpl(VehiculeRepository repository,
+                               MongoTemplate mongoTemplate,
+                               VehiculeCache cache,
+                               RechercheVehicules recherche,
+                               DisponibiliteService disponibiliteService,
+                               ImportEnMasse importEnMasse,
+                               Journal journal) {
         logger.info("Création du service Vehicule");
         this.repository = repository;
+        this.mongoTemplate = mongoTemplate;
+        this.cache = cache;
+        this.recherche = recherche;
+        this.disponibiliteService = disponibiliteService;
+        this.importEnMasse = importEnMasse;
+        this.journal = journal;
     }
 
     /**
@@ -31,6 +77,42 @@ public class VehiculeServiceImpl implements VehiculeService {
         return repository.findAll();
     }
 
+    /**
+     * Cette fonction permet de récupérer une page de véhicules triée par id<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules?limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     * @param after L'id du dernier vehicule de la page précédente (absent pour la première page)
+     * @param limit Le nombre de véhicules de la page
+     * @return une liste de véhicules
+     */
+    public List<Vehicule> findPage(String after, Integer limit) {
+        return mongoTemplate.find(Pagination.apres(after, limit), Vehicule.class);
+    }
+
+    /**
+     * Cette fonction permet de récupérer les véhicules réduits aux champs demandés<br>
+     * Les autres champs ne sont pas lus en base (projection MongoDB) : les documents sont renvoyés sans passer par l'entité<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules?fields=<span style="color:orange">id,marque,modele,prix</span>&limit=<span style="color:orange">limit</span>&after=<span style="color:orange">after</span>
+     * @param fields Les champs demandés, séparés par des virgules (voir CHAMPS)
+     * @param after L'id du dernier véhicule de la page précédente (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel, tous les véhicules sans limit ni after)
+     * @return une liste de véhicules réduits aux champs demandés
+     */
+    public List<Map<String, Object>> findAllChamps(String fields, String after, Integer limit) {
+        Projection projection = Projection.de(fields, CHAMPS);
+        Query query = limit == null && after == null ? new Query() : Pagination.apres(after, limit);
+        return mongoTemplate.query(Vehicule.class).as(Document.class).matching(projection.appliquer(query)).all()
+                .stream().map(projection::lire).toList();
+    }
+
+    /**
+     * Cette fonction permet de parcourir tous les véhicules au fil du curseur MongoDB<br>
+     * Le flux doit être fermé par l'appelant
+     * @return un flux de véhicules
+     */
+    public Stream<Vehicule> stream() {
+        return repository.streamAllBy();
+    }
+
     /**
      * Cette fonction permet de sauvegarder un nouveau véhicule en base de données<br>
      * <b>Requête Postman en POST</b> : localhost:8080/vehicules
@@ -39,21 +121,54 @@ public class VehiculeServiceImpl implements VehiculeService {
      */
     @Override
     public Vehicule save(Vehicule entity) {
-        return repository.save(entity);
+        // Journalisé comme une création sans relire la base : seul update() journalise une modification
+        return this.enregistrer(entity, EvenementJournal.CREATION);
+    }
+
+    /**
+     * Cette fonction permet d'enregistrer en une fois un grand nombre de véhicules (tableau JSON ou NDJSON)<br>
+     * Les véhicules sont insérés par lots, une immatriculation déjà utilisée rejette seulement le véhicule concerné<br>
+     * <b>Requête Postman en POST</b> : localhost:8080/vehicules/bulk
+     * @param corps Le corps de la requête
+     * @return Le bilan de l'import
+     */
+    public ResultatImport importer(InputStream corps) {
+        ResultatImport resultat = importEnMasse.importer(corps, Vehicule.class,
+                vehicule -> journal.enregistrer(Journal.VEHICULE, vehicule.getId(), EvenementJournal.CREATION, vehicule));
+        if (resultat.getInseres() > 0) {
+            recherche.recharger();
+        }
+        return resultat;
     }
 
     /**
      * Cette fonction permet de retrouver un véhicule en passant par son id<br>
+     * Le véhicule est lu dans le cache, la base n'est interrogée qu'en cas d'absence<br>
      * <b>Requête Postman en GET</b> : localhost:8080/vehicules/<span style="color:orange">id</span>
      * @param id L'id du véhicule
      * @return le véhicule recherché
      */
     @Override
     public Vehicule findById(String id) {
-        return repository.findById(id).orElseThrow(()-> {
-            logger.warn("Id invalide : " + id);
+        return cache.findById(id, cle -> repository.findById(cle).orElseThrow(()-> {
+            logger.warn("Id invalide : " + cle);
             return new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }));
+    }
+
+    /**
+     * Cette fonction permet de récupérer en une seule requête les véhicules correspondant à une liste d'ids<br>
+     * Seuls les véhicules absents du cache sont lus en base
+     * @param ids Les ids des véhicules
+     * @return Une liste de véhicules
+     */
+    public List<Vehicule> findAllById(Collection<String> ids) {
+        Map<String, Vehicule> vehicules = cache.findAllById(ids, manquants -> {
+            Map<String, Vehicule> lus = new HashMap<>();
+            repository.findAllById(new ArrayList<String>(manquants)).forEach(vehicule -> lus.put(vehicule.getId(), vehicule));
+            return lus;
         });
+        return new ArrayList<>(vehicules.values());
     }
 
     /**
@@ -68,7 +183,27 @@ public class VehiculeServiceImpl implements VehiculeService {
             logger.warn("In invalide : " + id + "id vehicule : " + vehicule.getId() );
             throw new ResponseStatusException(HttpStatus.NOT_FOUND);
         }
-        return this.repository.save(vehicule);
+        return this.enregistrer(vehicule, EvenementJournal.MODIFICATION);
+    }
+
+    /**
+     * Cette fonction enregistre le véhicule en base de données et ajoute l'écriture au journal<br>
+     * L'immatriculation étant unique, un doublon retourne une erreur 409 - CONFLICT
+     * @param vehicule Le véhicule à enregistrer
+     * @param operation EvenementJournal.CREATION ou MODIFICATION
+     * @return Le véhicule enregistré
+     */
+    private Vehicule enregistrer(Vehicule vehicule, String operation) {
+        try {
+            Vehicule enregistre = this.repository.save(vehicule);
+            cache.invalider(enregistre.getId());
+            recherche.indexer(enregistre);
+            journal.enregistrer(Journal.VEHICULE, enregistre.getId(), operation, enregistre);
+            return enregistre;
+        } catch (DuplicateKeyException e) {
+            logger.warn("Immatriculation déjà utilisée : " + vehicule.getImmatriculation());
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Immatriculation déjà utilisée");
+        }
     }
 
     /**
@@ -79,6 +214,27 @@ public class VehiculeServiceImpl implements VehiculeService {
     @Override
     public void deleteById(String id) {
         repository.deleteById(id);
+        cache.invalider(id);
+        recherche.retirer(id);
+        journal.enregistrer(Journal.VEHICULE, id, EvenementJournal.SUPPRESSION, null);
+    }
+
+    /**
+     * Cette fonction permet de rechercher des véhicules par texte libre sur la marque, le modèle, le type
+     * et l'immatriculation ("peug 208", plaque partielle)<br>
+     * Chaque mot du texte doit commencer un mot du véhicule, les résultats sont classés par pertinence<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/recherche?q=<span style="color:orange">texte</span>&page=<span style="color:orange">page</span>&limit=<span style="color:orange">limit</span>
+     * @param texte Le texte recherché
+     * @param page Le numéro de la page, à partir de 0 (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel)
+     * @return Une liste de véhicules
+     */
+    public List<Vehicule> rechercher(String texte, Integer page, Integer limit) {
+        if (RechercheVehicules.mots(texte).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Le texte recherché doit contenir une lettre ou un chiffre");
+        }
+        Pageable pageable = Pagination.page(page, limit, Sort.unsorted());
+        return recherche.rechercher(texte, pageable.getOffset(), pageable.getPageSize());
     }
 
     /**
@@ -129,7 +285,104 @@ public class VehiculeServiceImpl implements VehiculeService {
      * @return Le véhicule recherché
      */
     public Vehicule findByImmatriculation(String immatriculation) {
-        return repository.findByImmatriculation(immatriculation);
+        return cache.findByImmatriculation(immatriculation, repository::findByImmatriculation);
+    }
+
+    /**
+     * Cette fonction permet de filtrer les véhicules sur plusieurs critères à la fois, en une seule requête MongoDB<br>
+     * Chaque critère renseigné est ajouté à la requête (égalité, ou intervalle pour le prix). La liste est paginée
+     * par curseur sur l'id : la requête désigne l'index du critère filtré (voir index), sans quoi MongoDB préfère
+     * l'index _id qui évite le tri et parcourt toute la collection pour un filtre sélectif<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/search?marque=<span style="color:orange">marque</span>&type=<span style="color:orange">type</span>&prixMin=<span style="color:orange">prixMin</span>&prixMax=<span style="color:orange">prixMax</span>
+     * @param filtre Les critères (tous optionnels)
+     * @param after L'id du dernier véhicule de la page précédente (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel)
+     * @return Une liste de véhicules
+     */
+    public List<Vehicule> filtrer(FiltreVehicules filtre, String after, Integer limit) {
+        return mongoTemplate.find(requeteFiltre(filtre, after, limit), Vehicule.class);
+    }
+
+    /**
+     * Cette fonction permet de filtrer les véhicules comme filtrer, réduits aux champs demandés (projection MongoDB)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/search?type=<span style="color:orange">type</span>&fields=<span style="color:orange">id,marque,modele,prix</span>
+     * @param filtre Les critères (tous optionnels)
+     * @param fields Les champs demandés, séparés par des virgules (voir CHAMPS)
+     * @param after L'id du dernier véhicule de la page précédente (optionnel)
+     * @param limit Le nombre de véhicules de la page (optionnel)
+     * @return Une liste de véhicules réduits aux champs demandés
+     */
+    public List<Map<String, Object>> filtrerChamps(FiltreVehicules filtre, String fields, String after, Integer limit) {
+        Projection projection = Projection.de(fields, CHAMPS);
+        return mongoTemplate.query(Vehicule.class).as(Document.class)
+                .matching(projection.appliquer(requeteFiltre(filtre, after, limit))).all()
+                .stream().map(projection::lire).toList();
+    }
+
+    /**
+     * Cette fonction construit la requête de filtrer, partagée avec la pile réactive
+     */
+    static Query requeteFiltre(FiltreVehicules filtre, String after, Integer limit) {
+        if (filtre.getPrixMin() != null && filtre.getPrixMax() != null && filtre.getPrixMin() > filtre.getPrixMax()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "prixMin doit être inférieur ou égal à prixMax");
+        }
+        Query query = Pagination.apres(after, limit);
+        egal(query, "marque", filtre.getMarque());
+        egal(query, "modele", filtre.getModele());
+        egal(query, "type", filtre.getType());
+        egal(query, "etat", filtre.getEtat());
+        egal(query, "status", filtre.getStatus());
+        if (filtre.getPrixMin() != null || filtre.getPrixMax() != null) {
+            Criteria prix = where("prix");
+            if (filtre.getPrixMin() != null) {
+                prix.gte(filtre.getPrixMin());
+            }
+            if (filtre.getPrixMax() != null) {
+                prix.lte(filtre.getPrixMax());
+            }
+            query.addCriteria(prix);
+        }
+        Document index = index(filtre);
+        return index == null ? query : query.withHint(index);
+    }
+
+    /**
+     * Cette fonction choisit l'index parcouru par filtrer, parmi ceux des critères renseignés et dans l'ordre
+     * où ils sont en général les plus sélectifs : marque (index marque_modele), modele, type, prix, etat puis status<br>
+     * Le tri par _id d'une page se fait alors sur les seuls véhicules filtrés
+     * @param filtre Les critères
+     * @return Les clés de l'index, null si aucun critère n'est renseigné (parcours de l'index _id)
+     */
+    static Document index(FiltreVehicules filtre) {
+        if (renseigne(filtre.getMarque())) {
+            return new Document("marque", 1).append("modele", 1);
+        }
+        if (renseigne(filtre.getModele())) {
+            return new Document("modele", 1);
+        }
+        if (renseigne(filtre.getType())) {
+            return new Document("type", 1);
+        }
+        if (filtre.getPrixMin() != null || filtre.getPrixMax() != null) {
+            return new Document("prix", 1);
+        }
+        if (renseigne(filtre.getEtat())) {
+            return new Document("etat", 1);
+        }
+        if (renseigne(filtre.getStatus())) {
+            return new Document("status", 1);
+        }
+        return null;
+    }
+
+    private static boolean renseigne(String valeur) {
+        return valeur != null && !valeur.isBlank();
+    }
+
+    private static void egal(Query query, String champ, String valeur) {
+        if (renseigne(valeur)) {
+            query.addCriteria(where(champ).is(valeur));
+        }
     }
 
     /**
@@ -161,4 +414,28 @@ public class VehiculeServiceImpl implements VehiculeService {
     public List<Vehicule> findAllByStatus(String status) {
         return repository.findAllByStatus(status);
     }
+
+    /**
+     * Cette fonction permet de retrouver les véhicules libres sur toute la période [debut, fin[<br>
+     * Les véhicules occupés sont donnés par l'index des disponibilités, sans parcourir les locations<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/disponibles?debut=<span style="color:orange">debut</span>&fin=<span style="color:orange">fin</span>
+     * @param debut La date de début (Format : "YYYY-MM-DD")
+     * @param fin La date de fin (Format : "YYYY-MM-DD")
+     * @return Une liste de véhicules
+     */
+    public List<Vehicule> findAllDisponibles(LocalDate debut, LocalDate fin) {
+        if (!fin.isAfter(debut)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La date de fin doit être après la date de début");
+        }
+        return repository.findAllByIdNotIn(disponibiliteService.vehiculesOccupes(debut, fin));
+    }
+
+    /**
+     * Cette fonction permet de consulter les compteurs du cache des véhicules (succès, échecs, évictions)<br>
+     * <b>Requête Postman en GET</b> : localhost:8080/vehicules/cache
+     * @return Les compteurs du cache par index
+     */
+    public Map<String, Map<String, Long>> statistiquesCache() {
+        return cache.statistiques();
+    }
 }
@@ -3,7 +3,7 @@ package fr.maxime.ecfback;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "ecfback.mongo.index-creation=false")
 class EcfbackApplicationTests {
 
     @Test
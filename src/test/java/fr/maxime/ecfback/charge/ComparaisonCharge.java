@@ -0,0 +1,169 @@
+package fr.maxime.ecfback.charge;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test de charge comparatif : les mêmes routes sont appelées sur chaque pile (Spring MVC, WebFlux, threads virtuels...)
+ * par un nombre fixe de clients qui enchaînent leurs requêtes, puis le débit et les percentiles de latence sont affichés.<br>
+ * Les applications doivent tourner sur la même base, par exemple :
+ * <pre>
+ * java -jar target/ecfback-0.0.1-SNAPSHOT.jar --server.port=8080
+ * java -jar target/ecfback-0.0.1-SNAPSHOT.jar --server.port=8081 --spring.profiles.active=reactif
+ * java -jar target/ecfback-0.0.1-SNAPSHOT.jar --server.port=8082 --spring.profiles.active=virtuel   (Java 21)
+ * mvn test-compile
+ * java -cp target/test-classes fr.maxime.ecfback.charge.ComparaisonCharge http://localhost:8080 http://localhost:8081 -c 512 -d 30
+ * java -cp target/test-classes fr.maxime.ecfback.charge.ComparaisonCharge http://localhost:8080 http://localhost:8082 -c 100,1000,10000
+ * </pre>
+ * Options : -c nombre(s) de clients simultanés séparés par des virgules (256), -d durée d'une mesure en secondes (30),
+ * -w durée de la chauffe (5). Au-delà de quelques milliers de clients, augmenter la limite de fichiers ouverts (ulimit -n).
+ * Les arguments commençant par "/" remplacent la liste des routes mesurées.
+ */
+public final class ComparaisonCharge {
+
+    private static final List<String> ROUTES = List.of(
+            "/vehicules?limit=100",
+            "/vehicules/marque?marque=Peugeot",
+            "/locataires?limit=100",
+            "/locations?limit=100",
+            "/locations?activeFrom=2023-06-01&activeTo=2023-06-30&limit=100");
+
+    private ComparaisonCharge() {
+    }
+
+    public static void main(String[] args) {
+        List<String> piles = new ArrayList<>();
+        List<String> routes = new ArrayList<>();
+        int[] niveaux = {256};
+        int duree = 30;
+        int chauffe = 5;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-c" -> niveaux = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "-d" -> duree = Integer.parseInt(args[++i]);
+                case "-w" -> chauffe = Integer.parseInt(args[++i]);
+                default -> (args[i].startsWith("/") ? routes : piles).add(args[i]);
+            }
+        }
+        if (piles.isEmpty()) {
+            piles = List.of("http://localhost:8080", "http://localhost:8081");
+        }
+        if (routes.isEmpty()) {
+            routes = ROUTES;
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        System.out.printf("%d s par mesure%n", duree);
+        System.out.printf("%-60s %-24s %8s %10s %8s %10s %9s %9s %9s%n",
+                "route", "pile", "clients", "requêtes", "erreurs", "req/s", "p50 ms", "p99 ms", "max ms");
+        for (String route : routes) {
+            for (int clients : niveaux) {
+                for (String pile : piles) {
+                    URI uri = URI.create(pile + route);
+                    mesurer(client, uri, clients, chauffe);
+                    Mesure mesure = mesurer(client, uri, clients, duree);
+                    System.out.printf("%-60s %-24s %8d %10d %8d %10.0f %9.2f %9.2f %9.2f%n",
+                            route, pile, clients, mesure.requetes(), mesure.erreurs(), mesure.requetes() / (double) duree,
+                            mesure.percentile(0.50), mesure.percentile(0.99), mesure.percentile(1.0));
+                    if (mesure.premiereErreur() != null) {
+                        System.out.println("    première erreur : " + mesure.premiereErreur());
+                    }
+                }
+            }
+        }
+    }
+
+    private static Mesure mesurer(HttpClient client, URI uri, int clients, int secondes) {
+        HttpRequest requete = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+        long fin = System.nanoTime() + secondes * 1_000_000_000L;
+        Latences[] latences = new Latences[clients];
+        CompletableFuture<?>[] boucles = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            latences[i] = new Latences();
+            boucles[i] = boucle(client, requete, fin, latences[i]);
+        }
+        CompletableFuture.allOf(boucles).join();
+        return Mesure.de(latences);
+    }
+
+    /**
+     * Un client : chaque requête part dès que la réponse précédente est reçue (charge en boucle fermée)
+     */
+    private static CompletableFuture<Void> boucle(HttpClient client, HttpRequest requete, long fin, Latences latences) {
+        if (System.nanoTime() >= fin) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long debut = System.nanoTime();
+        return client.sendAsync(requete, HttpResponse.BodyHandlers.discarding())
+                .handle((reponse, erreur) -> {
+                    latences.ajouter(System.nanoTime() - debut,
+                            erreur != null ? String.valueOf(erreur.getCause() != null ? erreur.getCause() : erreur)
+                                    : reponse.statusCode() >= 400 ? "HTTP " + reponse.statusCode() : null);
+                    return null;
+                })
+                .thenCompose(ignore -> boucle(client, requete, fin, latences));
+    }
+
+    /**
+     * Latences d'un client, en nanosecondes. Ses requêtes étant successives, aucune synchronisation n'est nécessaire
+     */
+    private static final class Latences {
+        private long[] valeurs = new long[1024];
+        private int taille;
+        private long erreurs;
+        private String premiereErreur;
+
+        void ajouter(long latence, String erreur) {
+            if (taille == valeurs.length) {
+                valeurs = Arrays.copyOf(valeurs, taille * 2);
+            }
+            valeurs[taille++] = latence;
+            if (erreur != null) {
+                erreurs++;
+                if (premiereErreur == null) {
+                    premiereErreur = erreur;
+                }
+            }
+        }
+    }
+
+    private record Mesure(long[] latences, long erreurs, String premiereErreur) {
+
+        static Mesure de(Latences[] clients) {
+            long[] toutes = new long[Arrays.stream(clients).mapToInt(latences -> latences.taille).sum()];
+            long erreurs = 0;
+            String premiereErreur = null;
+            int position = 0;
+            for (Latences latences : clients) {
+                System.arraycopy(latences.valeurs, 0, toutes, position, latences.taille);
+                position += latences.taille;
+                erreurs += latences.erreurs;
+                premiereErreur = premiereErreur != null ? premiereErreur : latences.premiereErreur;
+            }
+            Arrays.sort(toutes);
+            return new Mesure(toutes, erreurs, premiereErreur);
+        }
+
+        long requetes() {
+            return latences.length;
+        }
+
+        double percentile(double p) {
+            if (latences.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * latences.length) - 1;
+            return latences[Math.max(0, index)] / 1e6;
+        }
+    }
+}
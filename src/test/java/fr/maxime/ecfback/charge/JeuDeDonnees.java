@@ -0,0 +1,116 @@
+package fr.maxime.ecfback.charge;
+
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Jeu de données reproductible pour les benchmarks et les tests de charge.<br>
+ * Les valeurs sont déterministes (immatriculation(i), nom(i)...) pour que les mesures puissent cibler
+ * des documents existants sans les relire. Les locations d'un même véhicule ne se chevauchent pas :
+ * le jeu reste valide pour le calcul de disponibilité.
+ */
+public final class JeuDeDonnees {
+
+    public static final List<String> MARQUES = List.of("Peugeot", "Renault", "Citroen", "Toyota", "Volkswagen",
+            "Fiat", "Ford", "Dacia", "Opel", "Kia");
+    public static final List<String> TYPES = List.of("Citadine", "Berline", "SUV", "Utilitaire", "Break");
+    public static final LocalDate DEBUT = LocalDate.of(2023, 1, 1);
+
+    /** Nombre de noms de famille distincts : chaque nom est porté par environ locataires / NOMS locataires */
+    public static final int NOMS = 200;
+
+    private static final int TAILLE_LOT = 1000;
+
+    private final List<Vehicule> vehicules;
+    private final List<Locataire> locataires;
+    private final int locations;
+
+    private JeuDeDonnees(List<Vehicule> vehicules, List<Locataire> locataires, int locations) {
+        this.vehicules = vehicules;
+        this.locataires = locataires;
+        this.locations = locations;
+    }
+
+    /**
+     * Cette fonction insère le jeu de données dans une base vide
+     * @param mongoTemplate L'accès à la base
+     * @param nbVehicules Le nombre de véhicules
+     * @param nbLocataires Le nombre de locataires
+     * @param nbLocations Le nombre de locations, réparties sur tous les véhicules
+     * @param graine La graine du générateur aléatoire (durées, prix, affectation des locataires)
+     * @return Le jeu de données inséré, avec les id générés par MongoDB
+     */
+    public static JeuDeDonnees charger(MongoTemplate mongoTemplate, int nbVehicules, int nbLocataires, int nbLocations, long graine) {
+        Random aleatoire = new Random(graine);
+        List<Vehicule> vehicules = new ArrayList<>(nbVehicules);
+        for (int i = 0; i < nbVehicules; i++) {
+            vehicules.add(new Vehicule(null, MARQUES.get(i % MARQUES.size()), "Modele " + (i % 50),
+                    immatriculation(i), TYPES.get(i % TYPES.size()), 30.0 + aleatoire.nextInt(120), "Bon", "Disponible"));
+        }
+        inserer(mongoTemplate, vehicules, Vehicule.class);
+
+        List<Locataire> locataires = new ArrayList<>(nbLocataires);
+        for (int i = 0; i < nbLocataires; i++) {
+            locataires.add(new Locataire(null, nom(i), "Prenom" + i, "locataire" + i + "@ecf.fr", "motdepasse"));
+        }
+        inserer(mongoTemplate, locataires, Locataire.class);
+
+        // La n-ième location d'un véhicule commence le jour 10 * n : durée de 1 à 7 jours, sans chevauchement
+        List<Location> lot = new ArrayList<>(TAILLE_LOT);
+        for (int i = 0; i < nbLocations; i++) {
+            Vehicule vehicule = vehicules.get(i % nbVehicules);
+            LocalDate dateDebut = DEBUT.plusDays(10L * (i / nbVehicules));
+            LocalDate dateFin = dateDebut.plusDays(1 + aleatoire.nextInt(7));
+            Locataire locataire = locataires.get(aleatoire.nextInt(nbLocataires));
+            lot.add(new Location(null, dateDebut, dateFin,
+                    vehicule.getPrix() * (dateFin.toEpochDay() - dateDebut.toEpochDay()), locataire, vehicule));
+            if (lot.size() == TAILLE_LOT) {
+                mongoTemplate.insert(lot, Location.class);
+                lot.clear();
+            }
+        }
+        if (!lot.isEmpty()) {
+            mongoTemplate.insert(lot, Location.class);
+        }
+        return new JeuDeDonnees(vehicules, locataires, nbLocations);
+    }
+
+    private static <T> void inserer(MongoTemplate mongoTemplate, List<T> documents, Class<T> type) {
+        for (int debut = 0; debut < documents.size(); debut += TAILLE_LOT) {
+            mongoTemplate.insert(documents.subList(debut, Math.min(debut + TAILLE_LOT, documents.size())), type);
+        }
+    }
+
+    /**
+     * @return L'immatriculation du i-ème véhicule
+     */
+    public static String immatriculation(int i) {
+        return String.format("AA-%06d", i);
+    }
+
+    /**
+     * @return Le nom de famille du i-ème locataire
+     */
+    public static String nom(int i) {
+        return "Nom" + (i % NOMS);
+    }
+
+    public List<Vehicule> vehicules() {
+        return vehicules;
+    }
+
+    public List<Locataire> locataires() {
+        return locataires;
+    }
+
+    public int locations() {
+        return locations;
+    }
+}
@@ -0,0 +1,48 @@
+package fr.maxime.ecfback.charge;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Serveur MongoDB en mémoire (mongo-java-server) démarré sur un port libre : le driver et Spring Data l'utilisent
+ * comme une vraie base, sans binaire mongod à télécharger ni service externe.<br>
+ * Il ne connaît pas la commande explain (ecfback.mongo.verification-plans est mis à off) et n'utilise que
+ * les index uniques : les autres requêtes parcourent toute la collection. Les mesures faites sur ce serveur
+ * servent à comparer deux versions de l'application, pas à estimer les latences d'un vrai MongoDB.
+ */
+public final class MongoEnMemoire implements AutoCloseable {
+
+    private final MongoServer serveur;
+    private final String uri;
+
+    public MongoEnMemoire() {
+        this.serveur = new MongoServer(new MemoryBackend());
+        InetSocketAddress adresse = serveur.bind();
+        this.uri = "mongodb://" + adresse.getHostString() + ":" + adresse.getPort() + "/ecfback";
+    }
+
+    /**
+     * @return L'URI de connexion, à passer dans spring.data.mongodb.uri
+     */
+    public String uri() {
+        return uri;
+    }
+
+    /**
+     * @return Les arguments Spring pour démarrer l'application sur ce serveur
+     * (arguments de ligne de commande : ils l'emportent sur application.properties)
+     */
+    public String[] arguments() {
+        return new String[]{
+                "--spring.data.mongodb.uri=" + uri,
+                "--ecfback.mongo.verification-plans=off",
+                "--logging.level.de.bwaldvogel.mongo=error"};
+    }
+
+    @Override
+    public void close() {
+        serveur.shutdownNow();
+    }
+}
@@ -0,0 +1,322 @@
+package fr.maxime.ecfback.charge;
+
+import fr.maxime.ecfback.EcfbackApplication;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Test de charge de bout en bout : l'application démarre sur un MongoDB en mémoire (aucun service externe,
+ * exécutable hors ligne), un jeu de données est chargé puis des clients en boucle fermée envoient un mélange
+ * pondéré de requêtes. Les latences sont enregistrées par scénario dans des histogrammes HdrHistogram.
+ * <pre>
+ * mvn -P charge test-compile exec:exec -Dcharge.options="-c 64 -d 60" -Dcharge.budgets=reservation=200,nom=150
+ * </pre>
+ * Options : -v véhicules (1000), -l locataires (2000), -r locations (20000), -c clients simultanés (32),
+ * -d durée de la mesure en secondes (30), -w durée de la chauffe (10), -m poids des scénarios (voir MIX),
+ * -b budgets de p99 en ms par scénario, -o dossier des histogrammes .hgrm (target/charge).<br>
+ * Les arguments commençant par "--" sont passés à Spring (ex. --spring.profiles.active=virtuel).<br>
+ * Le processus se termine avec le code 1 si un budget est dépassé ou si une requête a échoué :
+ * le test peut servir de barrière avant une mise en production.
+ */
+public final class TestDeCharge {
+
+    private static final String MIX = "vehicule=25,immatriculation=20,marque=10,recherche=10,disponibles=5,nom=25,reservation=15";
+    private static final long LATENCE_MAX = TimeUnit.MINUTES.toNanos(1);
+
+    /** Les réservations du test commencent après les locations du jeu de données : elles ne sont jamais en conflit */
+    private static final LocalDate DEBUT_RESERVATIONS = LocalDate.of(2030, 1, 1);
+
+    private TestDeCharge() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int nbVehicules = 1000;
+        int nbLocataires = 2000;
+        int nbLocations = 20000;
+        int clients = 32;
+        int duree = 30;
+        int chauffe = 10;
+        String mix = MIX;
+        Map<String, Double> budgets = new LinkedHashMap<>();
+        Path dossier = Path.of("target", "charge");
+        List<String> argumentsSpring = new ArrayList<>(List.of("--server.port=0", "--spring.main.banner-mode=off",
+                "--logging.level.root=warn"));
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-v" -> nbVehicules = Integer.parseInt(args[++i]);
+                case "-l" -> nbLocataires = Integer.parseInt(args[++i]);
+                case "-r" -> nbLocations = Integer.parseInt(args[++i]);
+                case "-c" -> clients = Integer.parseInt(args[++i]);
+                case "-d" -> duree = Integer.parseInt(args[++i]);
+                case "-w" -> chauffe = Integer.parseInt(args[++i]);
+                case "-m" -> mix = args[++i];
+                case "-b" -> cleValeurs(args[++i]).forEach((nom, valeur) -> budgets.put(nom, Double.parseDouble(valeur)));
+                case "-o" -> dossier = Path.of(args[++i]);
+                default -> {
+                    if (!args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Option inconnue : " + args[i]);
+                    }
+                    argumentsSpring.add(args[i]);
+                }
+            }
+        }
+
+        // spring-boot-devtools est sur le classpath de test : son redémarrage relancerait ce main
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        boolean reussi;
+        MongoEnMemoire mongo = new MongoEnMemoire();
+        argumentsSpring.addAll(0, List.of(mongo.arguments()));
+        try (mongo; ConfigurableApplicationContext contexte = new SpringApplicationBuilder(EcfbackApplication.class)
+                .run(argumentsSpring.toArray(String[]::new))) {
+            long debutChargement = System.currentTimeMillis();
+            JeuDeDonnees jeu = JeuDeDonnees.charger(contexte.getBean(MongoTemplate.class),
+                    nbVehicules, nbLocataires, nbLocations, 42);
+            System.out.printf("Jeu de données : %d véhicules, %d locataires, %d locations chargés en %d ms%n",
+                    nbVehicules, nbLocataires, nbLocations, System.currentTimeMillis() - debutChargement);
+
+            int port = ((WebServerApplicationContext) contexte).getWebServer().getPort();
+            List<Scenario> scenarios = scenarios("http://localhost:" + port, jeu, cleValeurs(mix));
+            for (String nom : budgets.keySet()) {
+                if (scenarios.stream().noneMatch(scenario -> scenario.nom.equals(nom))) {
+                    throw new IllegalArgumentException("Budget pour un scénario absent du mélange : " + nom);
+                }
+            }
+
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+            System.out.printf("Chauffe : %d s, mesure : %d s, %d clients%n", chauffe, duree, clients);
+            executer(client, scenarios, clients, chauffe);
+            scenarios.forEach(Scenario::reinitialiser);
+            executer(client, scenarios, clients, duree);
+            reussi = rapporter(scenarios, duree, budgets, dossier);
+        }
+        System.exit(reussi ? 0 : 1);
+    }
+
+    private static List<Scenario> scenarios(String base, JeuDeDonnees jeu, Map<String, String> poids) {
+        List<Vehicule> vehicules = jeu.vehicules();
+        List<Locataire> locataires = jeu.locataires();
+        AtomicLong reservations = new AtomicLong();
+        Map<String, Supplier<HttpRequest>> requetes = new LinkedHashMap<>();
+        requetes.put("vehicule", () -> get(base + "/vehicules/" + vehicules.get(aleatoire(vehicules.size())).getId()));
+        requetes.put("immatriculation", () -> get(base + "/vehicules/immatriculation?immatriculation="
+                + JeuDeDonnees.immatriculation(aleatoire(vehicules.size()))));
+        requetes.put("marque", () -> get(base + "/vehicules/marque?marque="
+                + encoder(JeuDeDonnees.MARQUES.get(aleatoire(JeuDeDonnees.MARQUES.size())))));
+        requetes.put("recherche", () -> {
+            // Début de marque suivi d'un numéro de modèle, comme une saisie en cours ("peug 12")
+            String marque = JeuDeDonnees.MARQUES.get(aleatoire(JeuDeDonnees.MARQUES.size()));
+            return get(base + "/vehicules/recherche?limit=20&q="
+                    + encoder(marque.substring(0, Math.min(4, marque.length())) + " " + aleatoire(50)));
+        });
+        requetes.put("disponibles", () -> {
+            LocalDate debut = JeuDeDonnees.DEBUT.plusDays(aleatoire(365));
+            return get(base + "/vehicules/disponibles?debut=" + debut + "&fin=" + debut.plusDays(7));
+        });
+        requetes.put("nom", () -> get(base + "/locations/nom?nom=" + JeuDeDonnees.nom(aleatoire(JeuDeDonnees.NOMS))));
+        requetes.put("reservation", () -> {
+            // Chaque véhicule reçoit des réservations successives de 3 jours espacées de 10 jours
+            long n = reservations.getAndIncrement();
+            LocalDate debut = DEBUT_RESERVATIONS.plusDays(10 * (n / vehicules.size()));
+            String corps = String.format("{\"dateDebut\":\"%s\",\"dateFin\":\"%s\",\"locataire\":{\"id\":\"%s\"},\"vehicule\":{\"id\":\"%s\"}}",
+                    debut, debut.plusDays(3), locataires.get(aleatoire(locataires.size())).getId(),
+                    vehicules.get((int) (n % vehicules.size())).getId());
+            return HttpRequest.newBuilder(URI.create(base + "/locations"))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(corps))
+                    .build();
+        });
+
+        List<Scenario> scenarios = new ArrayList<>();
+        poids.forEach((nom, valeur) -> {
+            Supplier<HttpRequest> requete = requetes.get(nom);
+            if (requete == null) {
+                throw new IllegalArgumentException("Scénario inconnu : " + nom + " (disponibles : " + requetes.keySet() + ")");
+            }
+            int poidsScenario = Integer.parseInt(valeur);
+            if (poidsScenario > 0) {
+                scenarios.add(new Scenario(nom, poidsScenario, requete));
+            }
+        });
+        if (scenarios.isEmpty()) {
+            throw new IllegalArgumentException("Aucun scénario dans le mélange : " + poids);
+        }
+        return scenarios;
+    }
+
+    private static void executer(HttpClient client, List<Scenario> scenarios, int clients, int secondes) {
+        int poidsTotal = scenarios.stream().mapToInt(scenario -> scenario.poids).sum();
+        long fin = System.nanoTime() + secondes * 1_000_000_000L;
+        CompletableFuture<?>[] boucles = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            boucles[i] = boucle(client, scenarios, poidsTotal, fin);
+        }
+        CompletableFuture.allOf(boucles).join();
+    }
+
+    /**
+     * Un client : il tire un scénario selon les poids du mélange et envoie la requête suivante
+     * dès que la réponse précédente est reçue (charge en boucle fermée)
+     */
+    private static CompletableFuture<Void> boucle(HttpClient client, List<Scenario> scenarios, int poidsTotal, long fin) {
+        if (System.nanoTime() >= fin) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Scenario scenario = tirer(scenarios, poidsTotal);
+        long debut = System.nanoTime();
+        return client.sendAsync(scenario.requete.get(), HttpResponse.BodyHandlers.discarding())
+                .handle((reponse, erreur) -> {
+                    scenario.enregistrer(System.nanoTime() - debut,
+                            erreur != null ? String.valueOf(erreur.getCause() != null ? erreur.getCause() : erreur)
+                                    : reponse.statusCode() >= 400 ? "HTTP " + reponse.statusCode() : null);
+                    return null;
+                })
+                .thenCompose(ignore -> boucle(client, scenarios, poidsTotal, fin));
+    }
+
+    private static Scenario tirer(List<Scenario> scenarios, int poidsTotal) {
+        int tirage = aleatoire(poidsTotal);
+        for (Scenario scenario : scenarios) {
+            tirage -= scenario.poids;
+            if (tirage < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    /**
+     * Cette fonction affiche le débit et les percentiles de chaque scénario, écrit leur distribution complète
+     * (fichiers .hgrm, lisibles par HdrHistogram Plotter) et vérifie les budgets
+     * @return true si aucun budget n'est dépassé et qu'aucune requête n'a échoué
+     */
+    private static boolean rapporter(List<Scenario> scenarios, int duree, Map<String, Double> budgets, Path dossier) throws IOException {
+        Files.createDirectories(dossier);
+        Histogram total = new Histogram(LATENCE_MAX, 3);
+        boolean reussi = true;
+        System.out.printf("%-16s %10s %8s %10s %9s %9s %9s %9s %9s %10s%n",
+                "scénario", "requêtes", "erreurs", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "budget");
+        for (Scenario scenario : scenarios) {
+            Histogram histogramme = scenario.recorder.getIntervalHistogram();
+            total.add(histogramme);
+            long erreurs = scenario.erreurs.sum();
+            Double budget = budgets.get(scenario.nom);
+            double p99 = millis(histogramme.getValueAtPercentile(99));
+            boolean respecte = erreurs == 0 && (budget == null || p99 <= budget);
+            reussi &= respecte;
+            System.out.printf("%-16s %10d %8d %10.0f %9.2f %9.2f %9.2f %9.2f %9.2f %10s%n",
+                    scenario.nom, histogramme.getTotalCount(), erreurs, histogramme.getTotalCount() / (double) duree,
+                    millis(histogramme.getValueAtPercentile(50)), millis(histogramme.getValueAtPercentile(90)), p99,
+                    millis(histogramme.getValueAtPercentile(99.9)), millis(histogramme.getMaxValue()),
+                    (budget == null ? "-" : budget + " ms") + (respecte ? "" : " KO"));
+            if (scenario.premiereErreur.get() != null) {
+                System.out.println("    première erreur : " + scenario.premiereErreur.get());
+            }
+            try (PrintStream sortie = new PrintStream(Files.newOutputStream(dossier.resolve(scenario.nom + ".hgrm")))) {
+                histogramme.outputPercentileDistribution(sortie, 1e6);
+            }
+        }
+        System.out.printf("%-16s %10d %8s %10.0f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                "total", total.getTotalCount(), "", total.getTotalCount() / (double) duree,
+                millis(total.getValueAtPercentile(50)), millis(total.getValueAtPercentile(90)),
+                millis(total.getValueAtPercentile(99)), millis(total.getValueAtPercentile(99.9)), millis(total.getMaxValue()));
+        System.out.println("Distributions écrites dans " + dossier.toAbsolutePath());
+        System.out.println(reussi ? "Budgets respectés" : "Budgets dépassés ou requêtes en erreur");
+        return reussi;
+    }
+
+    private static HttpRequest get(String uri) {
+        return HttpRequest.newBuilder(URI.create(uri)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private static Map<String, String> cleValeurs(String liste) {
+        Map<String, String> valeurs = new LinkedHashMap<>();
+        Arrays.stream(liste.split(",")).map(String::trim).filter(element -> !element.isEmpty()).forEach(element -> {
+            String[] cleValeur = element.split("=", 2);
+            if (cleValeur.length != 2) {
+                throw new IllegalArgumentException("Format attendu nom=valeur : " + element);
+            }
+            valeurs.put(cleValeur[0].trim(), cleValeur[1].trim());
+        });
+        return valeurs;
+    }
+
+    private static int aleatoire(int borne) {
+        return ThreadLocalRandom.current().nextInt(borne);
+    }
+
+    private static String encoder(String valeur) {
+        return URLEncoder.encode(valeur, StandardCharsets.UTF_8);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Un type de requête du mélange. Le Recorder et les compteurs acceptent les enregistrements concurrents
+     * des threads du client HTTP
+     */
+    private static final class Scenario {
+        private final String nom;
+        private final int poids;
+        private final Supplier<HttpRequest> requete;
+        private final Recorder recorder = new Recorder(LATENCE_MAX, 3);
+        private final LongAdder erreurs = new LongAdder();
+        private final AtomicReference<String> premiereErreur = new AtomicReference<>();
+
+        Scenario(String nom, int poids, Supplier<HttpRequest> requete) {
+            this.nom = nom;
+            this.poids = poids;
+            this.requete = requete;
+        }
+
+        void enregistrer(long latence, String erreur) {
+            recorder.recordValue(Math.min(latence, LATENCE_MAX));
+            if (erreur != null) {
+                erreurs.increment();
+                premiereErreur.compareAndSet(null, erreur);
+            }
+        }
+
+        void reinitialiser() {
+            recorder.reset();
+            erreurs.reset();
+            premiereErreur.set(null);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package fr.maxime.ecfback.commun;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Idempotency-Key sur le serveur MongoDB en mémoire : un seul traitement par clé, y compris pour des rejeux simultanés,
+ * clé libérée après un échec, reprise d'une clé abandonnée.
+ */
+class IdempotenceTest {
+
+    private static final String PORTEE = "POST /vehicules";
+
+    private MongoEnMemoire mongo;
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private Idempotence idempotence;
+    private ExecutorService executeur;
+
+    @BeforeEach
+    void init() {
+        mongo = new MongoEnMemoire();
+        client = MongoClients.create(mongo.uri());
+        mongoTemplate = new MongoTemplate(client, "ecfback");
+        idempotence = instance();
+        executeur = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void fin() {
+        executeur.shutdownNow();
+        client.close();
+        mongo.close();
+    }
+
+    @Test
+    void rejeuxSimultanesTraitesUneFois() throws Exception {
+        AtomicInteger traitements = new AtomicInteger();
+        Vehicule requete = vehicule(null);
+        CountDownLatch depart = new CountDownLatch(1);
+        List<Future<Vehicule>> reponses = IntStream.range(0, 8).mapToObj(i -> executeur.submit(() -> {
+            depart.await();
+            return idempotence.executer(PORTEE, "cle-1", requete, Vehicule.class, () -> {
+                traitements.incrementAndGet();
+                return vehicule("v" + traitements.get());
+            });
+        })).toList();
+        depart.countDown();
+        for (Future<Vehicule> reponse : reponses) {
+            assertEquals("v1", reponse.get().getId());
+        }
+        assertEquals(1, traitements.get());
+    }
+
+    @Test
+    void cleReutiliseePourUneAutreRequete() {
+        Vehicule requete = vehicule(null);
+        idempotence.executer(PORTEE, "cle-2", requete, Vehicule.class, () -> requete);
+
+        requete.setModele("308");
+        ResponseStatusException erreur = assertThrows(ResponseStatusException.class, () ->
+                idempotence.executer(PORTEE, "cle-2", requete, Vehicule.class, () -> requete));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, erreur.getStatusCode());
+    }
+
+    @Test
+    void echecLibereLaCle() {
+        Vehicule requete = vehicule(null);
+        assertThrows(IllegalStateException.class, () -> idempotence.executer(PORTEE, "cle-3", requete, Vehicule.class, () -> {
+            throw new IllegalStateException("panne");
+        }));
+        assertNull(mongoTemplate.findById(PORTEE + " cle-3", CleIdempotence.class));
+
+        assertEquals("v1", idempotence.executer(PORTEE, "cle-3", requete, Vehicule.class, () -> vehicule("v1")).getId());
+    }
+
+    @Test
+    void cleEnCoursAilleurs409SansBloquerLesAutresCles() throws Exception {
+        Vehicule requete = vehicule(null);
+        CountDownLatch commence = new CountDownLatch(1);
+        CountDownLatch termine = new CountDownLatch(1);
+        Future<Vehicule> premiere = executeur.submit(() -> idempotence.executer(PORTEE, "cle-4", requete, Vehicule.class, () -> {
+            commence.countDown();
+            attendre(termine);
+            return vehicule("v1");
+        }));
+        assertTrue(commence.await(5, TimeUnit.SECONDS));
+
+        // Même clé sur une autre instance : 409 tant que la première requête n'est pas terminée
+        ResponseStatusException erreur = assertThrows(ResponseStatusException.class, () ->
+                instance().executer(PORTEE, "cle-4", requete, Vehicule.class, () -> vehicule("v2")));
+        assertEquals(HttpStatus.CONFLICT, erreur.getStatusCode());
+        // Une autre clé passe pendant le traitement, même si elle partageait un verrou avec la première
+        assertEquals("v3", idempotence.executer(PORTEE, "cle-5", requete, Vehicule.class, () -> vehicule("v3")).getId());
+
+        termine.countDown();
+        assertEquals("v1", premiere.get(5, TimeUnit.SECONDS).getId());
+        assertEquals("v1", instance().executer(PORTEE, "cle-4", requete, Vehicule.class, () -> vehicule("v2")).getId());
+    }
+
+    @Test
+    void cleAbandonneeReprise() throws Exception {
+        Vehicule requete = vehicule(null);
+        CountDownLatch commence = new CountDownLatch(1);
+        CountDownLatch termine = new CountDownLatch(1);
+        Future<Vehicule> abandonnee = executeur.submit(() -> idempotence.executer(PORTEE, "cle-6", requete, Vehicule.class, () -> {
+            commence.countDown();
+            attendre(termine);
+            throw new IllegalStateException("panne");
+        }));
+        assertTrue(commence.await(5, TimeUnit.SECONDS));
+        String id = PORTEE + " cle-6";
+        String premierProprietaire = mongoTemplate.findById(id, CleIdempotence.class).getProprietaire();
+        mongoTemplate.updateFirst(query(where("id").is(id)),
+                new Update().set("creeLe", Instant.now().minus(Duration.ofMinutes(5))), CleIdempotence.class);
+
+        // Une autre instance reprend la clé restée en cours trop longtemps
+        assertEquals("v2", instance().executer(PORTEE, "cle-6", requete, Vehicule.class, () -> vehicule("v2")).getId());
+        assertNotEquals(premierProprietaire, mongoTemplate.findById(id, CleIdempotence.class).getProprietaire());
+
+        // L'échec du premier traitement ne libère pas la clé reprise
+        termine.countDown();
+        assertThrows(ExecutionException.class, () -> abandonnee.get(5, TimeUnit.SECONDS));
+        CleIdempotence cle = mongoTemplate.findById(id, CleIdempotence.class);
+        assertTrue(cle.isTermine());
+        assertEquals("v2", instance().executer(PORTEE, "cle-6", requete, Vehicule.class, () -> vehicule("v3")).getId());
+    }
+
+    private Idempotence instance() {
+        return new Idempotence(mongoTemplate, new ObjectMapper(), 100, Duration.ofMinutes(10), Duration.ofMinutes(1));
+    }
+
+    private static void attendre(CountDownLatch signal) {
+        try {
+            signal.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Vehicule vehicule(String id) {
+        return new Vehicule(id, "Peugeot", "208", "AA-000001", "Citadine", 45.0, "Bon", "Disponible");
+    }
+}
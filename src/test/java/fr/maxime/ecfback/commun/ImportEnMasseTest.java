@@ -0,0 +1,130 @@
+package fr.maxime.ecfback.commun;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Import en masse : lecture incrémentale du corps, découpage en lots et bilan par élément.
+ */
+class ImportEnMasseTest {
+
+    private final List<Integer> taillesLots = new ArrayList<>();
+    private BulkOperations bulkOperations;
+    private ImportEnMasse importEnMasse;
+
+    @BeforeEach
+    void init() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        bulkOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkMode.UNORDERED, Vehicule.class)).thenReturn(bulkOperations);
+        when(bulkOperations.insert(anyList())).thenAnswer(invocation -> {
+            taillesLots.add(invocation.<List<?>>getArgument(0).size());
+            return bulkOperations;
+        });
+        when(bulkOperations.execute()).thenAnswer(invocation ->
+                BulkWriteResult.acknowledged(taillesLots.get(taillesLots.size() - 1), 0, 0, 0, List.of(), List.of()));
+        importEnMasse = new ImportEnMasse(mongoTemplate, new ObjectMapper(), 1000);
+    }
+
+    @Test
+    void ndjsonInsereParLots() {
+        String corps = IntStream.range(0, 2500)
+                .mapToObj(i -> "{\"marque\":\"Peugeot\",\"immatriculation\":\"AA-" + i + "\",\"prix\":50}")
+                .collect(Collectors.joining("\n"));
+
+        ResultatImport resultat = importEnMasse.importer(corps(corps), Vehicule.class);
+
+        assertEquals(List.of(1000, 1000, 500), taillesLots);
+        assertEquals(2500, resultat.getRecus());
+        assertEquals(2500, resultat.getInseres());
+        assertEquals(0, resultat.getRejetes());
+    }
+
+    @Test
+    void tableauJsonRejetteSeulementLElementInvalide() {
+        String corps = "[{\"marque\":\"Renault\"}, {\"prix\":\"cher\",\"etat\":{\"a\":[1]}}, {\"marque\":\"Fiat\"}, null]";
+
+        ResultatImport resultat = importEnMasse.importer(corps(corps), Vehicule.class);
+
+        assertEquals(4, resultat.getRecus());
+        assertEquals(2, resultat.getInseres());
+        assertEquals(List.of(1L, 3L), resultat.getErreurs().stream().map(ResultatImport.Erreur::getIndex).toList());
+        assertFalse(resultat.isInterrompu());
+    }
+
+    @Test
+    void syntaxeInvalideInterromptLaLecture() {
+        ResultatImport resultat = importEnMasse.importer(corps("{\"marque\":\"Renault\"}\n{\"marque\":"), Vehicule.class);
+
+        assertTrue(resultat.isInterrompu());
+        assertEquals(1, resultat.getInseres());
+        assertEquals(1, resultat.getRejetes());
+    }
+
+    @Test
+    void doublonsRapportesALeurPositionDansLeCorps() {
+        BulkOperationException doublon = mock(BulkOperationException.class);
+        when(doublon.getResult()).thenReturn(BulkWriteResult.acknowledged(1, 0, 0, 0, List.of(), List.of()));
+        when(doublon.getErrors()).thenReturn(List.of(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 1)));
+        doThrow(doublon).when(bulkOperations).execute();
+
+        ResultatImport resultat = importEnMasse.importer(
+                corps("[{\"immatriculation\":\"AA\"}, {\"prix\":\"x\"}, {\"immatriculation\":\"AA\"}]"), Vehicule.class);
+
+        assertEquals(1, resultat.getInseres());
+        assertEquals(List.of(1L, 2L), resultat.getErreurs().stream().map(ResultatImport.Erreur::getIndex).toList());
+    }
+
+    @Test
+    void elementsInseresTransmisAvecLeurId() {
+        try (MongoEnMemoire mongo = new MongoEnMemoire(); MongoClient client = MongoClients.create(mongo.uri())) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, "ecfback");
+            mongoTemplate.indexOps(Vehicule.class).ensureIndex(new Index("immatriculation", Sort.Direction.ASC).unique());
+            List<Vehicule> inseres = new ArrayList<>();
+
+            ResultatImport resultat = new ImportEnMasse(mongoTemplate, new ObjectMapper(), 1000).importer(
+                    corps("[{\"immatriculation\":\"AA\"}, {\"immatriculation\":\"AA\"}, {\"id\":\"v3\",\"immatriculation\":\"BB\"}]"),
+                    Vehicule.class, inseres::add);
+
+            assertEquals(List.of(1L), resultat.getErreurs().stream().map(ResultatImport.Erreur::getIndex).toList());
+            assertEquals(2, mongoTemplate.count(new Query(), Vehicule.class));
+            assertEquals(List.of("AA", "BB"), inseres.stream().map(Vehicule::getImmatriculation).toList());
+            assertEquals("v3", inseres.get(1).getId());
+            assertEquals("AA", mongoTemplate.findById(inseres.get(0).getId(), Vehicule.class).getImmatriculation());
+        }
+    }
+
+    private static ByteArrayInputStream corps(String contenu) {
+        return new ByteArrayInputStream(contenu.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,64 @@
+package fr.maxime.ecfback.commun;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pagination par curseur sur une collection qui mélange des ObjectId générés et des ids texte fournis par les clients.
+ */
+class PaginationTest {
+
+    private MongoEnMemoire mongo;
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void init() {
+        mongo = new MongoEnMemoire();
+        client = MongoClients.create(mongo.uri());
+        mongoTemplate = new MongoTemplate(client, "ecfback");
+    }
+
+    @AfterEach
+    void fin() {
+        client.close();
+        mongo.close();
+    }
+
+    @Test
+    void chaqueVehiculeVuUneSeuleFois() {
+        List<String> attendus = new ArrayList<>(List.of("b", "a", "c"));
+        for (int i = 0; i < 3; i++) {
+            attendus.add(new ObjectId().toHexString());
+        }
+        for (String id : attendus) {
+            mongoTemplate.insert(new Vehicule(id, "Peugeot", "208", id, "Citadine", 45.0, "Bon", "Disponible"));
+        }
+
+        List<String> vus = new ArrayList<>();
+        String after = null;
+        for (int page = 0; page < 10; page++) {
+            List<Vehicule> vehicules = mongoTemplate.find(Pagination.apres(after, 2), Vehicule.class);
+            if (vehicules.isEmpty()) {
+                break;
+            }
+            vehicules.forEach(vehicule -> vus.add(vehicule.getId()));
+            after = vehicules.get(vehicules.size() - 1).getId();
+        }
+
+        // Ordre BSON : les ids texte d'abord, puis les ObjectId dans l'ordre de création
+        assertEquals(List.of("a", "b", "c", attendus.get(3), attendus.get(4), attendus.get(5)), vus);
+    }
+}
@@ -0,0 +1,75 @@
+package fr.maxime.ecfback.disponibilites;
+
+import fr.maxime.ecfback.changements.Changement;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationResolver;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Locations écrites par une autre instance : l'index des disponibilités suit les changements publiés par FluxChangements.
+ */
+class DisponibiliteServiceTest {
+
+    private static final LocalDate DEBUT = LocalDate.of(2023, 6, 1);
+    private static final LocalDate FIN = LocalDate.of(2023, 6, 8);
+
+    private DisponibiliteService service;
+
+    @BeforeEach
+    void init() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, RETURNS_DEEP_STUBS);
+        when(mongoTemplate.query(Location.class).as(Document.class).matching(any(Query.class)).stream())
+                .thenReturn(Stream.empty());
+        when(mongoTemplate.getCollectionName(Location.class)).thenReturn("location");
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        service = new DisponibiliteService(mongoTemplate);
+    }
+
+    @Test
+    void suitLesLocationsDesAutresInstances() {
+        assertTrue(service.estDisponible("v1", DEBUT, FIN, null));
+        ObjectId id = new ObjectId();
+
+        service.changement(new Changement("location", Changement.Operation.INSERTION, id.toHexString(), location(id, "v1")));
+        assertFalse(service.estDisponible("v1", DEBUT, FIN, null));
+
+        service.changement(new Changement("location", Changement.Operation.MODIFICATION, id.toHexString(), location(id, "v2")));
+        assertTrue(service.estDisponible("v1", DEBUT, FIN, null));
+        assertFalse(service.estDisponible("v2", DEBUT, FIN, null));
+
+        service.changement(new Changement("vehicule", Changement.Operation.SUPPRESSION, id.toHexString(), null));
+        assertFalse(service.estDisponible("v2", DEBUT, FIN, null));
+
+        service.changement(new Changement("location", Changement.Operation.SUPPRESSION, id.toHexString(), null));
+        assertTrue(service.estDisponible("v2", DEBUT, FIN, null));
+    }
+
+    private static Document location(ObjectId id, String idVehicule) {
+        return new Document("_id", id)
+                .append(LocationResolver.ID_VEHICULE, idVehicule)
+                .append("dateDebut", Date.from(DEBUT.atStartOfDay(ZoneId.systemDefault()).toInstant()))
+                .append("dateFin", Date.from(FIN.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+    }
+}
@@ -0,0 +1,62 @@
+package fr.maxime.ecfback.disponibilites;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanningTest {
+
+    private static LocalDate jour(int jour) {
+        return LocalDate.of(2023, 1, jour);
+    }
+
+    @Test
+    void detecteLesChevauchements() {
+        Planning planning = new Planning();
+        planning.ajouter("a", jour(5), jour(10));
+
+        assertFalse(planning.estLibre(jour(1), jour(6)));
+        assertFalse(planning.estLibre(jour(6), jour(8)));
+        assertFalse(planning.estLibre(jour(9), jour(15)));
+        assertFalse(planning.estLibre(jour(1), jour(20)));
+        assertTrue(planning.estLibre(jour(1), jour(5)));
+        assertTrue(planning.estLibre(jour(10), jour(12)));
+    }
+
+    @Test
+    void fusionneLesPlagesContigues() {
+        Planning planning = new Planning();
+        planning.ajouter("a", jour(1), jour(5));
+        planning.ajouter("b", jour(10), jour(12));
+        planning.ajouter("c", jour(5), jour(10));
+
+        assertEquals(List.of(new Planning.Reservation(jour(1), jour(12))), planning.occupations());
+    }
+
+    @Test
+    void libereLaPeriodeQuandLaLocationEstRetiree() {
+        Planning planning = new Planning();
+        planning.ajouter("a", jour(1), jour(20));
+        planning.ajouter("b", jour(5), jour(8));
+
+        planning.retirer("a");
+
+        assertTrue(planning.estLibre(jour(10), jour(15)));
+        assertFalse(planning.estLibre(jour(6), jour(7)));
+    }
+
+    @Test
+    void ignoreLaLocationModifiee() {
+        Planning planning = new Planning();
+        planning.ajouter("a", jour(1), jour(5));
+        planning.ajouter("b", jour(8), jour(10));
+
+        assertTrue(planning.estLibre(jour(2), jour(7), "a"));
+        assertFalse(planning.estLibre(jour(2), jour(9), "a"));
+    }
+}
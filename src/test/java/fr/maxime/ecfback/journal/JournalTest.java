@@ -0,0 +1,132 @@
+package fr.maxime.ecfback.journal;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Journal écrit en différé : événements regroupés en lots, écriture par l'appelant quand la file est pleine,
+ * lot réessayé sans doublon.
+ */
+class JournalTest {
+
+    private final List<List<Document>> lots = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private MongoCollection<Document> collection;
+    private Journal journal;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void init() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollectionName(EvenementJournal.class)).thenReturn("journal");
+        collection = mock(MongoCollection.class);
+        when(mongoTemplate.getCollection(anyString())).thenReturn(collection);
+        when(collection.withWriteConcern(any())).thenReturn(collection);
+        when(collection.insertMany(anyList(), any(InsertManyOptions.class))).thenAnswer(invocation -> {
+            lots.add(List.copyOf(invocation.<List<Document>>getArgument(0)));
+            return null;
+        });
+        journal = new Journal(mongoTemplate, registry, 3, 100, Duration.ofMillis(10), "journalisee");
+    }
+
+    @AfterEach
+    void fin() {
+        journal.arreter();
+    }
+
+    @Test
+    void fileVideeParLotsEtDebordementEcritParLAppelant() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            journal.enregistrer(Journal.VEHICULE, "v" + i, EvenementJournal.CREATION,
+                    new Vehicule("v" + i, "Peugeot", "208", "AA-00000" + i, "Citadine", 45.0, "Bon", "Disponible"));
+        }
+        // Thread d'écriture pas encore démarré : la file (3 places) est pleine, le 4e événement est écrit directement
+        assertEquals(1, lots.size());
+        assertEquals("v3", lots.get(0).get(0).getString("idEntite"));
+        assertEquals(1.0, registry.get("ecfback.journal.debordements").counter().count());
+
+        journal.demarrer();
+        for (int essai = 0; essai < 100 && lots.size() < 2; essai++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(2, lots.size());
+        List<Document> lot = lots.get(1);
+        assertEquals(3, lot.size());
+        assertEquals(List.of("v0", "v1", "v2"), lot.stream().map(document -> document.getString("idEntite")).toList());
+        assertEquals("208", lot.get(0).get("document", Document.class).getString("modele"));
+        assertEquals(3.0, registry.get("ecfback.journal.evenements").tag("mode", "lot").counter().count());
+
+        journal.enregistrer(Journal.VEHICULE, "v0", EvenementJournal.SUPPRESSION, null);
+        for (int essai = 0; essai < 100 && lots.size() < 3; essai++) {
+            Thread.sleep(10);
+        }
+        assertEquals(EvenementJournal.SUPPRESSION, lots.get(2).get(0).getString("operation"));
+        assertNull(lots.get(2).get(0).get("document"));
+    }
+
+    @Test
+    void lotReessayeAvecLesMemesIds() throws InterruptedException {
+        // 1er essai : écrit mais réponse perdue ; 2e essai : l'événement est refusé comme doublon
+        when(collection.insertMany(anyList(), any(InsertManyOptions.class)))
+                .thenAnswer(invocation -> {
+                    lots.add(List.copyOf(invocation.<List<Document>>getArgument(0)));
+                    throw new MongoException("Connexion perdue");
+                })
+                .thenAnswer(invocation -> {
+                    lots.add(List.copyOf(invocation.<List<Document>>getArgument(0)));
+                    throw new MongoBulkWriteException(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of()),
+                            List.of(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0)),
+                            null, new ServerAddress(), Set.of());
+                });
+        journal.demarrer();
+        journal.enregistrer(Journal.LOCATION, "l1", EvenementJournal.CREATION, null);
+        for (int essai = 0; essai < 100 && registry.get("ecfback.journal.evenements").tag("mode", "lot").counter().count() < 1; essai++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(2, lots.size());
+        assertNotNull(lots.get(0).get(0).get("_id"));
+        assertEquals(lots.get(0).get(0).get("_id"), lots.get(1).get(0).get("_id"));
+        assertEquals(1.0, registry.get("ecfback.journal.evenements").tag("mode", "lot").counter().count());
+        assertEquals(0.0, registry.get("ecfback.journal.pertes").counter().count());
+    }
+}
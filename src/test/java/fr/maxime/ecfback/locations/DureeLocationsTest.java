@@ -0,0 +1,90 @@
+package fr.maxime.ecfback.locations;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.disponibilites.DisponibiliteService;
+import fr.maxime.ecfback.journal.Journal;
+import fr.maxime.ecfback.locataires.LocataireServiceImpl;
+import fr.maxime.ecfback.resumes.ResumeService;
+import fr.maxime.ecfback.tarifs.MoteurTarifs;
+import fr.maxime.ecfback.vehicules.VehiculeServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Locations actives : une location longue commencée bien avant activeFrom est trouvée, que la durée maximale
+ * vienne du calcul initial (location écrite hors de l'application) ou du $max d'une écriture.
+ */
+class DureeLocationsTest {
+
+    private static final LocalDate DEBUT = LocalDate.of(2024, 1, 1);
+
+    private MongoEnMemoire mongo;
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private DureeLocations dureeLocations;
+    private LocationServiceImpl service;
+
+    @BeforeEach
+    void init() {
+        mongo = new MongoEnMemoire();
+        client = MongoClients.create(mongo.uri());
+        mongoTemplate = new MongoTemplate(client, "ecfback");
+        dureeLocations = new DureeLocations(mongoTemplate);
+        LocationRepository repository = new MongoRepositoryFactory(mongoTemplate).getRepository(LocationRepository.class);
+        service = new LocationServiceImpl(repository, mock(LocationResolver.class), mock(VehiculeServiceImpl.class),
+                mock(LocataireServiceImpl.class), mock(DisponibiliteService.class),
+                mock(ResumeService.class, withSettings().stubOnly()), dureeLocations, mock(MoteurTarifs.class),
+                mock(Journal.class, withSettings().stubOnly()), 16);
+    }
+
+    @AfterEach
+    void fin() {
+        client.close();
+        mongo.close();
+    }
+
+    @Test
+    void locationExistanteAvantLeCompteur() {
+        mongoTemplate.insert(location(DEBUT, DEBUT.plusDays(60)));
+        mongoTemplate.insert(location(DEBUT.plusDays(40), DEBUT.plusDays(45)));
+
+        assertEquals(2, actives(DEBUT.plusDays(42), DEBUT.plusDays(43)));
+        assertEquals(60, dureeLocations.max());
+    }
+
+    @Test
+    void locationLongueEnregistree() {
+        assertEquals(0, dureeLocations.max());
+        service.save(location(DEBUT, DEBUT.plusDays(90)));
+        service.save(location(DEBUT.plusDays(80), DEBUT.plusDays(82)));
+
+        assertEquals(90, dureeLocations.max());
+        assertEquals(2, actives(DEBUT.plusDays(81), DEBUT.plusDays(81)));
+        // Le jour de fin n'est pas loué
+        assertEquals(0, actives(DEBUT.plusDays(90), DEBUT.plusDays(95)));
+    }
+
+    private int actives(LocalDate debut, LocalDate fin) {
+        return mongoTemplate.find(service.requeteActives(debut, fin, null, 100, 0), Location.class).size();
+    }
+
+    private static Location location(LocalDate debut, LocalDate fin) {
+        Location location = new Location();
+        location.setDateDebut(debut);
+        location.setDateFin(fin);
+        location.setPrixTotal(100.0);
+        return location;
+    }
+}
@@ -0,0 +1,106 @@
+package fr.maxime.ecfback.locations;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locataires.LocataireServiceImpl;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import fr.maxime.ecfback.vehicules.VehiculeServiceImpl;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Locations au format instantane : l'instantané est construit à la réservation et conservé par les modifications,
+ * même après un changement de prix du véhicule.
+ */
+class LocationResolverTest {
+
+    private static final LocalDate DEBUT = LocalDate.of(2024, 5, 1);
+
+    private final Map<String, Vehicule> vehicules = new HashMap<>();
+    private MongoEnMemoire mongo;
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private LocationResolver resolver;
+
+    @BeforeEach
+    void init() {
+        mongo = new MongoEnMemoire();
+        client = MongoClients.create(mongo.uri());
+        mongoTemplate = new MongoTemplate(client, "ecfback");
+        vehicules.put("v1", new Vehicule("v1", "Peugeot", "208", "AB-123-CD", "Citadine", 50.0, "Bon", "Disponible"));
+        vehicules.put("v2", new Vehicule("v2", "Renault", "Clio", "EF-456-GH", "Citadine", 45.0, "Bon", "Disponible"));
+        VehiculeServiceImpl vehiculeService = mock(VehiculeServiceImpl.class);
+        when(vehiculeService.findAllById(anyCollection())).thenAnswer(invocation -> invocation.<List<String>>getArgument(0)
+                .stream().map(vehicules::get).toList());
+        LocataireServiceImpl locataireService = mock(LocataireServiceImpl.class);
+        when(locataireService.findAllById(anyCollection()))
+                .thenReturn(List.of(new Locataire("l1", "Martin", "Julie", "julie@mail.fr", "secret")));
+        resolver = new LocationResolver(mongoTemplate, locataireService, vehiculeService, "lot", "instantane");
+    }
+
+    @AfterEach
+    void fin() {
+        client.close();
+        mongo.close();
+    }
+
+    @Test
+    void modificationApresChangementDePrix() {
+        Location location = resolver.enregistrer(location("v1", 250.0));
+        vehicules.get("v1").setPrix(80.0);
+
+        location.setDateFin(DEBUT.plusDays(6));
+        location.setPrixTotal(300.0);
+        resolver.enregistrer(location);
+
+        Location lue = resolver.findById(location.getId()).orElseThrow();
+        assertEquals(50.0, lue.getVehicule().getPrix());
+        assertEquals(300.0, lue.getPrixTotal());
+        assertEquals(DEBUT.plusDays(6), lue.getDateFin());
+        assertEquals("Martin", lue.getLocataire().getNom());
+    }
+
+    @Test
+    void instantaneMigreConserveEtVehiculeRemplaceRecopie() {
+        Location location = resolver.enregistrer(location("v1", 250.0));
+        mongoTemplate.updateFirst(query(where("id").is(location.getId())),
+                new Update().set("instantane.migre", true), Location.class);
+
+        location.setVehicule(vehicules.get("v2"));
+        resolver.enregistrer(location);
+
+        Document document = mongoTemplate.findById(location.getId(), Document.class, "location");
+        Document instantane = document.get("instantane", Document.class);
+        assertTrue(instantane.getBoolean("migre"));
+        assertEquals("EF-456-GH", instantane.getString("immatriculation"));
+        assertEquals(45.0, instantane.getDouble("prix"));
+        assertEquals("Martin", instantane.getString("nom"));
+    }
+
+    private static Location location(String idVehicule, double prixTotal) {
+        Vehicule vehicule = new Vehicule();
+        vehicule.setId(idVehicule);
+        Locataire locataire = new Locataire();
+        locataire.setId("l1");
+        return new Location(null, DEBUT, DEBUT.plusDays(5), prixTotal, locataire, vehicule);
+    }
+}
@@ -0,0 +1,174 @@
+package fr.maxime.ecfback.locations;
+
+import fr.maxime.ecfback.disponibilites.DisponibiliteService;
+import fr.maxime.ecfback.journal.Journal;
+import fr.maxime.ecfback.locataires.LocataireServiceImpl;
+import fr.maxime.ecfback.resumes.ResumeService;
+import fr.maxime.ecfback.tarifs.MoteurTarifs;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import fr.maxime.ecfback.vehicules.VehiculeServiceImpl;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Réservations simultanées sur LocationServiceImpl : aucune double réservation, aucun refus à tort.
+ */
+class ReservationConcurrenteTest {
+
+    private final Map<String, Location> enregistrees = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private LocationServiceImpl service;
+
+    @BeforeEach
+    void init() {
+        LocationRepository repository = mock(LocationRepository.class, withSettings().stubOnly());
+        when(repository.save(any(Location.class))).thenAnswer(invocation -> {
+            Location location = invocation.getArgument(0);
+            if (location.getId() == null) {
+                location.setId("L" + sequence.incrementAndGet());
+            }
+            enregistrees.put(location.getId(), location);
+            return location;
+        });
+        VehiculeServiceImpl vehiculeService = mock(VehiculeServiceImpl.class, withSettings().stubOnly());
+        when(vehiculeService.findById(anyString())).thenReturn(vehicule("v"));
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, RETURNS_DEEP_STUBS);
+        when(mongoTemplate.query(Location.class).as(Document.class).matching(any(Query.class)).stream())
+                .thenReturn(Stream.empty());
+
+        service = new LocationServiceImpl(repository, mock(LocationResolver.class), vehiculeService,
+                mock(LocataireServiceImpl.class), new DisponibiliteService(mongoTemplate),
+                mock(ResumeService.class, withSettings().stubOnly()), mock(DureeLocations.class, withSettings().stubOnly()),
+                mock(MoteurTarifs.class, withSettings().stubOnly()),
+                mock(Journal.class, withSettings().stubOnly()), 256);
+    }
+
+    @Test
+    void uneSeuleReservationPasseSurLaMemePeriode() throws InterruptedException {
+        int clients = 64;
+        AtomicInteger acceptees = new AtomicInteger();
+        AtomicInteger refusees = new AtomicInteger();
+
+        executer(clients, 1, (client, essai) -> {
+            try {
+                service.reserver(location("v1", LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 8)));
+                acceptees.incrementAndGet();
+            } catch (ResponseStatusException e) {
+                refusees.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, acceptees.get());
+        assertEquals(clients - 1, refusees.get());
+    }
+
+    @Test
+    void aucuneDoubleReservationSurDesPeriodesAleatoires() throws InterruptedException {
+        LocalDate origine = LocalDate.of(2023, 1, 1);
+
+        executer(64, 200, (client, essai) -> {
+            ThreadLocalRandom hasard = ThreadLocalRandom.current();
+            LocalDate debut = origine.plusDays(hasard.nextInt(365));
+            try {
+                service.reserver(location("v" + hasard.nextInt(8), debut, debut.plusDays(1 + hasard.nextInt(10))));
+            } catch (ResponseStatusException e) {
+                // véhicule déjà loué : attendu
+            }
+        });
+
+        assertFalse(enregistrees.isEmpty());
+        Map<String, List<Location>> parVehicule = enregistrees.values().stream()
+                .collect(Collectors.groupingBy(location -> location.getVehicule().getId()));
+        for (List<Location> locations : parVehicule.values()) {
+            for (int i = 0; i < locations.size(); i++) {
+                for (int j = i + 1; j < locations.size(); j++) {
+                    Location a = locations.get(i);
+                    Location b = locations.get(j);
+                    assertTrue(!a.getDateDebut().isBefore(b.getDateFin()) || !b.getDateDebut().isBefore(a.getDateFin()),
+                            "Double réservation : " + a + " / " + b);
+                }
+            }
+        }
+    }
+
+    @Test
+    void reservationsSansConflitToutesAcceptees() throws InterruptedException {
+        int clients = 8;
+        int parClient = 200;
+
+        // Chaque client réserve des semaines successives sur 16 véhicules partagés avec les autres clients :
+        // aucune période ne se chevauche, aucune réservation ne doit être refusée (débit mesuré par ReservationsBenchmark)
+        executer(clients, parClient, (client, essai) -> {
+            LocalDate semaine = LocalDate.of(2000, 1, 3).plusWeeks((long) essai * clients + client);
+            service.reserver(location("v" + (essai % 16), semaine, semaine.plusDays(7)));
+        });
+
+        assertEquals(parClient * clients, enregistrees.size());
+    }
+
+    private void executer(int clients, int essais, Action action) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        CountDownLatch depart = new CountDownLatch(1);
+        List<Throwable> erreurs = new ArrayList<>();
+        for (int client = 0; client < clients; client++) {
+            int numero = client;
+            executor.execute(() -> {
+                try {
+                    depart.await();
+                    for (int essai = 0; essai < essais; essai++) {
+                        action.executer(numero, essai);
+                    }
+                } catch (Throwable e) {
+                    synchronized (erreurs) {
+                        erreurs.add(e);
+                    }
+                }
+            });
+        }
+        depart.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(erreurs.isEmpty(), () -> "Erreurs : " + erreurs);
+    }
+
+    private static Location location(String idVehicule, LocalDate debut, LocalDate fin) {
+        return new Location(null, debut, fin, null, null, vehicule(idVehicule));
+    }
+
+    private static Vehicule vehicule(String id) {
+        return new Vehicule(id, "Peugeot", "208", "AA-" + id, "Voiture", 50.0, "A", "Disponible");
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void executer(int client, int essai);
+    }
+}
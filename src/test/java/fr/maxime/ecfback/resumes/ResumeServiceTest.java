@@ -0,0 +1,155 @@
+package fr.maxime.ecfback.resumes;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.disponibilites.DisponibiliteService;
+import fr.maxime.ecfback.journal.Journal;
+import fr.maxime.ecfback.locataires.Locataire;
+import fr.maxime.ecfback.locataires.LocataireServiceImpl;
+import fr.maxime.ecfback.locations.DureeLocations;
+import fr.maxime.ecfback.locations.Location;
+import fr.maxime.ecfback.locations.LocationRepository;
+import fr.maxime.ecfback.locations.LocationResolver;
+import fr.maxime.ecfback.locations.LocationServiceImpl;
+import fr.maxime.ecfback.tarifs.MoteurTarifs;
+import fr.maxime.ecfback.vehicules.Vehicule;
+import fr.maxime.ecfback.vehicules.VehiculeServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Résumés tenus à jour à chaque écriture de location : après des créations, modifications et suppressions,
+ * y compris simultanées sur une même location, ils doivent être ceux que recalcule reconstruire().
+ */
+class ResumeServiceTest {
+
+    private static final LocalDate AUJOURDHUI = LocalDate.now();
+
+    private MongoEnMemoire mongo;
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private ResumeService resumeService;
+    private LocationServiceImpl locationService;
+    private final List<Vehicule> vehicules = new ArrayList<>();
+    private final List<Locataire> locataires = new ArrayList<>();
+
+    @BeforeEach
+    void init() {
+        mongo = new MongoEnMemoire();
+        client = MongoClients.create(mongo.uri());
+        mongoTemplate = new MongoTemplate(client, "ecfback");
+        for (int i = 0; i < 3; i++) {
+            vehicules.add(mongoTemplate.save(new Vehicule(null, "Renault", "Clio", "AA-00" + i, "Voiture", 50.0, "Bon", "Disponible")));
+            locataires.add(mongoTemplate.save(new Locataire(null, "Nom" + i, "Prenom" + i, "l" + i + "@mail.fr", "secret")));
+        }
+        resumeService = new ResumeService(mongoTemplate, 2, 2);
+        LocationRepository repository = new MongoRepositoryFactory(mongoTemplate).getRepository(LocationRepository.class);
+        locationService = new LocationServiceImpl(repository, mock(LocationResolver.class),
+                mock(VehiculeServiceImpl.class), mock(LocataireServiceImpl.class),
+                mock(DisponibiliteService.class), resumeService, new DureeLocations(mongoTemplate), mock(MoteurTarifs.class),
+                mock(Journal.class, withSettings().stubOnly()), 16);
+    }
+
+    @AfterEach
+    void fin() {
+        client.close();
+        mongo.close();
+    }
+
+    @Test
+    void resumesIncrementauxEgauxALaReconstruction() {
+        Location passee = locationService.save(location(0, 0, -20, -10, 300));
+        Location future = locationService.save(location(0, 1, 5, 12, 350));
+        Location deplacee = locationService.save(location(1, 1, -3, 4, 200));
+
+        // Changement de véhicule, de locataire, de période et de prix
+        deplacee.setVehicule(vehicules.get(2));
+        deplacee.setLocataire(locataires.get(2));
+        deplacee.setDateFin(AUJOURDHUI.plusDays(9));
+        deplacee.setPrixTotal(400.0);
+        locationService.save(deplacee);
+        // La dernière fin du véhicule 0 doit redescendre à celle de la location passée
+        locationService.deleteById(future.getId());
+        locationService.save(location(1, 0, 30, 33, 150));
+
+        assertEquals(List.of(1L, 1L, 1L), vehicules.stream().map(v -> resumeService.vehicule(v.getId()).getLocations()).toList());
+        assertEquals(passee.getDateFin(), resumeService.vehicule(vehicules.get(0).getId()).getDerniereFin());
+        verifierReconstruction();
+    }
+
+    @Test
+    void ecrituresSimultaneesDUneMemeLocation() throws Exception {
+        Location location = locationService.save(location(0, 0, 1, 8, 400));
+        ExecutorService executeur = Executors.newFixedThreadPool(8);
+        CountDownLatch depart = new CountDownLatch(1);
+        try {
+            List<CompletableFuture<Void>> ecritures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                int numero = i;
+                ecritures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        depart.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (numero % 2 == 0) {
+                        Location copie = location(numero % 3, numero % 3, 1, 2 + numero, 100 + numero);
+                        copie.setId(location.getId());
+                        locationService.save(copie);
+                    } else {
+                        locationService.deleteById(location.getId());
+                    }
+                }, executeur));
+            }
+            depart.countDown();
+            CompletableFuture.allOf(ecritures.toArray(CompletableFuture[]::new)).join();
+        } finally {
+            executeur.shutdown();
+        }
+        verifierReconstruction();
+    }
+
+    private void verifierReconstruction() {
+        List<Resume> incrementaux = resumes();
+        resumeService.reconstruire();
+        assertEquals(resumes(), incrementaux);
+    }
+
+    private List<Resume> resumes() {
+        List<Resume> resumes = new ArrayList<>();
+        vehicules.forEach(vehicule -> resumes.add(normalise(resumeService.vehicule(vehicule.getId()))));
+        locataires.forEach(locataire -> resumes.add(normalise(resumeService.locataire(locataire.getId()))));
+        return resumes;
+    }
+
+    /**
+     * Un résumé jamais écrit est lu avec des compteurs null, un résumé reconstruit sans location avec des zéros
+     */
+    private static Resume normalise(Resume resume) {
+        resume.setLocations(resume.getLocations() == null ? 0 : resume.getLocations());
+        resume.setJoursLoues(resume.getJoursLoues() == null ? 0 : resume.getJoursLoues());
+        resume.setRevenu(resume.getRevenu() == null ? 0 : resume.getRevenu());
+        return resume;
+    }
+
+    private Location location(int vehicule, int locataire, int debut, int fin, double prix) {
+        return new Location(null, AUJOURDHUI.plusDays(debut), AUJOURDHUI.plusDays(fin), prix,
+                locataires.get(locataire), vehicules.get(vehicule));
+    }
+}
@@ -0,0 +1,97 @@
+package fr.maxime.ecfback.statistiques;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.locations.LocationResolver;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pipelines d'agrégation des statistiques exécutés sur le serveur MongoDB en mémoire.<br>
+ * Il ne connaît ni $let (id des références, revenus par véhicule et par type) ni $unionWith (utilisation) :
+ * ces pipelines ne sont pas couverts ici.
+ */
+class StatistiqueServiceTest {
+
+    private final ObjectId clio = new ObjectId();
+    private final ObjectId kangoo = new ObjectId();
+    private final ObjectId master = new ObjectId();
+    private MongoEnMemoire mongo;
+    private MongoClient client;
+    private StatistiqueService service;
+
+    @BeforeEach
+    void init() {
+        mongo = new MongoEnMemoire();
+        client = MongoClients.create(mongo.uri());
+        MongoTemplate mongoTemplate = new MongoTemplate(client, "ecfback");
+        mongoTemplate.getCollection("vehicule").insertMany(List.of(
+                vehicule(clio, "Clio", "Voiture", "Bon", "Disponible"),
+                vehicule(kangoo, "Kangoo", "Utilitaire", "Bon", "Loué"),
+                vehicule(master, "Master", "Utilitaire", "Abîmé", "Disponible")));
+        mongoTemplate.getCollection("location").insertMany(List.of(
+                location(clio, LocalDate.of(2023, 3, 20), LocalDate.of(2023, 4, 3), 300.0),
+                location(clio, LocalDate.of(2023, 4, 10), LocalDate.of(2023, 4, 12), 100.0),
+                location(kangoo, LocalDate.of(2023, 4, 5), LocalDate.of(2023, 4, 8), 150.0)));
+        service = new StatistiqueService(mongoTemplate, 100, Duration.ofMinutes(1), Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void fin() {
+        client.close();
+        mongo.close();
+    }
+
+    @Test
+    void revenusParMois() {
+        List<Revenu> mois = service.revenusParMois(null, null);
+
+        assertEquals(List.of("2023-03", "2023-04"), mois.stream().map(Revenu::getCle).toList());
+        assertEquals(300.0, mois.get(0).getRevenu());
+        assertEquals(250.0, mois.get(1).getRevenu());
+        assertEquals(2L, mois.get(1).getLocations());
+
+        List<Revenu> avril = service.revenusParMois(LocalDate.of(2023, 4, 1), LocalDate.of(2023, 4, 30));
+        assertEquals(List.of("2023-04"), avril.stream().map(Revenu::getCle).toList());
+    }
+
+    @Test
+    void vehiculesParEtatEtStatus() {
+        Map<String, Map<String, Long>> comptes = service.vehicules();
+
+        assertEquals(Map.of("Bon", 2L, "Abîmé", 1L), comptes.get("etat"));
+        assertEquals(Map.of("Disponible", 2L, "Loué", 1L), comptes.get("status"));
+    }
+
+    private static Document vehicule(ObjectId id, String modele, String type, String etat, String status) {
+        return new Document("_id", id).append("marque", "Renault").append("modele", modele)
+                .append("immatriculation", "AA-" + id.toHexString().substring(18)).append("type", type)
+                .append("prix", 50.0).append("etat", etat).append("status", status);
+    }
+
+    private static Document location(ObjectId vehicule, LocalDate debut, LocalDate fin, double prix) {
+        return new Document("_id", new ObjectId())
+                .append("dateDebut", date(debut))
+                .append("dateFin", date(fin))
+                .append("prixTotal", prix)
+                .append(LocationResolver.ID_VEHICULE, vehicule);
+    }
+
+    private static Date date(LocalDate jour) {
+        return Date.from(jour.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,102 @@
+package fr.maxime.ecfback.tarifs;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MoteurTarifsTest {
+
+    private static final LocalDate ETE = LocalDate.of(2023, 7, 1);
+
+    private static MoteurTarifs moteur(Tarif... tarifs) {
+        MoteurTarifs moteur = new MoteurTarifs(null);
+        moteur.remplacer(List.of(tarifs));
+        return moteur;
+    }
+
+    @Test
+    void sansTarifLePrixEstProportionnelALaDuree() {
+        MoteurTarifs moteur = moteur();
+
+        assertEquals(135.0, moteur.prix(45.0, "Citadine", ETE, ETE.plusDays(3)));
+        // Hors de l'horizon précalculé
+        assertEquals(90.0, moteur.prix(45.0, null, LocalDate.of(1990, 1, 1), LocalDate.of(1990, 1, 3)));
+    }
+
+    @Test
+    void saisonsEtTypesSeMultiplient() {
+        MoteurTarifs moteur = moteur(
+                new Tarif(null, "été", null, ETE, ETE.plusDays(2), 1.5, null),
+                new Tarif(null, "SUV", "SUV", null, null, 2.0, null));
+
+        // 2 jours d'été à 1.5 puis 2 jours normaux
+        assertEquals(500.0, moteur.prix(100.0, "Citadine", ETE, ETE.plusDays(4)));
+        assertEquals(1000.0, moteur.prix(100.0, "SUV", ETE, ETE.plusDays(4)));
+    }
+
+    @Test
+    void remiseSurLesSemainesEntieres() {
+        MoteurTarifs moteur = moteur(new Tarif(null, "semaine", null, null, null, null, 0.1));
+
+        // 7 jours remisés de 10 %, 2 jours au plein tarif
+        assertEquals(830.0, moteur.prix(100.0, null, ETE, ETE.plusDays(9)));
+    }
+
+    @Test
+    void leCalculParLotDonneLesMemesPrix() {
+        MoteurTarifs moteur = moteur(
+                new Tarif(null, "été", null, ETE, ETE.plusDays(60), 1.2, 0.05),
+                new Tarif(null, "SUV été", "SUV", ETE.plusDays(10), ETE.plusDays(20), 1.8, null));
+        String[] types = {"SUV", "Citadine", null};
+        double[] prixJour = {80.0, 45.0, 30.0};
+        long[] debuts = {ETE.toEpochDay(), ETE.plusDays(5).toEpochDay(), ETE.minusDays(3).toEpochDay()};
+        long[] fins = {ETE.plusDays(25).toEpochDay(), ETE.plusDays(6).toEpochDay(), ETE.plusDays(11).toEpochDay()};
+
+        double[] prix = new double[3];
+        moteur.prix(prixJour, types, debuts, fins, prix);
+
+        double[] attendus = new double[3];
+        for (int i = 0; i < 3; i++) {
+            attendus[i] = moteur.prix(prixJour[i], types[i], LocalDate.ofEpochDay(debuts[i]), LocalDate.ofEpochDay(fins[i]));
+        }
+        assertArrayEquals(attendus, prix);
+    }
+
+    @Test
+    void unRechargementLentNEcrasePasUnPlusRecent() throws Exception {
+        TarifRepository repository = mock(TarifRepository.class);
+        CountDownLatch lu = new CountDownLatch(1);
+        CountDownLatch relache = new CountDownLatch(1);
+        AtomicInteger lectures = new AtomicInteger();
+        when(repository.findAll()).thenAnswer(invocation -> {
+            if (lectures.incrementAndGet() == 1) {
+                lu.countDown();
+                relache.await();
+                return List.of();
+            }
+            return List.of(new Tarif(null, "SUV", "SUV", null, null, 2.0, null));
+        });
+        MoteurTarifs moteur = new MoteurTarifs(repository);
+
+        // Le premier rechargement a lu l'ancienne grille, le second lit la nouvelle pendant qu'il est bloqué
+        CompletableFuture<Void> premier = CompletableFuture.runAsync(moteur::recharger);
+        lu.await();
+        CompletableFuture<Void> second = CompletableFuture.runAsync(moteur::recharger);
+        Thread.sleep(50);
+        relache.countDown();
+        premier.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertEquals(200.0, moteur.prix(100.0, "SUV", ETE, ETE.plusDays(1)));
+    }
+}
@@ -0,0 +1,81 @@
+package fr.maxime.ecfback.vehicules;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import fr.maxime.ecfback.charge.MongoEnMemoire;
+import fr.maxime.ecfback.commun.ImportEnMasse;
+import fr.maxime.ecfback.disponibilites.DisponibiliteService;
+import fr.maxime.ecfback.journal.Journal;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Filtre multi-critères de /vehicules/search : index désigné selon les critères renseignés (sinon MongoDB parcourt
+ * l'index _id du tri), projection fields= et pagination.
+ */
+class FiltreVehiculesTest {
+
+    private MongoEnMemoire mongo;
+    private MongoClient client;
+    private VehiculeServiceImpl service;
+
+    @BeforeEach
+    void init() {
+        mongo = new MongoEnMemoire();
+        client = MongoClients.create(mongo.uri());
+        MongoTemplate mongoTemplate = new MongoTemplate(client, "ecfback");
+        mongoTemplate.indexOps(Vehicule.class).ensureIndex(new Index("type", Sort.Direction.ASC));
+        mongoTemplate.indexOps(Vehicule.class).ensureIndex(new Index("prix", Sort.Direction.ASC));
+        for (int i = 0; i < 6; i++) {
+            mongoTemplate.insert(new Vehicule(null, "Peugeot", "208", "AA-00" + i, i % 2 == 0 ? "SUV" : "Citadine",
+                    40.0 + i * 10, "Bon", "Disponible"));
+        }
+        service = new VehiculeServiceImpl(mock(VehiculeRepository.class), mongoTemplate, mock(VehiculeCache.class),
+                mock(RechercheVehicules.class), mock(DisponibiliteService.class), mock(ImportEnMasse.class), mock(Journal.class));
+    }
+
+    @AfterEach
+    void fin() {
+        client.close();
+        mongo.close();
+    }
+
+    @Test
+    void indexDuCritereFiltre() {
+        Query query = VehiculeServiceImpl.requeteFiltre(new FiltreVehicules(null, null, "SUV", null, "Disponible", null, 80.0), null, 10);
+        assertEquals(new Document("type", 1).toJson(), query.getHint());
+        assertEquals(new Document("marque", 1).append("modele", 1),
+                VehiculeServiceImpl.index(new FiltreVehicules("Peugeot", null, "SUV", null, null, null, null)));
+        assertEquals(new Document("prix", 1),
+                VehiculeServiceImpl.index(new FiltreVehicules(null, null, null, "Bon", null, 50.0, null)));
+        // Sans critère, la page suit l'index _id
+        assertNull(VehiculeServiceImpl.requeteFiltre(new FiltreVehicules(), null, 10).getHint());
+    }
+
+    @Test
+    void pagesFiltreesEtChampsDemandes() {
+        FiltreVehicules suv = new FiltreVehicules(null, null, "SUV", null, null, null, null);
+        List<Vehicule> premiere = service.filtrer(suv, null, 2);
+        List<Vehicule> seconde = service.filtrer(suv, premiere.get(1).getId(), 2);
+        assertEquals(List.of("AA-000", "AA-002", "AA-004"),
+                List.of(premiere.get(0).getImmatriculation(), premiere.get(1).getImmatriculation(), seconde.get(0).getImmatriculation()));
+        assertEquals(1, seconde.size());
+
+        List<Map<String, Object>> champs = service.filtrerChamps(new FiltreVehicules(null, null, null, null, null, 55.0, 75.0), "prix", null, null);
+        assertEquals(List.of(60.0, 70.0), champs.stream().map(vehicule -> vehicule.get("prix")).toList());
+        assertEquals(List.of("id", "prix"), List.copyOf(champs.get(0).keySet()));
+    }
+}
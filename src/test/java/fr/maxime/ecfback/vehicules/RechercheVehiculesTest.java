@@ -0,0 +1,151 @@
+package fr.maxime.ecfback.vehicules;
+
+import fr.maxime.ecfback.changements.Changement;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Recherche par préfixes dans l'index en mémoire : combinaison des mots, classement, pagination et mises à jour,
+ * y compris celles des autres instances publiées par FluxChangements.
+ */
+class RechercheVehiculesTest {
+
+    private final List<Vehicule> base = new CopyOnWriteArrayList<>();
+    private RechercheVehicules recherche;
+
+    @BeforeEach
+    void init() {
+        VehiculeRepository repository = mock(VehiculeRepository.class);
+        when(repository.streamAllBy()).thenAnswer(invocation -> base.stream());
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollectionName(Vehicule.class)).thenReturn("vehicule");
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        base.addAll(List.of(
+                vehicule("v1", "Peugeot", "2008", "AB-123-CD", "SUV"),
+                vehicule("v2", "Peugeot", "208", "EF-456-GH", "Citadine"),
+                vehicule("v3", "Peugeot", "208", "AB-789-CD", "Citadine"),
+                vehicule("v4", "Renault", "Clio", "IJ-123-KL", "Citadine"),
+                vehicule("v5", "Citroën", "C3", "2089-MN-75", "Citadine")));
+        recherche = new RechercheVehicules(repository, mongoTemplate);
+    }
+
+    @Test
+    void prefixesEtTousLesMots() {
+        // À score égal : ordre marque, modèle, immatriculation
+        assertEquals(List.of("v1", "v3", "v2"), ids("peug"));
+        assertEquals(List.of("v5", "v3", "v2", "v4"), ids("CITA"));
+        // Tous les mots doivent correspondre, sans tenir compte des accents ni de la casse
+        assertEquals(List.of("v3", "v2"), ids("peug cit"));
+        assertEquals(List.of("v5"), ids("citroen c"));
+        assertEquals(List.of(), ids("renault 208"));
+    }
+
+    @Test
+    void motsExactsClassesDAbord() {
+        assertEquals(List.of("v5", "v1", "v3", "v2"), ids("20"));
+        // La plaque 2089 commence par 208 sans l'être : la Citroën passe après les 208
+        assertEquals(List.of("v3", "v2", "v5"), ids("208"));
+    }
+
+    @Test
+    void paginationSurPlusieursNiveaux() {
+        // Deux mots exacts : v3, v2 ; un seul : v5
+        assertEquals(List.of("v3", "v2", "v5"), ids("208 citadine"));
+        assertEquals(List.of("v3"), page("208 citadine", 0, 1));
+        assertEquals(List.of("v2"), page("208 citadine", 1, 1));
+        assertEquals(List.of("v2", "v5"), page("208 citadine", 1, 5));
+        assertEquals(List.of("v5"), page("208 citadine", 2, 5));
+        assertEquals(List.of(), page("208 citadine", 3, 5));
+    }
+
+    @Test
+    void reindexationEtSuppression() {
+        Vehicule clio = vehicule("v4", "Renault", "Megane", "IJ-123-KL", "Berline");
+        recherche.indexer(clio);
+        // L'index garde sa copie : modifier ensuite l'instance enregistrée ne change pas la recherche
+        clio.setModele("Twingo");
+
+        assertEquals(List.of(), ids("clio"));
+        assertEquals(List.of(), ids("renault cita"));
+        assertEquals(List.of("v4"), ids("megane"));
+        assertEquals(List.of(), ids("twingo"));
+        assertEquals("Megane", recherche.rechercher("megane", 0, 10).get(0).getModele());
+
+        recherche.indexer(vehicule("v6", "Renault", "Zoe", "QR-555-ST", "Citadine"));
+        assertEquals(List.of("v4", "v6"), ids("renault"));
+
+        recherche.retirer("v4");
+        assertEquals(List.of("v6"), ids("renault"));
+        assertEquals(List.of(), ids("megane"));
+        assertEquals(List.of("v1"), ids("123"));
+    }
+
+    @Test
+    void plaquesPartielles() {
+        assertEquals(List.of("v1", "v3"), ids("AB"));
+        assertEquals(List.of("v1", "v4"), ids("123"));
+        // Groupes collés, depuis le début de la plaque ou depuis un de ses groupes
+        assertEquals(List.of("v1"), ids("ab123"));
+        assertEquals(List.of("v1"), ids("123c"));
+        assertEquals(List.of("v3"), ids("789cd"));
+        assertEquals(List.of("v5"), ids("2089mn"));
+        assertEquals(List.of("v1"), ids("AB-123-C"));
+        // Un groupe coupé au milieu ne correspond pas
+        assertEquals(List.of(), ids("b123"));
+    }
+
+    @Test
+    void suitLesVehiculesDesAutresInstances() {
+        assertEquals(List.of("v4"), ids("renault"));
+
+        recherche.changement(new Changement("vehicule", Changement.Operation.INSERTION, "v7",
+                document("v7", "Dacia", "Sandero", "UV-777-WX")));
+        assertEquals(List.of("v7"), ids("dacia"));
+
+        recherche.changement(new Changement("vehicule", Changement.Operation.MODIFICATION, "v7",
+                document("v7", "Dacia", "Duster", "UV-777-WX")));
+        assertEquals(List.of(), ids("sandero"));
+        assertEquals(List.of("v7"), ids("duster"));
+
+        recherche.changement(new Changement("location", Changement.Operation.SUPPRESSION, "v7", null));
+        assertEquals(List.of("v7"), ids("dacia"));
+        recherche.changement(new Changement("vehicule", Changement.Operation.SUPPRESSION, "v7", null));
+        assertEquals(List.of(), ids("dacia"));
+
+        // Changements perdus : l'index est relu depuis la base
+        base.add(vehicule("v8", "Renault", "Zoe", "YZ-888-AB", "Citadine"));
+        recherche.changement(new Changement(null, Changement.Operation.REINITIALISATION, null, null));
+        assertEquals(List.of("v4", "v8"), ids("renault"));
+    }
+
+    private List<String> ids(String texte) {
+        return page(texte, 0, 10);
+    }
+
+    private List<String> page(String texte, long debut, int limite) {
+        return recherche.rechercher(texte, debut, limite).stream().map(Vehicule::getId).toList();
+    }
+
+    private static Document document(String id, String marque, String modele, String immatriculation) {
+        return new Document("_id", id).append("marque", marque).append("modele", modele)
+                .append("immatriculation", immatriculation).append("type", "SUV").append("prix", 40.0);
+    }
+
+    private static Vehicule vehicule(String id, String marque, String modele, String immatriculation, String type) {
+        return new Vehicule(id, marque, modele, immatriculation, type, 50.0, "Bon", "Disponible");
+    }
+}